@@ -30,7 +30,7 @@ import org.mal_lang.compiler.lib.LangConverter;
 import org.mal_lang.compiler.lib.Parser;
 import org.mal_lang.compiler.lib.reference.Generator;
 
-@Mojo(name = "reference", defaultPhase = LifecyclePhase.GENERATE_TEST_SOURCES)
+@Mojo(name = "reference", defaultPhase = LifecyclePhase.GENERATE_TEST_SOURCES, threadSafe = true)
 public class ReferenceMojo extends MalMojo {
   /** The output directory to store the generated java files in. */
   @Parameter(property = "mal.reference.path")
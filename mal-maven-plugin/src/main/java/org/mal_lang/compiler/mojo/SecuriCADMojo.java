@@ -29,7 +29,9 @@ import org.mal_lang.compiler.lib.LangConverter;
 import org.mal_lang.compiler.lib.Parser;
 import org.mal_lang.compiler.lib.securicad.Generator;
 
-@Mojo(name = "securicad", defaultPhase = LifecyclePhase.GENERATE_SOURCES)
+// Thread safe only because IconCache renders every icon with its own SVGUniverse, the default
+// universe of svgSalamander is shared by the whole JVM
+@Mojo(name = "securicad", defaultPhase = LifecyclePhase.GENERATE_SOURCES, threadSafe = true)
 public class SecuriCADMojo extends MalMojo {
   /** The output directory to store the generated java files in. */
   @Parameter(property = "mal.securicad.path")
@@ -43,6 +45,10 @@ public class SecuriCADMojo extends MalMojo {
   @Parameter(property = "mal.securicad.icons")
   private File icons;
 
+  /** The directory to keep rendered icons in between builds. */
+  @Parameter(property = "mal.securicad.iconCache")
+  private File iconCache;
+
   /** Specifies if debug steps should be kept. */
   @Parameter(property = "mal.securicad.debug")
   private boolean keepDebugSteps;
@@ -78,6 +84,11 @@ public class SecuriCADMojo extends MalMojo {
       args.put("icons", icons.getPath());
     }
 
+    if (iconCache == null) {
+      iconCache = new File(getBuildDirectory(), "mal-icon-cache");
+    }
+    args.put("iconCache", iconCache.getAbsolutePath());
+
     args.put("debug", Boolean.toString(keepDebugSteps));
 
     // Generate code
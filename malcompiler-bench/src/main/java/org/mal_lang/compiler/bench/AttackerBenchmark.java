@@ -0,0 +1,142 @@
+/*
+ * Copyright 2019-2022 Foreseeti AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mal_lang.compiler.bench;
+
+import allfeatures.A2;
+import allfeatures.A5;
+import allfeatures.A8;
+import core.Asset;
+import core.AttackStep;
+import core.Attacker;
+import core.Defense;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import vehicle.CANNetwork;
+import vehicle.ConnectionlessDataflow;
+import vehicle.ECU;
+import vehicle.GatewayECU;
+import vehicle.TransmitterService;
+
+/**
+ * Measures the attack simulation of the reference runtime on models of the generated vehicleLang
+ * and all-features languages.
+ *
+ * <p>The vehicleLang model is a chain of {@code size} CAN networks joined by gateway ECUs, where
+ * every network has ECUs that transmit on it. The all-features model is a chain of {@code size}
+ * A2 assets linked through a1Sub, each with its own A5 and A8. The model is built before every
+ * invocation since the simulation changes the state of its attack steps.
+ */
+@State(Scope.Benchmark)
+public class AttackerBenchmark {
+  private static final int ECUS_PER_NETWORK = 4;
+
+  @Param({"vehicleLang", "allFeatures"})
+  public String model;
+
+  @Param({"10", "100", "1000"})
+  public int size;
+
+  private Properties profile;
+  private List<AttackStep> attackPoints;
+
+  @Setup(Level.Trial)
+  public void setupProfile() throws IOException {
+    var resource =
+        model.equals("vehicleLang")
+            ? "/vehicle/attackerProfile.ttc"
+            : "/allfeatures/attackerProfile.ttc";
+    profile = new Properties();
+    try (var in = AttackerBenchmark.class.getResourceAsStream(resource)) {
+      if (in == null) {
+        throw new IOException(String.format("Missing resource %s", resource));
+      }
+      profile.load(in);
+    }
+  }
+
+  @Setup(Level.Invocation)
+  public void setupModel() {
+    attackPoints = new ArrayList<>();
+    if (model.equals("vehicleLang")) {
+      createVehicleModel();
+    } else {
+      createAllFeaturesModel();
+    }
+  }
+
+  private void createVehicleModel() {
+    CANNetwork previous = null;
+    for (int i = 0; i < size; i++) {
+      var network = new CANNetwork(String.format("network%d", i));
+      var dataflow = new ConnectionlessDataflow(String.format("dataflow%d", i));
+      network.addDataflows(dataflow);
+      for (int j = 0; j < ECUS_PER_NETWORK; j++) {
+        var ecu = new ECU(String.format("ecu%d_%d", i, j));
+        var transmitter = new TransmitterService(String.format("transmitter%d_%d", i, j));
+        ecu.addExecutees(transmitter);
+        transmitter.addDataflows(dataflow);
+        network.addNetworkECUs(ecu);
+      }
+      if (previous == null) {
+        attackPoints.add(network.physicalAccess);
+      } else {
+        var gateway = new GatewayECU(String.format("gateway%d", i));
+        gateway.addTrafficVNetworks(previous);
+        gateway.addTrafficVNetworks(network);
+      }
+      previous = network;
+    }
+  }
+
+  private void createAllFeaturesModel() {
+    A2 previous = null;
+    for (int i = 0; i < size; i++) {
+      var a2 = new A2(String.format("a2_%d", i));
+      a2.addA4(new A5(String.format("a5_%d", i)));
+      a2.addA8(new A8(String.format("a8_%d", i)));
+      if (previous != null) {
+        previous.addA1Sub(a2);
+      }
+      previous = a2;
+    }
+    attackPoints.add(previous.a1Attack1);
+  }
+
+  @TearDown(Level.Invocation)
+  public void deleteModel() {
+    Asset.allAssets.clear();
+    AttackStep.allAttackSteps.clear();
+    Defense.allDefenses.clear();
+  }
+
+  @Benchmark
+  public void attack() {
+    var attacker = new Attacker();
+    for (var attackPoint : attackPoints) {
+      attacker.addAttackPoint(attackPoint);
+    }
+    attacker.attack(profile);
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2019-2022 Foreseeti AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mal_lang.compiler.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import org.mal_lang.compiler.lib.AST;
+import org.mal_lang.compiler.lib.Analyzer;
+import org.mal_lang.compiler.lib.CompilerException;
+import org.mal_lang.compiler.lib.Lang;
+import org.mal_lang.compiler.lib.LangConverter;
+import org.mal_lang.compiler.lib.Parser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures the code generators, including writing their output to disk.
+ *
+ * <p>Every invocation gets a freshly converted {@link Lang}, since the securiCAD generator
+ * modifies it, and an empty output directory. A generator run takes milliseconds, so the
+ * per-invocation setup does not distort the measurement.
+ */
+public class GeneratorBenchmark extends SpecState {
+  @Param({"reference", "securicad", "d3"})
+  public String target;
+
+  private AST ast;
+  private Lang lang;
+  private Path output;
+
+  @Override
+  protected void setup() throws Exception {
+    ast = Parser.parse(file);
+    Analyzer.analyze(ast);
+  }
+
+  @Setup(Level.Invocation)
+  public void setupInvocation() throws IOException {
+    lang = LangConverter.convert(ast);
+    output = Files.createTempDirectory(dir, "out");
+  }
+
+  @TearDown(Level.Invocation)
+  public void tearDownInvocation() throws IOException {
+    Specs.deleteRecursive(output);
+  }
+
+  @Benchmark
+  public void generate() throws IOException, CompilerException {
+    var path = output.toString();
+    switch (target) {
+      case "reference":
+        org.mal_lang.compiler.lib.reference.Generator.generate(
+            lang, Map.of("path", path, "package", "bench"));
+        break;
+      case "securicad":
+        org.mal_lang.compiler.lib.securicad.Generator.generate(
+            lang, Map.of("path", path, "package", "bench"));
+        break;
+      case "d3":
+        org.mal_lang.compiler.lib.d3.Generator.generate(lang, Map.of("path", path));
+        break;
+      default:
+        throw new CompilerException(String.format("Invalid compilation target %s", target));
+    }
+  }
+}
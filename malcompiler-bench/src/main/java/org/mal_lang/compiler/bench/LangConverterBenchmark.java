@@ -0,0 +1,39 @@
+/*
+ * Copyright 2019-2022 Foreseeti AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mal_lang.compiler.bench;
+
+import org.mal_lang.compiler.lib.AST;
+import org.mal_lang.compiler.lib.Analyzer;
+import org.mal_lang.compiler.lib.Lang;
+import org.mal_lang.compiler.lib.LangConverter;
+import org.mal_lang.compiler.lib.Parser;
+import org.openjdk.jmh.annotations.Benchmark;
+
+/** Measures converting an analyzed AST into a {@link Lang}. */
+public class LangConverterBenchmark extends SpecState {
+  private AST ast;
+
+  @Override
+  protected void setup() throws Exception {
+    ast = Parser.parse(file);
+    Analyzer.analyze(ast);
+  }
+
+  @Benchmark
+  public Lang convert() {
+    return LangConverter.convert(ast);
+  }
+}
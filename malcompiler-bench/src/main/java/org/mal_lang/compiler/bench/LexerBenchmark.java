@@ -0,0 +1,37 @@
+/*
+ * Copyright 2019-2022 Foreseeti AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mal_lang.compiler.bench;
+
+import java.io.IOException;
+import org.mal_lang.compiler.lib.CompilerException;
+import org.mal_lang.compiler.lib.Lexer;
+import org.mal_lang.compiler.lib.TokenType;
+import org.openjdk.jmh.annotations.Benchmark;
+
+/** Measures lexing all files of a specification into tokens. */
+public class LexerBenchmark extends SpecState {
+  @Benchmark
+  public int next() throws IOException, CompilerException {
+    int tokens = 0;
+    for (var file : files) {
+      var lexer = new Lexer(file);
+      while (lexer.next().type != TokenType.EOF) {
+        tokens++;
+      }
+    }
+    return tokens;
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2019-2022 Foreseeti AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mal_lang.compiler.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * SpecState is the common state of the benchmarks of the compiler stages. It is parameterized by
+ * the size of the specification: "small" is a single file with a handful of assets, "medium" is
+ * the all-features specification with includes, "large" is vehicleLang, and "synthetic-N" is a
+ * generated specification with N assets.
+ *
+ * <p>Like the unit tests, the benchmarks run with UTF-8 as the default encoding, which the
+ * formatter relies on for specifications with non-ASCII characters.
+ */
+@Fork(jvmArgsAppend = "-Dfile.encoding=UTF-8")
+@State(Scope.Benchmark)
+public abstract class SpecState {
+  @Param({"small", "medium", "large", "synthetic-1000", "synthetic-10000"})
+  public String spec;
+
+  protected Path dir;
+  // The main file of the specification followed by the files it includes
+  protected List<File> files;
+  protected File file;
+
+  @Setup(Level.Trial)
+  public void setupSpec() throws Exception {
+    dir = Files.createTempDirectory("malc-bench");
+    files = Specs.extract(spec, dir);
+    file = files.get(0);
+    Specs.silence();
+    setup();
+  }
+
+  /** Prepares the input of the benchmark, called once per trial after the spec is extracted. */
+  protected void setup() throws Exception {}
+
+  @TearDown(Level.Trial)
+  public void tearDownSpec() throws IOException {
+    Specs.restore();
+    Specs.deleteRecursive(dir);
+  }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2019-2022 Foreseeti AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mal_lang.compiler.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.mal_lang.compiler.lib.CompilerException;
+import org.mal_lang.compiler.lib.synthetic.SpecGenerator;
+
+/**
+ * Specs makes the specifications used by the benchmarks available as files.
+ *
+ * <p>The fixed specifications are packaged as resources under "specs/", and are copied to a
+ * temporary directory so that the compiler can read them, and resolve their includes, when the
+ * benchmarks run from the self-contained benchmark jar. Synthetic specifications of any size are
+ * generated with a fixed seed.
+ */
+final class Specs {
+  // The first file of every specification is its main file
+  private static final Map<String, List<String>> SPECS =
+      Map.of(
+          "small",
+          List.of("analyzer/complex.mal"),
+          "medium",
+          List.of(
+              "all-features/all-features.mal",
+              "all-features/core.mal",
+              "all-features/included.mal",
+              "all-features/subdir/subincluded.mal"),
+          "large",
+          List.of(
+              "vehiclelang/vehicleLang.mal",
+              "vehiclelang/vehicleLangEthernet.mal",
+              "vehiclelang/vehicleLangPublicInterfaces.mal"));
+
+  private static final String SYNTHETIC = "synthetic-";
+  private static final int ASSETS_PER_CATEGORY = 50;
+  private static final int MAX_INCLUDES = 4;
+
+  private static final PrintStream NULL_STREAM =
+      new PrintStream(
+          new OutputStream() {
+            @Override
+            public void write(int b) {}
+
+            @Override
+            public void write(byte[] b, int off, int len) {}
+          });
+
+  private static PrintStream oldOut;
+  private static PrintStream oldErr;
+
+  private Specs() {}
+
+  /**
+   * Copies a specification and the files it includes to {@code dir}. A specification named
+   * "synthetic-N" is generated with N assets instead.
+   *
+   * @param spec name of the specification
+   * @param dir directory to copy the files to
+   * @return the files of the specification, starting with its main file
+   * @throws IOException if a file cannot be copied
+   * @throws CompilerException if a synthetic specification cannot be generated
+   */
+  static List<File> extract(String spec, Path dir) throws IOException, CompilerException {
+    if (spec.startsWith(SYNTHETIC)) {
+      var opts = new SpecGenerator.Options();
+      opts.assets = Integer.parseInt(spec.substring(SYNTHETIC.length()));
+      opts.categories = Math.max(1, opts.assets / ASSETS_PER_CATEGORY);
+      opts.includes = Math.min(opts.categories, MAX_INCLUDES);
+      return SpecGenerator.generate(opts, dir.toFile());
+    }
+    var files = SPECS.get(spec);
+    if (files == null) {
+      throw new IllegalArgumentException(String.format("Unknown specification '%s'", spec));
+    }
+    var result = new ArrayList<File>();
+    for (var name : files) {
+      var target = dir.resolve(name);
+      Files.createDirectories(target.getParent());
+      try (var in = Specs.class.getResourceAsStream(String.format("/specs/%s", name))) {
+        if (in == null) {
+          throw new IOException(String.format("Missing resource specs/%s", name));
+        }
+        Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+      }
+      result.add(target.toFile());
+    }
+    return result;
+  }
+
+  /**
+   * Sends System.out and System.err to nowhere, so that warnings of the compiler do not flood
+   * the benchmark output.
+   */
+  static synchronized void silence() {
+    if (oldOut == null) {
+      oldOut = System.out;
+      oldErr = System.err;
+      System.setOut(NULL_STREAM);
+      System.setErr(NULL_STREAM);
+    }
+  }
+
+  /** Restores System.out and System.err after {@link #silence()}. */
+  static synchronized void restore() {
+    if (oldOut != null) {
+      System.setOut(oldOut);
+      System.setErr(oldErr);
+      oldOut = null;
+      oldErr = null;
+    }
+  }
+
+  static void deleteRecursive(Path path) throws IOException {
+    if (!Files.exists(path)) {
+      return;
+    }
+    try (var walk = Files.walk(path)) {
+      for (var entry : walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+        Files.delete(entry);
+      }
+    }
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2019-2022 Foreseeti AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mal_lang.compiler.bench;
+
+import core.Asset;
+import core.AttackStep;
+import core.Attacker;
+import core.Defense;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import org.mal_lang.compiler.lib.Analyzer;
+import org.mal_lang.compiler.lib.LangConverter;
+import org.mal_lang.compiler.lib.Parser;
+import org.mal_lang.compiler.lib.synthetic.ModelGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import vehicle.AssetFactory;
+
+/**
+ * Measures the attack simulation of the reference runtime on generated vehicleLang models with
+ * {@code attackSteps} attack steps and the given topology.
+ *
+ * <p>The model is generated once per trial with a fixed seed, and instantiated through the
+ * generated factory before every invocation since the simulation changes the state of its attack
+ * steps. The attack starts from a fixed set of pseudo-random attack steps. Models of ten million
+ * attack steps need a heap of several GB, e.g. {@code -jvmArgsAppend -Xmx16g}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+public class SyntheticModelBenchmark {
+  private static final int ATTACK_POINTS = 4;
+
+  @Param({"TREE", "SCALE_FREE", "GRID"})
+  public ModelGenerator.Topology topology;
+
+  @Param({"100000", "1000000"})
+  public long attackSteps;
+
+  private Properties profile;
+  private ModelGenerator.Model model;
+  private List<AttackStep> attackPoints;
+
+  @Setup(Level.Trial)
+  public void setupModel() throws Exception {
+    var resource = "/vehicle/attackerProfile.ttc";
+    profile = new Properties();
+    try (var in = SyntheticModelBenchmark.class.getResourceAsStream(resource)) {
+      if (in == null) {
+        throw new IOException(String.format("Missing resource %s", resource));
+      }
+      profile.load(in);
+    }
+
+    var dir = Files.createTempDirectory("malc-bench");
+    try {
+      Specs.silence();
+      var ast = Parser.parse(Specs.extract("large", dir).get(0));
+      Analyzer.analyze(ast);
+      var opts = new ModelGenerator.Options();
+      opts.topology = topology;
+      opts.attackSteps = attackSteps;
+      model = ModelGenerator.generate(LangConverter.convert(ast), opts);
+    } finally {
+      Specs.restore();
+      Specs.deleteRecursive(dir);
+    }
+  }
+
+  @Setup(Level.Invocation)
+  public void buildModel() {
+    model.build(AssetFactory::create, Asset::link);
+    attackPoints = new ArrayList<>();
+    for (int i = 0; i < ATTACK_POINTS; i++) {
+      attackPoints.add(AttackStep.randomAttackStep(i));
+    }
+  }
+
+  @TearDown(Level.Invocation)
+  public void deleteModel() {
+    Asset.allAssets.clear();
+    AttackStep.allAttackSteps.clear();
+    Defense.allDefenses.clear();
+  }
+
+  @Benchmark
+  public void attack() {
+    var attacker = new Attacker();
+    for (var attackPoint : attackPoints) {
+      attacker.addAttackPoint(attackPoint);
+    }
+    attacker.attack(profile);
+  }
+}
@@ -0,0 +1,297 @@
+/*
+ * Copyright 2019-2022 Foreseeti AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mal_lang.compiler.cli;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.mal_lang.compiler.lib.CompilerException;
+import org.mal_lang.compiler.lib.MalLogger;
+import org.mal_lang.compiler.lib.ParseCache;
+import org.mal_lang.compiler.lib.Parser;
+
+/**
+ * Batch compiles several specifications, listed in a manifest, in one JVM.
+ *
+ * <p>Every non-blank line of the manifest that does not start with '#' describes one job:
+ *
+ * <pre>
+ * SPEC TARGET [ARGS]
+ * </pre>
+ *
+ * <p>where ARGS uses the same syntax as the --args option. Relative paths in SPEC and in the
+ * "path", "icons" and "iconCache" arguments are resolved against the directory of the manifest.
+ *
+ * <p>All specifications are first parsed one by one through a shared {@link ParseCache}, so that
+ * files included by several specifications are only parsed once. The remaining phases then run
+ * on a bounded thread pool. The output of every job is buffered and printed when the job is
+ * done, followed by a summary of all jobs.
+ */
+class Batch {
+  private static class Job {
+    public final File spec;
+    public final Main.Options opts;
+    public int status = 0;
+    public long millis = 0;
+    public byte[] out = new byte[0];
+    public byte[] err = new byte[0];
+
+    public Job(File spec, Main.Options opts) {
+      this.spec = spec;
+      this.opts = opts;
+    }
+  }
+
+  /** Sends everything written by a thread to that thread's buffer, if it has one. */
+  private static class ThreadOutputStream extends OutputStream {
+    private final PrintStream fallback;
+    private final ThreadLocal<ByteArrayOutputStream> buffer = new ThreadLocal<>();
+
+    public ThreadOutputStream(PrintStream fallback) {
+      this.fallback = fallback;
+    }
+
+    private OutputStream current() {
+      var out = buffer.get();
+      return out == null ? fallback : out;
+    }
+
+    @Override
+    public void write(int b) {
+      try {
+        current().write(b);
+      } catch (IOException e) {
+        // ByteArrayOutputStream and PrintStream never throw
+      }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      try {
+        current().write(b, off, len);
+      } catch (IOException e) {
+        // ByteArrayOutputStream and PrintStream never throw
+      }
+    }
+
+    @Override
+    public void flush() {
+      fallback.flush();
+    }
+  }
+
+  private final List<Job> jobs;
+  private final int threads;
+  private final ParseCache cache = new ParseCache();
+  private final ThreadOutputStream out;
+  private final ThreadOutputStream err;
+
+  private Batch(List<Job> jobs, int threads) {
+    this.jobs = jobs;
+    this.threads = threads;
+    this.out = new ThreadOutputStream(System.out);
+    this.err = new ThreadOutputStream(System.err);
+  }
+
+  /**
+   * Runs all jobs of a manifest.
+   *
+   * @param manifest the manifest file
+   * @param threads maximum number of jobs that run at the same time
+   * @param verbose print verbose output
+   * @param debug print debug output
+   * @return 0 if all jobs succeeded, 1 otherwise
+   * @throws IOException if the manifest cannot be read
+   * @throws CompilerException if the manifest is invalid
+   */
+  public static int run(File manifest, int threads, boolean verbose, boolean debug)
+      throws IOException, CompilerException {
+    var batch = new Batch(readManifest(manifest, verbose, debug), threads);
+    var oldOut = System.out;
+    var oldErr = System.err;
+    try (var outStream = new PrintStream(batch.out, true);
+        var errStream = new PrintStream(batch.err, true)) {
+      System.setOut(outStream);
+      System.setErr(errStream);
+      batch.runJobs();
+    } finally {
+      System.setOut(oldOut);
+      System.setErr(oldErr);
+    }
+    return batch.printSummary();
+  }
+
+  private static List<Job> readManifest(File manifest, boolean verbose, boolean debug)
+      throws IOException, CompilerException {
+    var dir = manifest.getAbsoluteFile().getParentFile();
+    var jobs = new ArrayList<Job>();
+    var lines = Files.readAllLines(manifest.toPath());
+    for (int i = 0; i < lines.size(); i++) {
+      var line = lines.get(i).strip();
+      if (line.isEmpty() || line.startsWith("#")) {
+        continue;
+      }
+      var parts = line.split("\\s+", 3);
+      if (parts.length < 2) {
+        throw new CompilerException(
+            String.format("%s:%d: Expected a file and a target", manifest.getName(), i + 1));
+      }
+      var opts = new Main.Options();
+      opts.target = parts[1];
+      opts.verbose = verbose;
+      opts.debug = debug;
+      if (parts.length == 3) {
+        opts.args.putAll(Main.argsToMap(parts[2]));
+      }
+      for (var key : new String[] {"path", "icons", "iconCache"}) {
+        var value = opts.args.get(key);
+        if (value != null && !value.isBlank()) {
+          opts.args.put(key, resolve(dir, value).getPath());
+        }
+      }
+      jobs.add(new Job(resolve(dir, parts[0]), opts));
+    }
+    if (jobs.isEmpty()) {
+      throw new CompilerException(String.format("%s contains no jobs", manifest.getName()));
+    }
+    return jobs;
+  }
+
+  private static File resolve(File dir, String path) {
+    var file = new File(path);
+    return file.isAbsolute() ? file : new File(dir, path);
+  }
+
+  private void runJobs() throws IOException {
+    // Parse sequentially first, so that shared includes are only parsed once
+    for (var job : jobs) {
+      if (!job.opts.target.equals("format")) {
+        runCaptured(job, () -> parse(job));
+      }
+    }
+
+    var executor = Executors.newFixedThreadPool(Math.min(threads, jobs.size()));
+    try {
+      var completion = new ExecutorCompletionService<Job>(executor);
+      int submitted = 0;
+      for (var job : jobs) {
+        if (job.status == 0) {
+          completion.submit(() -> runCaptured(job, () -> Main.compile(job.opts, job.spec, cache)));
+          submitted++;
+        } else {
+          printJob(job);
+        }
+      }
+      for (int i = 0; i < submitted; i++) {
+        printJob(completion.take().get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for jobs");
+    } catch (ExecutionException e) {
+      throw new IOException(e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private int parse(Job job) {
+    var LOGGER = new MalLogger("MAIN", job.opts.verbose, job.opts.debug);
+    try {
+      Parser.parse(job.spec, cache, false, false);
+      return 0;
+    } catch (IOException | CompilerException e) {
+      var msg = e.getMessage();
+      if (msg != null && !msg.isBlank()) {
+        LOGGER.error(msg);
+      }
+      LOGGER.print();
+      return 1;
+    }
+  }
+
+  private interface Step {
+    int run();
+  }
+
+  private Job runCaptured(Job job, Step step) {
+    var outBuffer = new ByteArrayOutputStream();
+    var errBuffer = new ByteArrayOutputStream();
+    out.buffer.set(outBuffer);
+    err.buffer.set(errBuffer);
+    long start = System.nanoTime();
+    try {
+      job.status = step.run();
+    } catch (RuntimeException e) {
+      e.printStackTrace();
+      job.status = 1;
+    } finally {
+      job.millis += TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+      out.buffer.remove();
+      err.buffer.remove();
+    }
+    job.out = concat(job.out, outBuffer.toByteArray());
+    job.err = concat(job.err, errBuffer.toByteArray());
+    return job;
+  }
+
+  private static byte[] concat(byte[] a, byte[] b) {
+    var result = new byte[a.length + b.length];
+    System.arraycopy(a, 0, result, 0, a.length);
+    System.arraycopy(b, 0, result, a.length, b.length);
+    return result;
+  }
+
+  private void printJob(Job job) {
+    if (job.out.length == 0 && job.err.length == 0) {
+      return;
+    }
+    synchronized (this) {
+      err.fallback.println(String.format("==> %s (%s) <==", job.spec.getPath(), job.opts.target));
+      err.fallback.flush();
+      out.fallback.write(job.out, 0, job.out.length);
+      out.fallback.flush();
+      err.fallback.write(job.err, 0, job.err.length);
+      err.fallback.flush();
+    }
+  }
+
+  private int printSummary() {
+    int failed = 0;
+    var summary = err.fallback;
+    summary.println("Summary:");
+    for (var job : jobs) {
+      if (job.status != 0) {
+        failed++;
+      }
+      summary.println(
+          String.format(
+              "  %-6s %7d ms  %-9s  %s",
+              job.status == 0 ? "OK" : "FAILED", job.millis, job.opts.target, job.spec.getPath()));
+    }
+    summary.println(String.format("%d jobs, %d failed", jobs.size(), failed));
+    return failed == 0 ? 0 : 1;
+  }
+}
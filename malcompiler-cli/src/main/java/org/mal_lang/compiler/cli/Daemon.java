@@ -0,0 +1,389 @@
+/*
+ * Copyright 2019-2022 Foreseeti AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mal_lang.compiler.cli;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.stream.Collectors;
+import org.mal_lang.compiler.lib.MalInfo;
+import org.mal_lang.compiler.lib.MalLogger;
+import org.mal_lang.compiler.lib.ParseCache;
+
+/**
+ * Daemon keeps the compiler resident in a warm JVM so that repeated invocations of malc skip JVM
+ * startup, class loading and JIT warm-up, and reuse the parse results of unchanged files.
+ *
+ * <p>The daemon listens on an ephemeral loopback port. The port and a random access token are
+ * published in a state file only readable by the current user; a client must present the token
+ * before its request is served. Requests are executed one at a time, with stdout and stderr
+ * captured and sent back to the client together with the exit status.
+ *
+ * <p>The daemon acknowledges a request before executing it. A client only compiles in-process
+ * instead if the request was never acknowledged, since the daemon may otherwise still be writing
+ * to the same output directory.
+ *
+ * <p>The state file also records a fingerprint of the compiler classes the daemon was started
+ * from. A client only forwards its request if its own classes have the same fingerprint, so a
+ * rebuilt compiler never talks to a daemon still running the previous build.
+ */
+class Daemon {
+  private static final int CONNECT_TIMEOUT = 500;
+  private static final int READ_TIMEOUT = 30000;
+  private static final int RESPONSE_TIMEOUT = 300000;
+  private static final Path STATE_FILE =
+      Path.of(System.getProperty("user.home"), ".malc", "daemon.properties");
+
+  private final MalLogger LOGGER;
+  private final ParseCache cache = new ParseCache();
+  private final ServerSocket server;
+  private final String token;
+
+  private Daemon(boolean verbose, boolean debug) throws IOException {
+    LOGGER = new MalLogger("DAEMON", verbose, debug, false);
+    server = new ServerSocket();
+    server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    var bytes = new byte[32];
+    new SecureRandom().nextBytes(bytes);
+    token = toHex(bytes);
+  }
+
+  /**
+   * Runs a daemon in the current thread until the JVM is terminated.
+   *
+   * @param verbose print verbose output
+   * @param debug print debug output
+   * @throws IOException if a daemon is already running or the daemon could not be started
+   */
+  public static void serve(boolean verbose, boolean debug) throws IOException {
+    var running = readState();
+    if (running.isPresent() && isReachable(running.get())) {
+      throw new IOException(
+          String.format(
+              "A daemon is already running on port %s", running.get().getProperty("port")));
+    }
+    var daemon = new Daemon(verbose, debug);
+    daemon.writeState();
+    Runtime.getRuntime().addShutdownHook(new Thread(daemon::removeState));
+    daemon.LOGGER.info(String.format("Listening on port %d", daemon.server.getLocalPort()));
+    while (true) {
+      try (var socket = daemon.server.accept()) {
+        socket.setSoTimeout(READ_TIMEOUT);
+        daemon.handle(socket);
+      } catch (IOException e) {
+        daemon.LOGGER.warning(String.format("Request failed: %s", e.getMessage()));
+      }
+    }
+  }
+
+  /**
+   * Sends a compilation request to a running daemon and copies its output to stdout and stderr.
+   *
+   * <p>Relative paths in {@code file} and in the "path", "icons" and "iconCache" arguments are
+   * resolved against the working directory of the client before they are sent.
+   *
+   * @param opts compilation options
+   * @param file file to compile
+   * @return the exit status of the request, or an empty optional if no compatible daemon is
+   *     running, or it refused the request, and the request must be executed in-process
+   */
+  public static Optional<Integer> request(Main.Options opts, File file) {
+    var state = readState();
+    if (state.isEmpty()
+        || !getVersion().equals(state.get().getProperty("version"))
+        || !getFingerprint().equals(state.get().getProperty("fingerprint"))) {
+      return Optional.empty();
+    }
+    var args = new HashMap<>(opts.args);
+    for (var key : new String[] {"path", "icons", "iconCache"}) {
+      var value = args.get(key);
+      if (value != null && !value.isBlank()) {
+        args.put(key, new File(value).getAbsolutePath());
+      }
+    }
+    boolean accepted = false;
+    int status;
+    byte[] out;
+    byte[] err;
+    try (var socket = connect(state.get())) {
+      socket.setSoTimeout(RESPONSE_TIMEOUT);
+      var output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      output.writeUTF(state.get().getProperty("token"));
+      output.writeUTF(file.getAbsolutePath());
+      output.writeBoolean(opts.lexer);
+      output.writeBoolean(opts.parser);
+      output.writeBoolean(opts.analyzer);
+      output.writeUTF(opts.target);
+      output.writeInt(args.size());
+      for (var entry : args.entrySet()) {
+        output.writeUTF(entry.getKey());
+        output.writeUTF(entry.getValue());
+      }
+      output.writeBoolean(opts.verbose);
+      output.writeBoolean(opts.debug);
+      // The profile is printed to stderr, which is sent back with the rest of the output
+      output.writeUTF(opts.profile == null ? "" : opts.profile);
+      output.writeBoolean(opts.profileRetained);
+      // Colors are decided by the terminal of the client, not by the console of the daemon
+      output.writeBoolean(MalLogger.isColor());
+      output.flush();
+
+      var input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      accepted = input.readBoolean();
+      status = input.readInt();
+      // readFully fails on a truncated response, where readNBytes would return what it got
+      out = new byte[input.readInt()];
+      input.readFully(out);
+      err = new byte[input.readInt()];
+      input.readFully(err);
+    } catch (IOException e) {
+      // Without an acknowledgement the daemon is gone or refused the request, unless it is still
+      // busy with another one and may execute this request later
+      if (!accepted && !(e instanceof SocketTimeoutException)) {
+        return Optional.empty();
+      }
+      // The daemon may still be writing to the output directory, so do not compile in-process
+      Main.printError(String.format("The daemon did not complete the request: %s", e));
+      return Optional.of(1);
+    }
+    System.out.write(out, 0, out.length);
+    System.out.flush();
+    System.err.write(err, 0, err.length);
+    System.err.flush();
+    return Optional.of(status);
+  }
+
+  private void handle(Socket socket) throws IOException {
+    var input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+    var clientToken = input.readUTF().getBytes(StandardCharsets.UTF_8);
+    if (!MessageDigest.isEqual(clientToken, token.getBytes(StandardCharsets.UTF_8))) {
+      throw new IOException("Invalid access token");
+    }
+    var file = new File(input.readUTF());
+    var opts = new Main.Options();
+    opts.lexer = input.readBoolean();
+    opts.parser = input.readBoolean();
+    opts.analyzer = input.readBoolean();
+    opts.target = input.readUTF();
+    int numArgs = input.readInt();
+    for (int i = 0; i < numArgs; i++) {
+      var key = input.readUTF();
+      opts.args.put(key, input.readUTF());
+    }
+    opts.verbose = input.readBoolean();
+    opts.debug = input.readBoolean();
+    var profile = input.readUTF();
+    opts.profile = profile.isEmpty() ? null : profile;
+    opts.profileRetained = input.readBoolean();
+    var color = input.readBoolean();
+    LOGGER.info(String.format("Compiling %s (target %s)", file, opts.target));
+
+    var output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    output.writeBoolean(true);
+    output.flush();
+
+    var out = new ByteArrayOutputStream();
+    var err = new ByteArrayOutputStream();
+    var oldOut = System.out;
+    var oldErr = System.err;
+    var oldColor = MalLogger.isColor();
+    int status;
+    long start = System.nanoTime();
+    try (var outStream = new PrintStream(out, true);
+        var errStream = new PrintStream(err, true)) {
+      System.setOut(outStream);
+      System.setErr(errStream);
+      MalLogger.setColor(color);
+      try {
+        status = Main.compile(opts, file, cache);
+      } catch (RuntimeException e) {
+        e.printStackTrace();
+        status = 1;
+      }
+    } finally {
+      System.setOut(oldOut);
+      System.setErr(oldErr);
+      MalLogger.setColor(oldColor);
+    }
+    LOGGER.debug(
+        String.format(
+            "Finished with status %d in %d ms, %d cached files",
+            status, (System.nanoTime() - start) / 1000000, cache.size()));
+
+    output.writeInt(status);
+    output.writeInt(out.size());
+    out.writeTo(output);
+    output.writeInt(err.size());
+    err.writeTo(output);
+    output.flush();
+  }
+
+  private static Socket connect(Properties state) throws IOException {
+    int port;
+    try {
+      port = Integer.parseInt(state.getProperty("port", ""));
+    } catch (NumberFormatException e) {
+      throw new IOException("Invalid daemon port");
+    }
+    var socket = new Socket();
+    try {
+      socket.connect(
+          new InetSocketAddress(InetAddress.getLoopbackAddress(), port), CONNECT_TIMEOUT);
+    } catch (IOException e) {
+      socket.close();
+      throw e;
+    }
+    return socket;
+  }
+
+  private static boolean isReachable(Properties state) {
+    try {
+      connect(state).close();
+      return true;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  private static String getVersion() {
+    try {
+      var version = MalInfo.getVersion();
+      return version == null ? "" : version;
+    } catch (IOException e) {
+      return "";
+    }
+  }
+
+  /**
+   * Returns a digest of the path, size and modification time of every file in the jars,
+   * directories or runtime image that the compiler classes are loaded from, or an empty string if
+   * they cannot be determined. An empty fingerprint never matches a daemon.
+   */
+  private static String getFingerprint() {
+    var sb = new StringBuilder();
+    try {
+      for (var cls : new Class<?>[] {Daemon.class, ParseCache.class}) {
+        var source = cls.getProtectionDomain().getCodeSource();
+        if (source == null) {
+          return "";
+        }
+        var location = source.getLocation().toURI();
+        // Classes linked into a runtime image are all stored in its modules file
+        var root =
+            "file".equals(location.getScheme())
+                ? Path.of(location)
+                : Path.of(System.getProperty("java.home"), "lib", "modules");
+        List<Path> files;
+        try (var paths = Files.walk(root)) {
+          files = paths.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+        for (var path : files) {
+          sb.append(
+              String.format(
+                  Locale.ROOT,
+                  "%s %d %d%n",
+                  path,
+                  Files.size(path),
+                  Files.getLastModifiedTime(path).toMillis()));
+        }
+      }
+      return toHex(
+          MessageDigest.getInstance("SHA-256")
+              .digest(sb.toString().getBytes(StandardCharsets.UTF_8)));
+    } catch (IOException | URISyntaxException | NoSuchAlgorithmException | SecurityException e) {
+      return "";
+    }
+  }
+
+  private static String toHex(byte[] bytes) {
+    var sb = new StringBuilder();
+    for (var b : bytes) {
+      sb.append(String.format("%02x", b));
+    }
+    return sb.toString();
+  }
+
+  private static Optional<Properties> readState() {
+    if (!Files.isRegularFile(STATE_FILE)) {
+      return Optional.empty();
+    }
+    try (var reader = Files.newBufferedReader(STATE_FILE)) {
+      var state = new Properties();
+      state.load(reader);
+      return Optional.of(state);
+    } catch (IOException e) {
+      return Optional.empty();
+    }
+  }
+
+  private void writeState() throws IOException {
+    var state = new Properties();
+    state.setProperty("port", Integer.toString(server.getLocalPort()));
+    state.setProperty("token", token);
+    state.setProperty("version", getVersion());
+    state.setProperty("fingerprint", getFingerprint());
+    var dir = STATE_FILE.getParent();
+    Files.createDirectories(dir);
+    var tmp = Files.createTempFile(dir, "daemon", ".tmp");
+    try {
+      // The token grants access to the daemon, so only the owner may read it
+      Files.setPosixFilePermissions(tmp, PosixFilePermissions.fromString("rw-------"));
+    } catch (UnsupportedOperationException e) {
+      tmp.toFile().setReadable(false, false);
+      tmp.toFile().setReadable(true, true);
+    }
+    try (var writer = Files.newBufferedWriter(tmp)) {
+      state.store(writer, "malc daemon");
+    }
+    Files.move(
+        tmp, STATE_FILE, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private void removeState() {
+    var state = readState();
+    if (state.isPresent() && token.equals(state.get().getProperty("token"))) {
+      try {
+        Files.deleteIfExists(STATE_FILE);
+      } catch (IOException e) {
+        // Nothing to do, the next client will find the daemon unreachable
+      }
+    }
+  }
+}
@@ -16,6 +16,7 @@
 package org.mal_lang.compiler.cli;
 
 import static org.mal_lang.compiler.cli.CLIParser.HasArgument.NO_ARGUMENT;
+import static org.mal_lang.compiler.cli.CLIParser.HasArgument.OPTIONAL_ARGUMENT;
 import static org.mal_lang.compiler.cli.CLIParser.HasArgument.REQUIRED_ARGUMENT;
 
 import java.io.File;
@@ -33,15 +34,18 @@ import org.mal_lang.compiler.lib.LangConverter;
 import org.mal_lang.compiler.lib.Lexer;
 import org.mal_lang.compiler.lib.MalInfo;
 import org.mal_lang.compiler.lib.MalLogger;
+import org.mal_lang.compiler.lib.ParseCache;
 import org.mal_lang.compiler.lib.Parser;
+import org.mal_lang.compiler.lib.Profiler;
 import org.mal_lang.compiler.lib.Token;
 import org.mal_lang.compiler.lib.TokenType;
+import org.mal_lang.formatter.BulkFormatter;
 import org.mal_lang.formatter.Formatter;
 
 public class Main {
   private static boolean useSGR = System.console() != null;
 
-  private static class Options {
+  static class Options {
     public boolean lexer = false;
     public boolean parser = false;
     public boolean analyzer = false;
@@ -49,9 +53,16 @@ public class Main {
     public Map<String, String> args = new HashMap<>();
     public boolean verbose = false;
     public boolean debug = false;
+    public boolean daemon = false;
+    public boolean noDaemon = false;
+    public boolean watch = false;
+    public String batch = null;
+    public int jobs = Runtime.getRuntime().availableProcessors();
+    public String profile = null;
+    public boolean profileRetained = false;
   }
 
-  private static Map<String, String> argsToMap(String args) {
+  static Map<String, String> argsToMap(String args) {
     var map = new HashMap<String, String>();
     var arg = "";
     var rest = args.strip();
@@ -85,7 +96,7 @@ public class Main {
     return map;
   }
 
-  private static void printError(String error) {
+  static void printError(String error) {
     var sgrError = SGR.of(SGR.bold(SGR.fgRed("Error:")), " ", error);
     if (useSGR) {
       System.err.println(sgrError.getSGRString());
@@ -102,7 +113,8 @@ public class Main {
             " malc [",
             SGR.italicized("OPTION"),
             "]... ",
-            SGR.italicized("FILE")));
+            SGR.italicized("FILE"),
+            "..."));
     lines.add(SGR.of());
     lines.add(SGR.bold("Options:"));
     lines.addAll(cli.getSGROptionLines());
@@ -147,6 +159,10 @@ public class Main {
         CLIParser.getSGROptionLine(
             SGR.of("[", SGR.fgRGB(135, 206, 235, "icons"), "=", SGR.italicized("PATH"), "]"),
             "Icons are located at PATH"));
+    lines.add(
+        CLIParser.getSGROptionLine(
+            SGR.of("[", SGR.fgRGB(135, 206, 235, "iconCache"), "=", SGR.italicized("PATH"), "]"),
+            "Keep rendered icons at PATH for later runs"));
     lines.add(
         CLIParser.getSGROptionLine(
             SGR.of(
@@ -175,6 +191,17 @@ public class Main {
         CLIParser.getSGROptionLine(
             SGR.of(SGR.fgRGB(135, 206, 235, "path"), "=", SGR.italicized("PATH")),
             "Write generated sources to PATH"));
+    lines.add(
+        CLIParser.getSGROptionLine(
+            SGR.of(
+                "[",
+                SGR.fgRGB(135, 206, 235, "split"),
+                "=",
+                SGR.italicized("true"),
+                "|",
+                SGR.italicized(SGR.bold("false")),
+                "]"),
+            String.format("Specifies if attack steps should be loaded on%ndemand")));
     lines.add(SGR.of());
     lines.add(SGR.of(SGR.bold("Args:"), " [", SGR.italicized("format"), "]"));
     lines.add(
@@ -190,6 +217,18 @@ public class Main {
                 "|",
                 SGR.italicized(SGR.bold("false"))),
             "Specifies if the formatter should format inplace"));
+    lines.add(
+        CLIParser.getSGROptionLine(
+            SGR.of(
+                "[",
+                SGR.fgRGB(135, 206, 235, "check"),
+                "=",
+                SGR.italicized("true"),
+                "|",
+                SGR.italicized(SGR.bold("false")),
+                "]"),
+            String.format("Only list the files that would change, and%nexit with 1 if any would")));
+    lines.add(SGR.of("  Directories and multiple files are formatted inplace, in parallel"));
     if (useSGR) {
       for (var line : lines) {
         System.err.println(line.getSGRString());
@@ -224,6 +263,30 @@ public class Main {
     int ARGS = cli.addOption("args", REQUIRED_ARGUMENT, "ARGS", "Code generation arguments");
     int VERBOSE = cli.addOption('v', "verbose", NO_ARGUMENT, "Print verbose output");
     int DEBUG = cli.addOption('d', "debug", NO_ARGUMENT, "Print debug output");
+    int PROFILE =
+        cli.addOption(
+            "profile",
+            OPTIONAL_ARGUMENT,
+            "FORMAT",
+            String.format("Print time and memory used by each stage as%na table or json"));
+    int PROFILE_RETAINED =
+        cli.addOption(
+            "profile-retained",
+            NO_ARGUMENT,
+            String.format(
+                "With --profile, also estimate the heap retained%nby each stage, forcing full "
+                    + "garbage%ncollections"));
+    int WATCH =
+        cli.addOption('w', "watch", NO_ARGUMENT, "Recompile when FILE or its includes change");
+    int BATCH =
+        cli.addOption(
+            'b', "batch", REQUIRED_ARGUMENT, "MANIFEST", "Compile all jobs listed in MANIFEST");
+    int JOBS =
+        cli.addOption(
+            'j', "jobs", REQUIRED_ARGUMENT, "N", "Run at most N batch or format jobs at once");
+    int DAEMON =
+        cli.addOption("daemon", NO_ARGUMENT, "Run as a resident daemon serving other malc calls");
+    int NO_DAEMON = cli.addOption("no-daemon", NO_ARGUMENT, "Never use a running daemon");
     int HELP = cli.addOption('h', "help", NO_ARGUMENT, "Print this help and exit");
     int VERSION = cli.addOption('V', "version", NO_ARGUMENT, "Print version information and exit");
     var cliArgs = cli.parse(args);
@@ -251,6 +314,34 @@ public class Main {
         opts.verbose = true;
       } else if (value == DEBUG) {
         opts.debug = true;
+      } else if (value == PROFILE) {
+        opts.profile = opt.hasArgument() ? opt.getArgument() : "table";
+        if (!opts.profile.equals("table") && !opts.profile.equals("json")) {
+          printError("Option --profile requires either 'table' or 'json'");
+          printHelp(cli);
+          System.exit(1);
+        }
+      } else if (value == PROFILE_RETAINED) {
+        opts.profileRetained = true;
+      } else if (value == WATCH) {
+        opts.watch = true;
+      } else if (value == BATCH) {
+        opts.batch = opt.getArgument();
+      } else if (value == JOBS) {
+        try {
+          opts.jobs = Integer.parseInt(opt.getArgument());
+        } catch (NumberFormatException e) {
+          opts.jobs = 0;
+        }
+        if (opts.jobs < 1) {
+          printError("Option --jobs requires a positive integer");
+          printHelp(cli);
+          System.exit(1);
+        }
+      } else if (value == DAEMON) {
+        opts.daemon = true;
+      } else if (value == NO_DAEMON) {
+        opts.noDaemon = true;
       } else if (value == HELP) {
         printHelp(cli);
         System.exit(1);
@@ -260,6 +351,36 @@ public class Main {
       }
     }
 
+    // Stay resident and serve other invocations
+    if (opts.daemon) {
+      try {
+        Daemon.serve(opts.verbose, opts.debug);
+      } catch (IOException e) {
+        printError(e.getMessage());
+        System.exit(1);
+      }
+      return;
+    }
+
+    // Compile every job of a manifest
+    if (opts.batch != null) {
+      if (!operands.isEmpty()) {
+        printError("A file cannot be specified together with a batch manifest");
+        printHelp(cli);
+        System.exit(1);
+      }
+      int status = 1;
+      try {
+        status = Batch.run(new File(opts.batch), opts.jobs, opts.verbose, opts.debug);
+      } catch (IOException | CompilerException e) {
+        printError(e.getMessage());
+      }
+      if (status != 0) {
+        System.exit(status);
+      }
+      return;
+    }
+
     // Check if no file was supplied
     if (operands.isEmpty()) {
       printError("A file must be specified");
@@ -267,6 +388,21 @@ public class Main {
       System.exit(1);
     }
 
+    // Format several files, or whole directories, at once
+    if (opts.target.equals("format")
+        && !opts.lexer
+        && !opts.parser
+        && !opts.analyzer
+        && (operands.size() > 1
+            || new File(operands.get(0)).isDirectory()
+            || opts.args.containsKey("check"))) {
+      int status = formatAll(opts, operands);
+      if (status != 0) {
+        System.exit(status);
+      }
+      return;
+    }
+
     // Check if multiple files were supplied
     if (operands.size() > 1) {
       printError("Only one file can be specified");
@@ -275,51 +411,177 @@ public class Main {
     }
 
     var file = new File(operands.get(0));
+
+    // Keep recompiling until interrupted
+    if (opts.watch) {
+      try {
+        Watcher.watch(opts, file);
+      } catch (IOException | CompilerException e) {
+        printError(e.getMessage());
+        System.exit(1);
+      }
+      return;
+    }
+
+    // Forward the request to a running daemon, or compile in-process if there is none
+    if (!opts.noDaemon) {
+      var status = Daemon.request(opts, file);
+      if (status.isPresent()) {
+        if (status.get() != 0) {
+          System.exit(status.get());
+        }
+        return;
+      }
+    }
+    if (compile(opts, file, null) != 0) {
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Executes the phase or target requested in {@code opts} on {@code file}.
+   *
+   * @param opts compilation options
+   * @param file file to compile
+   * @param cache cache of parsed files, or {@code null}
+   * @return the exit status
+   */
+  static int compile(Options opts, File file, ParseCache cache) {
     var LOGGER = new MalLogger("MAIN", opts.verbose, opts.debug);
+    var profiler = new Profiler(opts.profile != null, opts.profileRetained);
 
     // Execute requested phase
     try {
       if (opts.lexer) {
-        Lexer lexer = new Lexer(file, opts.verbose, opts.debug);
-        Token token = lexer.next();
-        while (token.type != TokenType.EOF) {
-          System.out.println(token.toString());
-          token = lexer.next();
-        }
+        profiler.run(
+            "lexer",
+            () -> {
+              Lexer lexer = new Lexer(file, opts.verbose, opts.debug);
+              Token token = lexer.next();
+              while (token.type != TokenType.EOF) {
+                System.out.println(token.toString());
+                token = lexer.next();
+              }
+            });
       } else if (opts.parser) {
-        AST ast = Parser.parse(file, opts.verbose, opts.debug);
+        AST ast =
+            profiler.measure("parser", () -> Parser.parse(file, cache, opts.verbose, opts.debug));
         System.out.print(ast.toString());
       } else if (opts.analyzer) {
-        Analyzer.analyze(Parser.parse(file), opts.verbose, opts.debug);
+        AST ast = parse(profiler, file, cache);
+        profiler.run("analyzer", () -> Analyzer.analyze(ast, opts.verbose, opts.debug));
       } else if (opts.target.equals("format")) {
-        Formatter.format(file, opts.args);
+        profiler.run("formatter", () -> Formatter.format(file, opts.args));
       } else if (opts.target.equals("reference")) {
-        AST ast = Parser.parse(file);
-        Analyzer.analyze(ast);
-        Lang lang = LangConverter.convert(ast);
-        org.mal_lang.compiler.lib.reference.Generator.generate(
-            lang, opts.args, opts.verbose, opts.debug);
+        Lang lang = convert(profiler, parse(profiler, file, cache));
+        profiler.run(
+            "reference generator",
+            () ->
+                org.mal_lang.compiler.lib.reference.Generator.generate(
+                    lang, opts.args, opts.verbose, opts.debug));
       } else if (opts.target.equals("securicad")) {
-        AST ast = Parser.parse(file);
-        Analyzer.analyze(ast);
-        Lang lang = LangConverter.convert(ast);
-        org.mal_lang.compiler.lib.securicad.Generator.generate(
-            lang, opts.args, opts.verbose, opts.debug);
+        Lang lang = convert(profiler, parse(profiler, file, cache));
+        profiler.run(
+            "securicad generator",
+            () ->
+                org.mal_lang.compiler.lib.securicad.Generator.generate(
+                    lang, opts.args, opts.verbose, opts.debug));
       } else if (opts.target.equals("d3")) {
-        AST ast = Parser.parse(file);
-        Analyzer.analyze(ast);
-        Lang lang = LangConverter.convert(ast);
-        org.mal_lang.compiler.lib.d3.Generator.generate(lang, opts.args);
+        Lang lang = convert(profiler, parse(profiler, file, cache));
+        profiler.run(
+            "d3 generator", () -> org.mal_lang.compiler.lib.d3.Generator.generate(lang, opts.args));
       } else {
         throw new CompilerException(String.format("Invalid compilation target %s", opts.target));
       }
+      if (profiler.isEnabled()) {
+        if (opts.profile.equals("json")) {
+          System.err.println(profiler.toJson());
+        } else {
+          System.err.print(profiler.toTable());
+        }
+      }
+      return 0;
     } catch (IOException | CompilerException e) {
       var msg = e.getMessage();
       if (msg != null && !msg.isBlank()) {
         LOGGER.error(e.getMessage());
       }
       LOGGER.print();
-      System.exit(1);
+      return 1;
+    }
+  }
+
+  /**
+   * Formats every file in {@code operands}, and every MAL file in the directories among them, in
+   * place on {@code opts.jobs} threads. With the format argument "check", files are not written.
+   *
+   * <p>The paths of the files that changed, or would change, are printed to stdout.
+   *
+   * @return 0 if no file failed and, in check mode, no file would change, 1 if some file would
+   *     change, and 2 if some file could not be formatted
+   */
+  static int formatAll(Options opts, List<String> operands) {
+    var LOGGER = new MalLogger("MAIN", opts.verbose, opts.debug);
+    var paths = new ArrayList<File>();
+    for (var operand : operands) {
+      paths.add(new File(operand));
+    }
+    try {
+      var results = BulkFormatter.format(paths, opts.args, opts.jobs);
+      // The argument is valid once the files have been formatted
+      boolean check = Boolean.parseBoolean(opts.args.getOrDefault("check", "false").strip());
+      int changed = 0;
+      int failed = 0;
+      for (var result : results) {
+        if (result.isFailed()) {
+          failed++;
+          LOGGER.error(String.format("%s: %s", result.getFile().getPath(), result.getError()));
+        } else if (result.isChanged()) {
+          changed++;
+          System.out.println(result.getFile().getPath());
+        }
+      }
+      LOGGER.info(
+          String.format(
+              "%d files, %d %s, %d failed",
+              results.size(), changed, check ? "would change" : "changed", failed));
+      LOGGER.print();
+      if (failed != 0) {
+        return 2;
+      }
+      return check && changed != 0 ? 1 : 0;
+    } catch (IOException | CompilerException e) {
+      var msg = e.getMessage();
+      if (msg != null && !msg.isBlank()) {
+        LOGGER.error(msg);
+      }
+      LOGGER.print();
+      return 2;
     }
   }
+
+  private static AST parse(Profiler profiler, File file, ParseCache cache)
+      throws IOException, CompilerException {
+    // A cache is needed to know which files to lex when profiling
+    var parseCache = cache == null && profiler.isEnabled() ? new ParseCache() : cache;
+    AST ast = profiler.measure("parser", () -> Parser.parse(file, parseCache, false, false));
+    if (profiler.isEnabled()) {
+      // The parser lexes while parsing, lex all files again to measure the lexer on its own
+      var files = parseCache.getFiles(file);
+      profiler.run(
+          "lexer",
+          () -> {
+            for (var included : files) {
+              var lexer = new Lexer(included);
+              while (lexer.next().type != TokenType.EOF) {}
+            }
+          });
+    }
+    return ast;
+  }
+
+  private static Lang convert(Profiler profiler, AST ast) throws IOException, CompilerException {
+    profiler.run("analyzer", () -> Analyzer.analyze(ast));
+    return profiler.measure("lang converter", () -> LangConverter.convert(ast));
+  }
 }
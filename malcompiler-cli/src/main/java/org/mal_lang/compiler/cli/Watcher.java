@@ -0,0 +1,311 @@
+/*
+ * Copyright 2019-2022 Foreseeti AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mal_lang.compiler.cli;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.mal_lang.compiler.lib.AST;
+import org.mal_lang.compiler.lib.Analyzer;
+import org.mal_lang.compiler.lib.CompilerException;
+import org.mal_lang.compiler.lib.Lang;
+import org.mal_lang.compiler.lib.LangConverter;
+import org.mal_lang.compiler.lib.MalLogger;
+import org.mal_lang.compiler.lib.ParseCache;
+import org.mal_lang.compiler.lib.Parser;
+
+/**
+ * Watcher recompiles a specification every time its main file or one of its transitively
+ * included files changes.
+ *
+ * <p>Unchanged files are not parsed again. Generated sources are produced in a scratch directory
+ * and only files whose content differs are written to the output directory, so that tools
+ * watching the output only see the sources that actually changed. Files that are no longer
+ * generated are removed. Every compilation reports the latency of each phase.
+ */
+class Watcher {
+  // Editors often save a file in several steps, wait for them to settle before compiling
+  private static final long SETTLE_TIME = 50;
+
+  private final MalLogger LOGGER;
+  private final Main.Options opts;
+  private final File file;
+  private final ParseCache cache = new ParseCache();
+  private final WatchService watchService;
+  private final Map<WatchKey, Path> watchedDirs = new HashMap<>();
+  private Set<Path> watchedFiles = new HashSet<>();
+  private final Path output;
+  private Set<Path> generated = new HashSet<>();
+
+  private Watcher(Main.Options opts, File file) throws IOException, CompilerException {
+    // Phase latencies are always reported
+    LOGGER = new MalLogger("WATCH", true, opts.debug, false);
+    this.opts = opts;
+    this.file = file.getCanonicalFile();
+    this.watchService = FileSystems.getDefault().newWatchService();
+    if (opts.target.equals("format")) {
+      throw new CompilerException("Watch mode does not support the format target");
+    }
+    var path = opts.args.get("path");
+    if (opts.lexer || opts.parser || opts.analyzer || path == null || path.isBlank()) {
+      this.output = null;
+    } else if (opts.target.equals("d3")) {
+      this.output = Path.of(path).toAbsolutePath();
+    } else if (!Path.of(path).isAbsolute()) {
+      // Let the generator report the invalid argument
+      this.output = null;
+    } else {
+      this.output = Path.of(path);
+      if (Files.isDirectory(output)) {
+        try (var entries = Files.list(output)) {
+          if (entries.anyMatch(entry -> !entry.getFileName().toString().startsWith("."))) {
+            throw new CompilerException("Argument 'path' must be an empty directory");
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Compiles {@code file} and then recompiles it on every change until the JVM is terminated.
+   *
+   * @param opts compilation options
+   * @param file file to compile
+   * @throws IOException if the files cannot be watched
+   * @throws CompilerException if the options cannot be used in watch mode
+   */
+  public static void watch(Main.Options opts, File file) throws IOException, CompilerException {
+    var watcher = new Watcher(opts, file);
+    while (true) {
+      watcher.compile();
+      watcher.updateWatchedFiles();
+      watcher.awaitChange();
+    }
+  }
+
+  private void compile() {
+    var phases = new ArrayList<String>();
+    long start = System.nanoTime();
+    long phaseStart = start;
+    try {
+      if (opts.lexer) {
+        Main.compile(opts, file, cache);
+        phases.add(phase("lex", phaseStart));
+      } else {
+        AST ast = Parser.parse(file, cache, opts.parser && opts.verbose, opts.parser && opts.debug);
+        phases.add(phase("parse", phaseStart));
+        if (opts.parser) {
+          System.out.print(ast.toString());
+        } else {
+          phaseStart = System.nanoTime();
+          if (opts.analyzer) {
+            Analyzer.analyze(ast, opts.verbose, opts.debug);
+          } else {
+            Analyzer.analyze(ast);
+          }
+          phases.add(phase("analyze", phaseStart));
+          if (!opts.analyzer) {
+            phaseStart = System.nanoTime();
+            Lang lang = LangConverter.convert(ast);
+            phases.add(phase("convert", phaseStart));
+            generate(lang, phases);
+          }
+        }
+      }
+      LOGGER.info(
+          String.format(
+              "Compiled %s in %d ms (%s)",
+              file.getName(), millis(start), String.join(", ", phases)));
+    } catch (IOException | CompilerException e) {
+      var msg = e.getMessage();
+      if (msg != null && !msg.isBlank()) {
+        LOGGER.error(msg);
+      }
+      LOGGER.info(
+          String.format(
+              "Compilation of %s failed after %d ms, waiting for changes",
+              file.getName(), millis(start)));
+    }
+  }
+
+  private void generate(Lang lang, List<String> phases) throws IOException, CompilerException {
+    long phaseStart = System.nanoTime();
+    if (output == null) {
+      runGenerator(lang, opts.args);
+      phases.add(phase("generate", phaseStart));
+      return;
+    }
+    var scratch = Files.createTempDirectory("malc");
+    try {
+      var args = new HashMap<>(opts.args);
+      args.put("path", scratch.toString());
+      runGenerator(lang, args);
+      phases.add(phase("generate", phaseStart));
+      phaseStart = System.nanoTime();
+      int written = sync(scratch);
+      phases.add(phase(String.format("write %d files", written), phaseStart));
+    } finally {
+      deleteRecursive(scratch);
+    }
+  }
+
+  private void runGenerator(Lang lang, Map<String, String> args)
+      throws IOException, CompilerException {
+    if (opts.target.equals("reference")) {
+      org.mal_lang.compiler.lib.reference.Generator.generate(
+          lang, args, opts.verbose, opts.debug);
+    } else if (opts.target.equals("securicad")) {
+      org.mal_lang.compiler.lib.securicad.Generator.generate(
+          lang, args, opts.verbose, opts.debug);
+    } else if (opts.target.equals("d3")) {
+      org.mal_lang.compiler.lib.d3.Generator.generate(lang, args);
+    } else {
+      throw new CompilerException(String.format("Invalid compilation target %s", opts.target));
+    }
+  }
+
+  /**
+   * Copies the files in {@code scratch} that differ from the output directory, and deletes
+   * previously generated files that were not generated this time.
+   *
+   * @return the number of written files
+   */
+  private int sync(Path scratch) throws IOException {
+    Set<Path> files;
+    try (var walk = Files.walk(scratch)) {
+      files =
+          walk.filter(Files::isRegularFile)
+              .map(scratch::relativize)
+              .collect(Collectors.toCollection(HashSet::new));
+    }
+    int written = 0;
+    for (var relative : files) {
+      var source = scratch.resolve(relative);
+      var target = output.resolve(relative);
+      if (Files.isRegularFile(target)
+          && Files.size(source) == Files.size(target)
+          && Arrays.equals(Files.readAllBytes(source), Files.readAllBytes(target))) {
+        continue;
+      }
+      Files.createDirectories(target.getParent());
+      Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+      LOGGER.debug(String.format("Wrote %s", relative));
+      written++;
+    }
+    for (var relative : generated) {
+      if (!files.contains(relative)) {
+        Files.deleteIfExists(output.resolve(relative));
+        LOGGER.debug(String.format("Deleted %s", relative));
+      }
+    }
+    generated = files;
+    return written;
+  }
+
+  private void updateWatchedFiles() throws IOException {
+    var files = new HashSet<Path>();
+    for (var dependency : cache.getFiles(file)) {
+      files.add(dependency.toPath());
+    }
+    // Keep watching files of earlier compilations, an include may fail to parse right now
+    files.addAll(watchedFiles);
+    for (var path : files) {
+      var dir = path.getParent();
+      if (!watchedDirs.containsValue(dir)) {
+        var key = dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+        watchedDirs.put(key, dir);
+      }
+    }
+    watchedFiles = files;
+    LOGGER.debug(String.format("Watching %d files", watchedFiles.size()));
+  }
+
+  private void awaitChange() throws IOException {
+    var changed = new HashSet<Path>();
+    try {
+      while (changed.isEmpty()) {
+        var key = watchService.take();
+        collectChanges(key, changed);
+        // Drain events that arrive while the editor is still writing
+        while ((key = watchService.poll(SETTLE_TIME, TimeUnit.MILLISECONDS)) != null) {
+          collectChanges(key, changed);
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for changes");
+    }
+    for (var path : changed) {
+      LOGGER.info(String.format("Changed %s", path));
+      cache.invalidate(path.toFile());
+    }
+  }
+
+  private void collectChanges(WatchKey key, Set<Path> changed) {
+    var dir = watchedDirs.get(key);
+    for (var event : key.pollEvents()) {
+      if (event.kind() == OVERFLOW) {
+        // Events were lost, assume that everything changed
+        cache.clear();
+        changed.addAll(watchedFiles);
+      } else if (dir != null) {
+        var path = dir.resolve((Path) event.context());
+        if (watchedFiles.contains(path)) {
+          changed.add(path);
+        }
+      }
+    }
+    if (!key.reset()) {
+      watchedDirs.remove(key);
+    }
+  }
+
+  private static String phase(String name, long start) {
+    return String.format("%s %d ms", name, millis(start));
+  }
+
+  private static long millis(long start) {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+  }
+
+  private static void deleteRecursive(Path path) throws IOException {
+    try (var walk = Files.walk(path)) {
+      for (var entry : walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+        Files.delete(entry);
+      }
+    }
+  }
+}
@@ -5,7 +5,35 @@ set BIN_DIR=%BIN_DIR:~0,-1%
 for %%F in ("%BIN_DIR%") do set RUNTIME_DIR=%%~dpF
 set RUNTIME_DIR=%RUNTIME_DIR:~0,-1%
 
+rem The class data sharing archive only works at the location it was created at,
+rem so it is recreated from the class list when the runtime has been moved
+set CLASS_LIST=%RUNTIME_DIR%\lib\malc.classlist
+set ARCHIVE=%RUNTIME_DIR%\lib\malc.jsa
+set CDS_OPTS=
+if not exist "%CLASS_LIST%" goto run
+set ARCHIVE_LOCATION=
+if exist "%ARCHIVE%.location" set /p ARCHIVE_LOCATION=<"%ARCHIVE%.location"
+if "%ARCHIVE_LOCATION%"=="%RUNTIME_DIR%" goto cds
+rem Skip the dump when the runtime is not writable
+copy /y nul "%ARCHIVE%.tmp" >nul 2>&1
+if errorlevel 1 goto cds
+del /f /q "%ARCHIVE%.tmp" >nul 2>&1
+if exist "%ARCHIVE%" del /f /q "%ARCHIVE%" >nul 2>&1
 "%BIN_DIR%\java" ^
+  -Xshare:dump ^
+  -XX:SharedClassListFile="%CLASS_LIST%" ^
+  -XX:SharedArchiveFile="%ARCHIVE%" ^
+  --module-path "%RUNTIME_DIR%\dependencies" ^
+  --module "org.mal_lang.compiler.cli" >nul 2>&1
+if errorlevel 1 del /f /q "%ARCHIVE%" >nul 2>&1
+rem The attempt is recorded even if it failed, so that the dump is tried at
+rem most once per location
+>"%ARCHIVE%.location" echo %RUNTIME_DIR%
+:cds
+if exist "%ARCHIVE%" set CDS_OPTS=-XX:SharedArchiveFile="%ARCHIVE%" -Xshare:auto
+:run
+
+"%BIN_DIR%\java" %CDS_OPTS% ^
   --module-path "%RUNTIME_DIR%\dependencies" ^
   --module "org.mal_lang.compiler.cli" ^
   %*
@@ -19,11 +19,15 @@ module org.mal_lang.compiler.lib {
   exports org.mal_lang.compiler.lib.d3;
   exports org.mal_lang.compiler.lib.reference;
   exports org.mal_lang.compiler.lib.securicad;
+  exports org.mal_lang.compiler.lib.synthetic;
 
   requires com.squareup.javapoet;
   requires java.compiler;
   requires java.logging;
+  requires java.management;
   requires java.desktop;
+  requires jdk.jfr;
+  requires jdk.management;
   requires svgSalamander;
   requires jakarta.json;
 }
@@ -17,6 +17,7 @@ package org.mal_lang.compiler.lib;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
 
 public class AST {
@@ -442,7 +443,7 @@ public class AST {
       var sb = new StringBuilder();
       sb.append(String.format("TTCFuncExpr(%s, %s", posString(), name.toString()));
       for (var p : params) {
-        sb.append(String.format(", %f", p));
+        sb.append(String.format(Locale.ROOT, ", %f", p));
       }
       sb.append(')');
       return sb.toString();
@@ -459,7 +460,7 @@ public class AST {
 
     @Override
     public String toString() {
-      return String.format("TTCNumExpr(%s, %f)", posString(), value);
+      return String.format(Locale.ROOT, "TTCNumExpr(%s, %f)", posString(), value);
     }
   }
 
@@ -23,7 +23,6 @@ import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 
@@ -41,7 +40,6 @@ public class Analyzer {
   private boolean failed;
 
   private Analyzer(AST ast, boolean verbose, boolean debug) {
-    Locale.setDefault(Locale.ROOT);
     LOGGER = new MalLogger("ANALYZER", verbose, debug);
     this.ast = ast;
   }
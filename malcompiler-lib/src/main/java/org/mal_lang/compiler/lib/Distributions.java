@@ -15,7 +15,9 @@
  */
 package org.mal_lang.compiler.lib;
 
+import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
 
 public class Distributions {
 
@@ -105,8 +107,47 @@ public class Distributions {
     }
   }
 
+  /**
+   * A source of uniformly distributed random bits, e.g. {@code new
+   * SplittableRandom(seed)::nextLong} or {@code ThreadLocalRandom.current()::nextLong}. It is the
+   * core of {@code java.util.random.RandomGenerator}, which is not available before Java 17.
+   */
+  @FunctionalInterface
+  public interface RandomSource {
+    long nextLong();
+
+    /** Returns a uniform double in [0, 1). */
+    default double nextDouble() {
+      return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+  }
+
+  /**
+   * A probability distribution of a MAL specification.
+   *
+   * <p>Samples are TTC values, with the same semantics as {@link TTCProgram} and the securiCAD
+   * generator: a Bernoulli sample is an attempt, which takes no time with the given probability and
+   * {@link Double#MAX_VALUE} otherwise, the uncertain combinations add an attempt to an exponential
+   * sample, and Infinity samples {@link Double#MAX_VALUE}. {@link #getMean()} instead keeps the
+   * conventions of the attacker profile, where the mean of a Bernoulli distribution is its
+   * probability. Sampling never allocates.
+   */
   public interface Distribution {
     double getMean();
+
+    /** Draws one value from this distribution. */
+    double sample(RandomSource random);
+
+    /**
+     * Fills {@code out} with independent values drawn from this distribution. The parameterized
+     * distributions override this with their own loop, so that the call to {@link #sample} in it
+     * is monomorphic and can be inlined.
+     */
+    default void fill(RandomSource random, double[] out) {
+      for (int i = 0; i < out.length; i++) {
+        out[i] = sample(random);
+      }
+    }
   }
 
   public static class Bernoulli implements Distribution {
@@ -137,9 +178,21 @@ public class Distributions {
       return probability;
     }
 
+    @Override
+    public double sample(RandomSource random) {
+      return random.nextDouble() < probability ? 0 : Double.MAX_VALUE;
+    }
+
+    @Override
+    public void fill(RandomSource random, double[] out) {
+      for (int i = 0; i < out.length; i++) {
+        out[i] = sample(random);
+      }
+    }
+
     @Override
     public String toString() {
-      return String.format("Bernoulli(%f)", probability);
+      return String.format(Locale.ROOT, "Bernoulli(%f)", probability);
     }
   }
 
@@ -173,9 +226,21 @@ public class Distributions {
       return trials * probability;
     }
 
+    @Override
+    public double sample(RandomSource random) {
+      return Sampling.binomial(random, trials, probability);
+    }
+
+    @Override
+    public void fill(RandomSource random, double[] out) {
+      for (int i = 0; i < out.length; i++) {
+        out[i] = sample(random);
+      }
+    }
+
     @Override
     public String toString() {
-      return String.format("Binomial(%d, %f)", trials, probability);
+      return String.format(Locale.ROOT, "Binomial(%d, %f)", trials, probability);
     }
   }
 
@@ -207,19 +272,36 @@ public class Distributions {
       return 1 / lambda;
     }
 
+    @Override
+    public double sample(RandomSource random) {
+      return Sampling.exponential(random) / lambda;
+    }
+
+    @Override
+    public void fill(RandomSource random, double[] out) {
+      for (int i = 0; i < out.length; i++) {
+        out[i] = sample(random);
+      }
+    }
+
     @Override
     public String toString() {
-      return String.format("Exponential(%f)", lambda);
+      return String.format(Locale.ROOT, "Exponential(%f)", lambda);
     }
   }
 
   public static class Gamma implements Distribution {
     public final double shape;
     public final double scale;
+    // Constants of the method of Marsaglia and Tsang, shapes below 1 are sampled at shape + 1
+    private final double d;
+    private final double c;
 
     public Gamma(double shape, double scale) {
       this.shape = shape;
       this.scale = scale;
+      this.d = (shape < 1 ? shape + 1 : shape) - 1.0 / 3;
+      this.c = 1 / Math.sqrt(9 * d);
     }
 
     public Gamma(List<Double> params) {
@@ -246,9 +328,25 @@ public class Distributions {
       return shape * scale;
     }
 
+    @Override
+    public double sample(RandomSource random) {
+      double sample = Sampling.gamma(random, d, c);
+      if (shape < 1) {
+        sample *= Math.pow(Sampling.positiveUniform(random), 1 / shape);
+      }
+      return sample * scale;
+    }
+
+    @Override
+    public void fill(RandomSource random, double[] out) {
+      for (int i = 0; i < out.length; i++) {
+        out[i] = sample(random);
+      }
+    }
+
     @Override
     public String toString() {
-      return String.format("Gamma(%f, %f)", shape, scale);
+      return String.format(Locale.ROOT, "Gamma(%f, %f)", shape, scale);
     }
   }
 
@@ -283,9 +381,21 @@ public class Distributions {
       return Math.exp(mean + Math.pow(standardDeviation, 2) / 2);
     }
 
+    @Override
+    public double sample(RandomSource random) {
+      return Math.exp(mean + standardDeviation * Sampling.normal(random));
+    }
+
+    @Override
+    public void fill(RandomSource random, double[] out) {
+      for (int i = 0; i < out.length; i++) {
+        out[i] = sample(random);
+      }
+    }
+
     @Override
     public String toString() {
-      return String.format("LogNormal(%f, %f)", mean, standardDeviation);
+      return String.format(Locale.ROOT, "LogNormal(%f, %f)", mean, standardDeviation);
     }
   }
 
@@ -326,19 +436,41 @@ public class Distributions {
       }
     }
 
+    @Override
+    public double sample(RandomSource random) {
+      // min * U^(-1 / shape), where -log(U) is a standard exponential
+      return min * Math.exp(Sampling.exponential(random) / shape);
+    }
+
+    @Override
+    public void fill(RandomSource random, double[] out) {
+      for (int i = 0; i < out.length; i++) {
+        out[i] = sample(random);
+      }
+    }
+
     @Override
     public String toString() {
-      return String.format("Pareto(%f, %f)", min, shape);
+      return String.format(Locale.ROOT, "Pareto(%f, %f)", min, shape);
     }
   }
 
+  /** A normal distribution truncated to non-negative values. */
   public static class TruncatedNormal implements Distribution {
+    // Below this bound, rejecting negative normal samples accepts at least a third of them
+    private static final double ROBERT_ALPHA = 0.45;
+
     public final double mean;
     public final double standardDeviation;
+    // The truncation point in standard units, and the optimal rate of the tail proposal
+    private final double alpha;
+    private final double lambda;
 
     public TruncatedNormal(double mean, double standardDeviation) {
       this.mean = mean;
       this.standardDeviation = standardDeviation;
+      this.alpha = -mean / standardDeviation;
+      this.lambda = (alpha + Math.sqrt(alpha * alpha + 4)) / 2;
     }
 
     public TruncatedNormal(List<Double> params) {
@@ -364,9 +496,32 @@ public class Distributions {
       return mean;
     }
 
+    @Override
+    public double sample(RandomSource random) {
+      double z;
+      if (alpha < ROBERT_ALPHA) {
+        do {
+          z = Sampling.normal(random);
+        } while (z < alpha);
+      } else {
+        // Far into the tail, propose from an exponential shifted to alpha
+        do {
+          z = alpha + Sampling.exponential(random) / lambda;
+        } while (random.nextDouble() > Math.exp(-0.5 * (z - lambda) * (z - lambda)));
+      }
+      return mean + standardDeviation * z;
+    }
+
+    @Override
+    public void fill(RandomSource random, double[] out) {
+      for (int i = 0; i < out.length; i++) {
+        out[i] = sample(random);
+      }
+    }
+
     @Override
     public String toString() {
-      return String.format("TruncatedNormal(%f, %f)", mean, standardDeviation);
+      return String.format(Locale.ROOT, "TruncatedNormal(%f, %f)", mean, standardDeviation);
     }
   }
 
@@ -400,9 +555,21 @@ public class Distributions {
       return (min + max) / 2;
     }
 
+    @Override
+    public double sample(RandomSource random) {
+      return min + (max - min) * random.nextDouble();
+    }
+
+    @Override
+    public void fill(RandomSource random, double[] out) {
+      for (int i = 0; i < out.length; i++) {
+        out[i] = sample(random);
+      }
+    }
+
     @Override
     public String toString() {
-      return String.format("Uniform(%f, %f)", min, max);
+      return String.format(Locale.ROOT, "Uniform(%f, %f)", min, max);
     }
   }
 
@@ -425,6 +592,11 @@ public class Distributions {
       return exponential.getMean();
     }
 
+    @Override
+    public double sample(RandomSource random) {
+      return exponential.sample(random);
+    }
+
     @Override
     public String toString() {
       return "EasyAndCertain";
@@ -439,6 +611,11 @@ public class Distributions {
       return bernoulli.getMean();
     }
 
+    @Override
+    public double sample(RandomSource random) {
+      return bernoulli.sample(random);
+    }
+
     @Override
     public String toString() {
       return "EasyAndUncertain";
@@ -453,6 +630,11 @@ public class Distributions {
       return exponential.getMean();
     }
 
+    @Override
+    public double sample(RandomSource random) {
+      return exponential.sample(random);
+    }
+
     @Override
     public String toString() {
       return "HardAndCertain";
@@ -468,6 +650,12 @@ public class Distributions {
       return bernoulli.getMean() * exponential.getMean();
     }
 
+    @Override
+    public double sample(RandomSource random) {
+      double attempt = bernoulli.sample(random);
+      return Math.min(attempt + exponential.sample(random), Double.MAX_VALUE);
+    }
+
     @Override
     public String toString() {
       return "HardAndUncertain";
@@ -482,6 +670,11 @@ public class Distributions {
       return exponential.getMean();
     }
 
+    @Override
+    public double sample(RandomSource random) {
+      return exponential.sample(random);
+    }
+
     @Override
     public String toString() {
       return "VeryHardAndCertain";
@@ -497,6 +690,12 @@ public class Distributions {
       return bernoulli.getMean() * exponential.getMean();
     }
 
+    @Override
+    public double sample(RandomSource random) {
+      double attempt = bernoulli.sample(random);
+      return Math.min(attempt + exponential.sample(random), Double.MAX_VALUE);
+    }
+
     @Override
     public String toString() {
       return "VeryHardAndUncertain";
@@ -511,6 +710,16 @@ public class Distributions {
       return Double.MAX_VALUE;
     }
 
+    @Override
+    public double sample(RandomSource random) {
+      return Double.MAX_VALUE;
+    }
+
+    @Override
+    public void fill(RandomSource random, double[] out) {
+      Arrays.fill(out, Double.MAX_VALUE);
+    }
+
     @Override
     public String toString() {
       return "Infinity";
@@ -523,6 +732,16 @@ public class Distributions {
       return 0;
     }
 
+    @Override
+    public double sample(RandomSource random) {
+      return 0;
+    }
+
+    @Override
+    public void fill(RandomSource random, double[] out) {
+      Arrays.fill(out, 0);
+    }
+
     @Override
     public String toString() {
       return "Zero";
@@ -535,6 +754,16 @@ public class Distributions {
       return 1;
     }
 
+    @Override
+    public double sample(RandomSource random) {
+      return 1;
+    }
+
+    @Override
+    public void fill(RandomSource random, double[] out) {
+      Arrays.fill(out, 1);
+    }
+
     @Override
     public String toString() {
       return "Enabled";
@@ -547,6 +776,16 @@ public class Distributions {
       return 0;
     }
 
+    @Override
+    public double sample(RandomSource random) {
+      return 0;
+    }
+
+    @Override
+    public void fill(RandomSource random, double[] out) {
+      Arrays.fill(out, 0);
+    }
+
     @Override
     public String toString() {
       return "Disabled";
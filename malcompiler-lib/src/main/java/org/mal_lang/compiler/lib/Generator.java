@@ -16,13 +16,12 @@
 package org.mal_lang.compiler.lib;
 
 import java.io.File;
-import java.util.Locale;
 
 public abstract class Generator {
   protected final MalLogger LOGGER;
+  protected final Name names = new Name();
 
   protected Generator(boolean verbose, boolean debug) {
-    Locale.setDefault(Locale.ROOT);
     LOGGER = new MalLogger("GENERATOR", verbose, debug, false);
   }
 
@@ -30,15 +29,18 @@ public abstract class Generator {
     this.LOGGER = LOGGER;
   }
 
-  /** Name generator to avoid variable duplication. */
+  /**
+   * Name generator to avoid variable duplication. Every generator owns its own instance so that
+   * several generators can run concurrently in the same JVM.
+   */
   protected static class Name {
-    private static int value = 0;
+    private int value = 0;
 
-    public static String get() {
+    public String get() {
       return String.format("_%s", Integer.toHexString(value++));
     }
 
-    public static void reset() {
+    public void reset() {
       value = 0;
     }
   }
@@ -26,6 +26,7 @@ import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Set;
 import javax.lang.model.SourceVersion;
 import javax.lang.model.element.Modifier;
@@ -64,7 +65,7 @@ public abstract class JavaGenerator extends Generator {
     if (str.isEmpty()) {
       return str;
     } else {
-      return str.substring(0, 1).toUpperCase() + str.substring(1, str.length());
+      return str.substring(0, 1).toUpperCase(Locale.ROOT) + str.substring(1, str.length());
     }
   }
 
@@ -314,6 +315,16 @@ public abstract class JavaGenerator extends Generator {
     }
   }
 
+  /** Removes dead variables and step expressions from {@code lang} and logs what was removed. */
+  protected void optimize(Lang lang) {
+    var eliminated = LangOptimizer.optimize(lang);
+    for (var item : eliminated) {
+      LOGGER.info(String.format("Eliminated: %s", item));
+    }
+    LOGGER.info(
+        String.format("Eliminated %d dead variables and step expressions", eliminated.size()));
+  }
+
   protected void fillAlwaysQualifiedNames(Lang lang) {
     var alwaysQualifiedNames = new LinkedHashSet<String>();
     for (var asset : lang.getAssets().values()) {
@@ -362,8 +373,8 @@ public abstract class JavaGenerator extends Generator {
     ClassName hashSet = ClassName.get(HashSet.class);
     TypeName targetSet = ParameterizedTypeName.get(set, targetType);
     TypeName targetList = ParameterizedTypeName.get(list, targetType);
-    String name1 = Name.get();
-    String name2 = Name.get();
+    String name1 = names.get();
+    String name2 = names.get();
     af.addStatement("$T $N = new $T<>()", targetSet, name1, hashSet);
     af.addStatement("$T $N = new $T<>()", targetList, name2, arrayList);
     if (!expr.src.equals(expr.target)) {
@@ -378,7 +389,7 @@ public abstract class JavaGenerator extends Generator {
       af.addStatement("$N.add($T.this)", name2, parentType);
     }
 
-    String name3 = Name.get();
+    String name3 = names.get();
     AutoFlow naf = af.addStatement(new AutoFlow(name3, true, "while (!$N.isEmpty())", name2));
     naf.addStatement("$T $N = $N.remove(0)", targetType, name3, name2);
     AutoFlow deep = generateExpr(naf, expr.e, asset);
@@ -386,7 +397,7 @@ public abstract class JavaGenerator extends Generator {
         deep.addStatement(new AutoFlow("", "if (!$N.contains($N))", name1, deep.prefix));
     inner.addStatement("$N.add($N)", name1, deep.prefix);
     inner.addStatement("$N.add($N)", name2, deep.prefix);
-    String name4 = Name.get();
+    String name4 = names.get();
     return af.addStatement(new AutoFlow(name4, true, "for ($T $N : $N)", targetType, name4, name1));
   }
 
@@ -397,8 +408,8 @@ public abstract class JavaGenerator extends Generator {
     ClassName set = ClassName.get(Set.class);
     ClassName hashSet = ClassName.get(HashSet.class);
     TypeName targetSet = ParameterizedTypeName.get(set, targetType);
-    String name1 = Name.get();
-    String name2 = Name.get();
+    String name1 = names.get();
+    String name2 = names.get();
     af.addStatement("$T $N = new $T<>()", targetSet, name1, hashSet);
     af.addStatement("$T $N = new $T<>()", targetSet, name2, hashSet);
 
@@ -414,7 +425,7 @@ public abstract class JavaGenerator extends Generator {
     } else {
       af.addStatement("$N.removeAll($N)", name1, name2);
     }
-    String name3 = Name.get();
+    String name3 = names.get();
     return af.addStatement(new AutoFlow(name3, true, "for ($T $N : $N)", targetType, name3, name1));
   }
 
@@ -426,7 +437,7 @@ public abstract class JavaGenerator extends Generator {
     if (expr.field.getMax() > 1) {
       // field is set
       ClassName targetType = ClassName.get(pkg, expr.field.getTarget().getAsset().getName());
-      String prefix = Name.get();
+      String prefix = names.get();
       return af.addStatement(
           new AutoFlow(prefix, true, "for ($T $N : $N)", targetType, prefix, name));
     } else {
@@ -467,7 +478,7 @@ public abstract class JavaGenerator extends Generator {
       name = String.format("%s.%s", af.prefix, name);
     }
 
-    String prefix = Name.get();
+    String prefix = names.get();
     return af.addStatement(new AutoFlow(prefix, true, "for (var $N : $N())", prefix, name));
   }
 }
@@ -154,6 +154,14 @@ public class Lang {
       return this.reverseVariables;
     }
 
+    public StepExpr removeVariable(String name) {
+      return this.variables.remove(name);
+    }
+
+    public StepExpr removeReverseVariable(String name) {
+      return this.reverseVariables.remove(name);
+    }
+
     public String getName() {
       return this.name;
     }
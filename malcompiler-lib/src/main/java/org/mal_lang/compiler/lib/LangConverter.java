@@ -18,7 +18,6 @@ package org.mal_lang.compiler.lib;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
 
@@ -29,7 +28,6 @@ public class LangConverter {
   private Map<String, String> astDefines = new LinkedHashMap<>();
 
   private LangConverter(AST ast, boolean verbose, boolean debug) {
-    Locale.setDefault(Locale.ROOT);
     LOGGER = new MalLogger("LANG_CONVERTER", verbose, debug);
     // Collect categories
     var allAstCategories = ast.getCategories();
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2019-2022 Foreseeti AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mal_lang.compiler.lib;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.mal_lang.compiler.lib.Lang.Asset;
+import org.mal_lang.compiler.lib.Lang.AttackStep;
+import org.mal_lang.compiler.lib.Lang.StepAttackStep;
+import org.mal_lang.compiler.lib.Lang.StepBinOp;
+import org.mal_lang.compiler.lib.Lang.StepCall;
+import org.mal_lang.compiler.lib.Lang.StepExpr;
+import org.mal_lang.compiler.lib.Lang.StepTransitive;
+
+/**
+ * Removes code that generators would otherwise emit for nothing.
+ *
+ * <p>Every variable gets a reverse variable for parent steps, and generators emit a cache field and
+ * a method for each of them, but only variables called from some step expression are ever used.
+ * Passes that remove attack steps, like the removal of debug steps in the securiCAD generator, can
+ * also leave variables without callers and step expressions to attack steps that no longer exist.
+ *
+ * <p>Attack steps without reaches or parent steps need no elimination, the generators already emit
+ * no traversal code for them. Attack steps are never removed, since models and attacker profiles
+ * refer to them by name.
+ */
+public final class LangOptimizer {
+  private LangOptimizer() {}
+
+  /**
+   * Removes dead variables and step expressions from {@code lang}.
+   *
+   * @param lang the language to optimize in place
+   * @return a description of everything that was eliminated
+   */
+  public static List<String> optimize(Lang lang) {
+    var report = new ArrayList<String>();
+    removeDanglingSteps(lang, report);
+    removeUnusedVariables(lang, report);
+    return report;
+  }
+
+  private static void removeDanglingSteps(Lang lang, List<String> report) {
+    for (var asset : lang.getAssets().values()) {
+      for (var attackStep : asset.getAttackSteps().values()) {
+        for (var expr : attackStep.getReaches()) {
+          if (isDangling(expr)) {
+            attackStep.removeReaches(expr);
+            report.add(String.format("Reaches of '%s' to a removed attack step", name(attackStep)));
+          }
+        }
+        for (var expr : attackStep.getParentSteps()) {
+          if (isDangling(expr)) {
+            attackStep.removeParentStep(expr);
+            report.add(
+                String.format("Parent step of '%s' from a removed attack step", name(attackStep)));
+          }
+        }
+      }
+    }
+  }
+
+  private static boolean isDangling(StepExpr expr) {
+    var target = getTargetStep(expr);
+    return target.getAsset().getAttackSteps().get(target.getName()) != target;
+  }
+
+  private static void removeUnusedVariables(Lang lang, List<String> report) {
+    var variables = new HashMap<String, StepExpr>();
+    for (var asset : lang.getAssets().values()) {
+      variables.putAll(asset.getVariables());
+      variables.putAll(asset.getReverseVariables());
+    }
+
+    var used = new HashSet<String>();
+    var queue = new ArrayDeque<StepExpr>();
+    for (var asset : lang.getAssets().values()) {
+      for (var attackStep : asset.getAttackSteps().values()) {
+        queue.addAll(attackStep.getRequires());
+        queue.addAll(attackStep.getReaches());
+        queue.addAll(attackStep.getParentSteps());
+      }
+    }
+    while (!queue.isEmpty()) {
+      var calls = new ArrayList<String>();
+      getCalls(queue.remove(), calls);
+      for (var call : calls) {
+        // Variables may call other variables
+        if (used.add(call) && variables.containsKey(call)) {
+          queue.add(variables.get(call));
+        }
+      }
+    }
+
+    for (var asset : lang.getAssets().values()) {
+      removeUnused(asset, asset.getVariables(), used, false, report);
+      removeUnused(asset, asset.getReverseVariables(), used, true, report);
+    }
+  }
+
+  private static void removeUnused(
+      Asset asset,
+      Map<String, StepExpr> variables,
+      Set<String> used,
+      boolean reverse,
+      List<String> report) {
+    for (var name : List.copyOf(variables.keySet())) {
+      if (!used.contains(name)) {
+        if (reverse) {
+          asset.removeReverseVariable(name);
+        } else {
+          asset.removeVariable(name);
+        }
+        report.add(
+            String.format(
+                "%s '%s' in asset '%s' is never called",
+                reverse ? "Reverse variable" : "Variable", name, asset.getName()));
+      }
+    }
+  }
+
+  private static void getCalls(StepExpr expr, List<String> calls) {
+    if (expr instanceof StepCall) {
+      calls.add(((StepCall) expr).name);
+    } else if (expr instanceof StepBinOp) {
+      getCalls(((StepBinOp) expr).lhs, calls);
+      getCalls(((StepBinOp) expr).rhs, calls);
+    } else if (expr instanceof StepTransitive) {
+      getCalls(((StepTransitive) expr).e, calls);
+    }
+  }
+
+  private static AttackStep getTargetStep(StepExpr expr) {
+    if (expr instanceof StepAttackStep) {
+      return ((StepAttackStep) expr).attackStep;
+    } else if (expr instanceof StepBinOp) {
+      return getTargetStep(((StepBinOp) expr).rhs);
+    }
+    throw new RuntimeException("Invalid step expression");
+  }
+
+  private static String name(AttackStep attackStep) {
+    return String.format("%s.%s", attackStep.getAsset().getName(), attackStep.getName());
+  }
+}
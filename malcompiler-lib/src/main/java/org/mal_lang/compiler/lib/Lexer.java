@@ -22,7 +22,6 @@ import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
 
 public class Lexer {
@@ -37,8 +36,10 @@ public class Lexer {
   private List<Byte> lexeme;
   private List<Token> comments = new ArrayList<>();
   private boolean eof;
+  private List<Token> tokens;
+  private int tokenIndex;
 
-  private static Map<String, TokenType> keywords;
+  private static final Map<String, TokenType> keywords;
 
   static {
     keywords = new HashMap<>();
@@ -56,7 +57,7 @@ public class Lexer {
     keywords.put("A", TokenType.A);
   }
 
-  private static Map<String, Byte> escapeSequences;
+  private static final Map<String, Byte> escapeSequences;
 
   static {
     escapeSequences = new HashMap<>();
@@ -82,10 +83,9 @@ public class Lexer {
   }
 
   public Lexer(File file, String relativeName, boolean verbose, boolean debug) throws IOException {
-    Locale.setDefault(Locale.ROOT);
     LOGGER = new MalLogger("LEXER", verbose, debug);
     try {
-      LOGGER.debug(String.format("Creating lexer with file '%s'", relativeName));
+      LOGGER.debug(() -> String.format("Creating lexer with file '%s'", relativeName));
       if (!file.exists()) {
         throw new IOException(String.format("%s: No such file or directory", relativeName));
       }
@@ -101,6 +101,51 @@ public class Lexer {
     }
   }
 
+  /**
+   * Creates a lexer that reads from memory.
+   *
+   * @param input the contents to lex
+   * @param filename the name used in positions and messages
+   */
+  public Lexer(byte[] input, String filename) {
+    LOGGER = new MalLogger("LEXER", false, false);
+    LOGGER.debug(() -> String.format("Creating lexer with buffer '%s'", filename));
+    this.filename = filename;
+    this.input = input;
+    this.index = 0;
+    this.line = 1;
+    this.col = 1;
+    this.eof = input.length == 0;
+  }
+
+  /**
+   * Creates a lexer that returns already lexed tokens, so that several passes over the same input
+   * only lex it once.
+   *
+   * @param tokens tokens ending with EOF, e.g. from {@link #readAll()}
+   */
+  public Lexer(List<Token> tokens) {
+    LOGGER = new MalLogger("LEXER", false, false);
+    this.tokens = tokens;
+    this.tokenIndex = 0;
+  }
+
+  /**
+   * Lexes all remaining tokens.
+   *
+   * @return the tokens, ending with EOF
+   * @throws CompilerException if the input is not lexically valid
+   */
+  public List<Token> readAll() throws CompilerException {
+    var result = new ArrayList<Token>();
+    Token token;
+    do {
+      token = next();
+      result.add(token);
+    } while (token.type != TokenType.EOF);
+    return result;
+  }
+
   public static boolean syntacticallyEqual(Lexer l1, Lexer l2) {
     try {
       var tok1 = l1.next();
@@ -130,6 +175,14 @@ public class Lexer {
   }
 
   public Token next() throws CompilerException {
+    if (tokens != null) {
+      // EOF is returned repeatedly, as when lexing
+      var token = tokens.get(tokenIndex);
+      if (tokenIndex < tokens.size() - 1) {
+        tokenIndex++;
+      }
+      return token;
+    }
     startLine = line;
     startCol = col;
     lexeme = new ArrayList<>();
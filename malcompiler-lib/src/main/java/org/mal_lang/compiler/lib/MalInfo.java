@@ -92,14 +92,14 @@ public final class MalInfo {
     MalInfo.version = version;
   }
 
-  public static String getTitle() throws IOException {
+  public static synchronized String getTitle() throws IOException {
     if (title == null) {
       initManifest();
     }
     return title;
   }
 
-  public static String getVersion() throws IOException {
+  public static synchronized String getVersion() throws IOException {
     if (version == null) {
       initManifest();
     }
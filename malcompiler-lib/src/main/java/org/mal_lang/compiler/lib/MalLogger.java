@@ -17,6 +17,7 @@ package org.mal_lang.compiler.lib;
 
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.function.Supplier;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.Formatter;
 import java.util.logging.Level;
@@ -51,7 +52,7 @@ public class MalLogger extends Logger {
       String colorInit = "";
       String colorClear = "";
 
-      if (System.console() != null) {
+      if (color) {
         switch (level.getName()) {
           case "ERROR":
             colorInit = "\u001B[1;31m";
@@ -131,6 +132,8 @@ public class MalLogger extends Logger {
     }
   }
 
+  private static volatile boolean color = System.console() != null;
+
   private boolean verbose;
   private boolean debug;
   private boolean isBuffered;
@@ -167,6 +170,16 @@ public class MalLogger extends Logger {
     addHandler(handler);
   }
 
+  /** Returns whether log levels are colored, by default only when there is a console. */
+  public static boolean isColor() {
+    return color;
+  }
+
+  /** Sets whether log levels are colored, for output that ends up on another console. */
+  public static void setColor(boolean color) {
+    MalLogger.color = color;
+  }
+
   public boolean isVerbose() {
     return this.verbose;
   }
@@ -179,7 +192,11 @@ public class MalLogger extends Logger {
     return isBuffered;
   }
 
-  private void log(LogMessage logMessage) {
+  private synchronized void log(LogMessage logMessage) {
+    // Messages below the level would never be printed, don't keep them around
+    if (!isLoggable(logMessage.level)) {
+      return;
+    }
     if (isBuffered) {
       logMessages.add(logMessage);
     } else {
@@ -195,6 +212,20 @@ public class MalLogger extends Logger {
     log(new LogMessage(MalLevel.DEBUG, msg));
   }
 
+  /** Logs the message of {@code msg} at debug level, only calling it if debug is enabled. */
+  public void debug(Position pos, Supplier<String> msg) {
+    if (isLoggable(MalLevel.DEBUG)) {
+      debug(pos, msg.get());
+    }
+  }
+
+  /** Logs the message of {@code msg} at debug level, only calling it if debug is enabled. */
+  public void debug(Supplier<String> msg) {
+    if (isLoggable(MalLevel.DEBUG)) {
+      debug(msg.get());
+    }
+  }
+
   public void info(Position pos, String msg) {
     log(new LogMessagePosition(MalLevel.INFO, msg, pos));
   }
@@ -204,6 +235,21 @@ public class MalLogger extends Logger {
     log(new LogMessage(MalLevel.INFO, msg));
   }
 
+  /** Logs the message of {@code msg} at info level, only calling it if info is enabled. */
+  public void info(Position pos, Supplier<String> msg) {
+    if (isLoggable(MalLevel.INFO)) {
+      info(pos, msg.get());
+    }
+  }
+
+  /** Logs the message of {@code msg} at info level, only calling it if info is enabled. */
+  @Override
+  public void info(Supplier<String> msg) {
+    if (isLoggable(MalLevel.INFO)) {
+      info(msg.get());
+    }
+  }
+
   public void warning(Position pos, String msg) {
     log(new LogMessagePosition(MalLevel.WARNING, msg, pos));
   }
@@ -213,6 +259,11 @@ public class MalLogger extends Logger {
     log(new LogMessage(MalLevel.WARNING, msg));
   }
 
+  @Override
+  public void warning(Supplier<String> msg) {
+    warning(msg.get());
+  }
+
   public void error(Position pos, String msg) {
     log(new LogMessagePosition(MalLevel.ERROR, msg, pos));
   }
@@ -221,7 +272,7 @@ public class MalLogger extends Logger {
     log(new LogMessage(MalLevel.ERROR, msg));
   }
 
-  public void print() {
+  public synchronized void print() {
     for (var logMessage : logMessages) {
       log(logMessage.level, logMessage.toString());
     }
@@ -0,0 +1,321 @@
+/*
+ * Copyright 2019-2022 Foreseeti AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mal_lang.compiler.lib;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * ParseCache keeps the parse result of every file parsed through it, so that repeated
+ * compilations in the same JVM only lex and parse files that have changed on disk.
+ *
+ * <p>A file is stored without its includes resolved: its own declarations are split into pieces
+ * at every include directive. When a cached file is reused, the pieces are merged with freshly
+ * resolved includes, so include deduplication behaves exactly as when parsing from scratch.
+ *
+ * <p>Each file is stored once, whichever specification includes it. Positions name files relative
+ * to the directory of the main file, so a file reused by a specification in another directory gets
+ * a copy of its pieces with its positions renamed. A cache may be shared between threads.
+ */
+public class ParseCache {
+  private final Map<File, Unit> units = new ConcurrentHashMap<>();
+
+  /** Removes all cached files. */
+  public void clear() {
+    units.clear();
+  }
+
+  /** Removes the cached parse results of {@code file}. */
+  public void invalidate(File file) {
+    units.remove(file);
+  }
+
+  /** Returns the number of cached parse results. */
+  public int size() {
+    return units.size();
+  }
+
+  /**
+   * Returns {@code file} and the files it transitively includes, as recorded by the most recent
+   * parse of {@code file} through this cache. Only {@code file} itself is returned if it has not
+   * been parsed successfully.
+   *
+   * @param file the main file of a specification
+   * @return the files that {@code file} depends on
+   * @throws IOException if the canonical path of {@code file} cannot be determined
+   */
+  public Set<File> getFiles(File file) throws IOException {
+    var canonicalFile = file.getCanonicalFile();
+    var files = new LinkedHashSet<File>();
+    var queue = new ArrayDeque<File>();
+    files.add(canonicalFile);
+    queue.add(canonicalFile);
+    while (!queue.isEmpty()) {
+      var unit = units.get(queue.remove());
+      if (unit == null) {
+        continue;
+      }
+      for (var include : unit.includes) {
+        if (files.add(include.file)) {
+          queue.add(include.file);
+        }
+      }
+    }
+    return files;
+  }
+
+  Unit get(File file, Path originPath) {
+    var unit = units.get(file);
+    if (unit == null || unit.length != file.length()) {
+      return null;
+    }
+    // Modification times are too coarse to tell quick successive edits apart, so compare contents
+    try {
+      if (!MessageDigest.isEqual(unit.digest, digest(file))) {
+        return null;
+      }
+    } catch (IOException e) {
+      return null;
+    }
+    var filename = filename(file, originPath);
+    return unit.filename.equals(filename) ? unit : unit.relocate(filename);
+  }
+
+  void put(File file, Unit unit) {
+    units.put(file, unit);
+  }
+
+  /** Returns the name of {@code file} in positions when parsed from {@code originPath}. */
+  static String filename(File file, Path originPath) {
+    return originPath.relativize(Path.of(file.getPath())).toString();
+  }
+
+  static byte[] digest(File file) throws IOException {
+    try {
+      return MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(file.toPath()));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * The parse result of a single file. {@code pieces} holds one more element than {@code
+   * includes}, and include {@code i} was found between piece {@code i} and piece {@code i + 1}.
+   */
+  static class Unit {
+    final String filename;
+    final byte[] digest;
+    final long length;
+    final List<AST> pieces;
+    final List<Include> includes;
+
+    Unit(
+        String filename, byte[] digest, long length, List<AST> pieces, List<Include> includes) {
+      this.filename = filename;
+      this.digest = digest;
+      this.length = length;
+      this.pieces = List.copyOf(pieces);
+      this.includes = List.copyOf(includes);
+    }
+
+    Unit relocate(String filename) {
+      var relocator = new Relocator(filename);
+      var pieces = new ArrayList<AST>();
+      for (var piece : this.pieces) {
+        pieces.add(relocator.relocate(piece));
+      }
+      var includes = new ArrayList<Include>();
+      for (var include : this.includes) {
+        includes.add(new Include(relocator.pos(include.pos), include.file));
+      }
+      return new Unit(filename, digest, length, pieces, includes);
+    }
+  }
+
+  static class Include {
+    final Position pos;
+    final File file;
+
+    Include(Position pos, File file) {
+      this.pos = pos;
+      this.file = file;
+    }
+  }
+
+  /** Copies the AST of a single file with every position renamed to {@code filename}. */
+  private static class Relocator {
+    private final String filename;
+
+    Relocator(String filename) {
+      this.filename = filename;
+    }
+
+    AST relocate(AST piece) {
+      var ast = new AST();
+      for (var define : piece.getDefines()) {
+        ast.addDefine(new AST.Define(pos(define), id(define.key), define.value));
+      }
+      for (var category : piece.getCategories()) {
+        ast.addCategory(category(category));
+      }
+      ast.addAssociations(map(piece.getAssociations(), this::association));
+      return ast;
+    }
+
+    Position pos(Position pos) {
+      return new Position(filename, pos.line, pos.col);
+    }
+
+    private AST.ID id(AST.ID id) {
+      return new AST.ID(pos(id), id.id);
+    }
+
+    private AST.Meta meta(AST.Meta meta) {
+      return new AST.Meta(pos(meta), id(meta.type), meta.string);
+    }
+
+    private AST.Category category(AST.Category category) {
+      return new AST.Category(
+          pos(category),
+          id(category.name),
+          map(category.meta, this::meta),
+          map(category.assets, this::asset));
+    }
+
+    private AST.Asset asset(AST.Asset asset) {
+      return new AST.Asset(
+          pos(asset),
+          asset.isAbstract,
+          id(asset.name),
+          asset.parent.map(this::id),
+          map(asset.meta, this::meta),
+          map(asset.attackSteps, this::attackStep),
+          map(asset.variables, this::variable));
+    }
+
+    private AST.AttackStep attackStep(AST.AttackStep attackStep) {
+      return new AST.AttackStep(
+          pos(attackStep),
+          attackStep.type,
+          id(attackStep.name),
+          map(attackStep.tags, this::id),
+          attackStep.cia,
+          attackStep.ttc.map(this::ttc),
+          map(attackStep.meta, this::meta),
+          attackStep.requires.map(this::requires),
+          attackStep.reaches.map(this::reaches));
+    }
+
+    private AST.Requires requires(AST.Requires requires) {
+      return new AST.Requires(pos(requires), map(requires.requires, this::expr));
+    }
+
+    private AST.Reaches reaches(AST.Reaches reaches) {
+      return new AST.Reaches(pos(reaches), reaches.inherits, map(reaches.reaches, this::expr));
+    }
+
+    private AST.Variable variable(AST.Variable variable) {
+      return new AST.Variable(pos(variable), id(variable.name), expr(variable.expr));
+    }
+
+    private AST.Association association(AST.Association association) {
+      return new AST.Association(
+          pos(association),
+          id(association.leftAsset),
+          id(association.leftField),
+          association.leftMult,
+          id(association.linkName),
+          association.rightMult,
+          id(association.rightField),
+          id(association.rightAsset),
+          map(association.meta, this::meta));
+    }
+
+    private AST.TTCExpr ttc(AST.TTCExpr ttc) {
+      var pos = pos(ttc);
+      if (ttc instanceof AST.TTCBinaryExpr) {
+        var binary = (AST.TTCBinaryExpr) ttc;
+        var lhs = ttc(binary.lhs);
+        var rhs = ttc(binary.rhs);
+        if (ttc instanceof AST.TTCAddExpr) {
+          return new AST.TTCAddExpr(pos, lhs, rhs);
+        } else if (ttc instanceof AST.TTCSubExpr) {
+          return new AST.TTCSubExpr(pos, lhs, rhs);
+        } else if (ttc instanceof AST.TTCMulExpr) {
+          return new AST.TTCMulExpr(pos, lhs, rhs);
+        } else if (ttc instanceof AST.TTCDivExpr) {
+          return new AST.TTCDivExpr(pos, lhs, rhs);
+        } else if (ttc instanceof AST.TTCPowExpr) {
+          return new AST.TTCPowExpr(pos, lhs, rhs);
+        }
+      } else if (ttc instanceof AST.TTCFuncExpr) {
+        var func = (AST.TTCFuncExpr) ttc;
+        return new AST.TTCFuncExpr(pos, id(func.name), func.params);
+      } else if (ttc instanceof AST.TTCNumExpr) {
+        return new AST.TTCNumExpr(pos, ((AST.TTCNumExpr) ttc).value);
+      }
+      throw new RuntimeException("ttc: Invalid AST.TTCExpr subtype");
+    }
+
+    private AST.Expr expr(AST.Expr expr) {
+      var pos = pos(expr);
+      if (expr instanceof AST.BinaryExpr) {
+        var binary = (AST.BinaryExpr) expr;
+        var lhs = expr(binary.lhs);
+        var rhs = expr(binary.rhs);
+        if (expr instanceof AST.UnionExpr) {
+          return new AST.UnionExpr(pos, lhs, rhs);
+        } else if (expr instanceof AST.DifferenceExpr) {
+          return new AST.DifferenceExpr(pos, lhs, rhs);
+        } else if (expr instanceof AST.IntersectionExpr) {
+          return new AST.IntersectionExpr(pos, lhs, rhs);
+        } else if (expr instanceof AST.StepExpr) {
+          return new AST.StepExpr(pos, lhs, rhs);
+        }
+      } else if (expr instanceof AST.TransitiveExpr) {
+        return new AST.TransitiveExpr(pos, expr(((AST.TransitiveExpr) expr).e));
+      } else if (expr instanceof AST.SubTypeExpr) {
+        var subType = (AST.SubTypeExpr) expr;
+        return new AST.SubTypeExpr(pos, expr(subType.e), id(subType.subType));
+      } else if (expr instanceof AST.IDExpr) {
+        return new AST.IDExpr(pos, id(((AST.IDExpr) expr).id));
+      } else if (expr instanceof AST.CallExpr) {
+        return new AST.CallExpr(pos, id(((AST.CallExpr) expr).id));
+      }
+      throw new RuntimeException("expr: Invalid AST.Expr subtype");
+    }
+
+    private static <T, R> List<R> map(List<T> list, Function<T, R> function) {
+      var result = new ArrayList<R>();
+      for (var element : list) {
+        result.add(function.apply(element));
+      }
+      return result;
+    }
+  }
+}
@@ -21,7 +21,6 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Locale;
 import java.util.Optional;
 import java.util.Set;
 
@@ -32,27 +31,50 @@ public class Parser {
   private Set<File> included;
   private File currentFile;
   private Path originPath;
-
-  private Parser(File file, boolean verbose, boolean debug) throws IOException {
-    Locale.setDefault(Locale.ROOT);
-    LOGGER = new MalLogger("PARSER", verbose, debug);
-    var canonicalFile = file.getCanonicalFile();
-    this.lex = new Lexer(canonicalFile);
-    this.included = new HashSet<File>();
-    this.included.add(canonicalFile);
-    this.currentFile = canonicalFile;
-    this.originPath = Path.of(canonicalFile.getParent());
-  }
-
-  private Parser(File file, Path originPath, Set<File> included, boolean verbose, boolean debug)
+  private ParseCache cache;
+  private byte[] digest;
+  private long length;
+  private List<AST> pieces = new ArrayList<>();
+  private List<ParseCache.Include> includes = new ArrayList<>();
+
+  private Parser(
+      File file,
+      Path originPath,
+      Set<File> included,
+      ParseCache cache,
+      boolean verbose,
+      boolean debug)
       throws IOException {
-    Locale.setDefault(Locale.ROOT);
     LOGGER = new MalLogger("PARSER", verbose, debug);
-    this.lex = new Lexer(file, originPath.relativize(Path.of(file.getPath())).toString());
+    // Stamp the file before reading it, so that a concurrent edit invalidates the cached result
+    if (cache != null && file.exists()) {
+      this.digest = ParseCache.digest(file);
+      this.length = file.length();
+    }
+    this.lex = new Lexer(file, ParseCache.filename(file, originPath));
     this.included = included;
     this.included.add(file);
     this.currentFile = file;
     this.originPath = originPath;
+    this.cache = cache;
+  }
+
+  private Parser(Lexer lex) {
+    LOGGER = new MalLogger("PARSER", false, false);
+    this.lex = lex;
+    this.included = new HashSet<>();
+  }
+
+  /**
+   * Checks that the tokens of {@code lex} form a syntactically valid file. Includes are not
+   * resolved, so no other file is read.
+   *
+   * @param lex lexer of the file to check
+   * @return the AST of the file, without its includes
+   * @throws CompilerException if the file is not syntactically valid
+   */
+  public static AST parseSyntax(Lexer lex) throws CompilerException {
+    return new Parser(lex).parseLog();
   }
 
   public static AST parse(File file) throws IOException, CompilerException {
@@ -61,13 +83,77 @@ public class Parser {
 
   public static AST parse(File file, boolean verbose, boolean debug)
       throws IOException, CompilerException {
-    return new Parser(file, verbose, debug).parseLog();
+    return parse(file, null, verbose, debug);
+  }
+
+  /**
+   * Parses {@code file} and all files it includes. Files that are unchanged since they were last
+   * parsed through {@code cache} are not read again.
+   *
+   * @param file the file to parse
+   * @param cache cache of previously parsed files, or {@code null} to always parse from disk
+   * @param verbose print verbose output
+   * @param debug print debug output
+   * @return the AST of {@code file} with its includes merged
+   */
+  public static AST parse(File file, ParseCache cache, boolean verbose, boolean debug)
+      throws IOException, CompilerException {
+    var canonicalFile = file.getCanonicalFile();
+    return parse(
+        canonicalFile,
+        Path.of(canonicalFile.getParent()),
+        new HashSet<File>(),
+        cache,
+        verbose,
+        debug);
   }
 
   private static AST parse(
-      File file, Path originPath, Set<File> included, boolean verbose, boolean debug)
+      File file,
+      Path originPath,
+      Set<File> included,
+      ParseCache cache,
+      boolean verbose,
+      boolean debug)
       throws IOException, CompilerException {
-    return new Parser(file, originPath, included, verbose, debug).parseLog();
+    var unit = cache == null ? null : cache.get(file, originPath);
+    if (unit == null) {
+      return new Parser(file, originPath, included, cache, verbose, debug).parseLog();
+    }
+    included.add(file);
+    var logger = new MalLogger("PARSER", verbose, debug);
+    try {
+      var ast = new AST();
+      for (int i = 0; i < unit.includes.size(); i++) {
+        ast.include(unit.pieces.get(i));
+        ast.include(resolveInclude(unit.includes.get(i), originPath, included, cache, logger));
+      }
+      ast.include(unit.pieces.get(unit.includes.size()));
+      logger.print();
+      return ast;
+    } catch (CompilerException e) {
+      logger.print();
+      throw e;
+    }
+  }
+
+  private static AST resolveInclude(
+      ParseCache.Include include,
+      Path originPath,
+      Set<File> included,
+      ParseCache cache,
+      MalLogger logger)
+      throws CompilerException {
+    if (included.contains(include.file)) {
+      return new AST();
+    }
+    try {
+      return parse(
+          include.file, originPath, included, cache, logger.isVerbose(), logger.isDebug());
+    } catch (IOException e) {
+      logger.error(include.pos, e.getMessage());
+      throw new CompilerException("There were syntax errors");
+    }
   }
 
   private AST parseLog() throws CompilerException {
@@ -82,15 +168,15 @@ public class Parser {
   }
 
   // The first set of <mal>
-  private static TokenType[] malFirst = {
+  private static final TokenType[] malFirst = {
     TokenType.CATEGORY, TokenType.ASSOCIATIONS, TokenType.INCLUDE, TokenType.HASH
   };
 
   // The first set of <asset>
-  private static TokenType[] assetFirst = {TokenType.ABSTRACT, TokenType.ASSET};
+  private static final TokenType[] assetFirst = {TokenType.ABSTRACT, TokenType.ASSET};
 
   // The first set of <attackstep>
-  private static TokenType[] attackStepFirst = {
+  private static final TokenType[] attackStepFirst = {
     TokenType.ALL, TokenType.ANY, TokenType.HASH, TokenType.EXIST, TokenType.NOTEXIST
   };
 
@@ -108,27 +194,40 @@ public class Parser {
   // <mal> ::= (<category> | <associations> | <include> | <define>)* EOF
   private AST _parse() throws CompilerException {
     var ast = new AST();
+    var piece = new AST();
     _next();
 
     while (true) {
       switch (tok.type) {
         case CATEGORY:
           var category = _parseCategory();
-          ast.addCategory(category);
+          piece.addCategory(category);
           break;
         case ASSOCIATIONS:
           var associations = _parseAssociations();
-          ast.addAssociations(associations);
+          piece.addAssociations(associations);
           break;
         case INCLUDE:
           var include = _parseInclude();
-          ast.include(include);
+          ast.include(piece);
+          pieces.add(piece);
+          piece = new AST();
+          includes.add(include);
+          if (currentFile != null) {
+            ast.include(resolveInclude(include, originPath, included, cache, LOGGER));
+          }
           break;
         case HASH:
           var define = _parseDefine();
-          ast.addDefine(define);
+          piece.addDefine(define);
           break;
         case EOF:
+          ast.include(piece);
+          pieces.add(piece);
+          if (cache != null) {
+            var filename = ParseCache.filename(currentFile, originPath);
+            cache.put(currentFile, new ParseCache.Unit(filename, digest, length, pieces, includes));
+          }
           return ast;
         default:
           throw exception(malFirst);
@@ -195,11 +294,15 @@ public class Parser {
   }
 
   // <include> ::= INCLUDE STRING
-  private AST _parseInclude() throws CompilerException {
+  private ParseCache.Include _parseInclude() throws CompilerException {
     _expect(TokenType.INCLUDE);
     var firstTok = tok;
     var filename = _parseString();
     var file = new File(filename);
+    if (currentFile == null) {
+      // Only the syntax is checked, the include is never resolved
+      return new ParseCache.Include(firstTok, file);
+    }
 
     if (!file.isAbsolute()) {
       var currentDir = currentFile.getParent();
@@ -212,15 +315,7 @@ public class Parser {
       throw exception(firstTok, e.getMessage());
     }
 
-    if (included.contains(file)) {
-      return new AST();
-    } else {
-      try {
-        return Parser.parse(file, originPath, included, LOGGER.isVerbose(), LOGGER.isDebug());
-      } catch (IOException e) {
-        throw exception(firstTok, e.getMessage());
-      }
-    }
+    return new ParseCache.Include(firstTok, file);
   }
 
   // <number> ::= INT | FLOAT
@@ -15,6 +15,8 @@
  */
 package org.mal_lang.compiler.lib;
 
+import java.util.Locale;
+
 public class Position implements Comparable<Position> {
   public final String filename;
   public final int line;
@@ -33,7 +35,7 @@ public class Position implements Comparable<Position> {
   }
 
   public String posString() {
-    return String.format("<%s:%d:%d>", filename, line, col);
+    return String.format(Locale.ROOT, "<%s:%d:%d>", filename, line, col);
   }
 
   @Override
@@ -0,0 +1,268 @@
+/*
+ * Copyright 2019-2022 Foreseeti AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mal_lang.compiler.lib;
+
+import jakarta.json.Json;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Profiler measures the stages of a compilation.
+ *
+ * <p>For every stage it records wall time, CPU time and bytes allocated by the current thread,
+ * and an estimate of the heap retained by the result of the stage. The retained size is the
+ * difference in used heap after a full garbage collection before and after the stage, so it is
+ * only measured when explicitly requested.
+ *
+ * <p>Every stage, and every asset written by a generator, also emits a JFR event. These events
+ * are emitted whether or not the profiler is enabled, and cost next to nothing unless a flight
+ * recording is running.
+ */
+public class Profiler {
+  @Name("org.mal_lang.compiler.Stage")
+  @Label("Compiler Stage")
+  @Category("MAL Compiler")
+  @Description("A stage of the compiler pipeline")
+  public static class StageEvent extends Event {
+    @Label("Stage")
+    public String stage;
+
+    @Label("Allocated")
+    @DataAmount
+    public long allocated;
+  }
+
+  @Name("org.mal_lang.compiler.Asset")
+  @Label("Generated Asset")
+  @Category("MAL Compiler")
+  @Description("Generation of the code of a single asset")
+  public static class AssetEvent extends Event {
+    @Label("Generator")
+    public String generator;
+
+    @Label("Asset")
+    public String asset;
+  }
+
+  @FunctionalInterface
+  public interface Stage<T> {
+    T run() throws IOException, CompilerException;
+  }
+
+  @FunctionalInterface
+  public interface Action {
+    void run() throws IOException, CompilerException;
+  }
+
+  public static class Record {
+    public final String stage;
+    public final long wallNanos;
+    public final long cpuNanos;
+    public final long allocatedBytes;
+    public final long retainedBytes;
+
+    public Record(
+        String stage, long wallNanos, long cpuNanos, long allocatedBytes, long retainedBytes) {
+      this.stage = stage;
+      this.wallNanos = wallNanos;
+      this.cpuNanos = cpuNanos;
+      this.allocatedBytes = allocatedBytes;
+      this.retainedBytes = retainedBytes;
+    }
+  }
+
+  private final boolean enabled;
+  private final boolean retained;
+  private final java.lang.management.ThreadMXBean threads;
+  private final List<Record> records = new ArrayList<>();
+
+  /** Creates a disabled profiler that only emits JFR events. */
+  public Profiler() {
+    this(false, false);
+  }
+
+  /**
+   * Creates a profiler.
+   *
+   * @param enabled record measurements of every stage
+   * @param retained also estimate retained sizes, which forces garbage collections
+   */
+  public Profiler(boolean enabled, boolean retained) {
+    this.enabled = enabled;
+    this.retained = enabled && retained;
+    this.threads = ManagementFactory.getThreadMXBean();
+    if (enabled && threads.isThreadCpuTimeSupported()) {
+      threads.setThreadCpuTimeEnabled(true);
+    }
+    if (this.retained) {
+      // The first heap measurement allocates the management objects, keep them out of the
+      // baseline of the first stage
+      usedHeapAfterGC();
+    }
+  }
+
+  /**
+   * Creates and begins an event for an asset being generated. The caller commits the event when
+   * the asset has been written.
+   *
+   * @param generator name of the generator
+   * @param asset name of the asset
+   * @return the begun event
+   */
+  public static AssetEvent assetEvent(String generator, String asset) {
+    var event = new AssetEvent();
+    event.generator = generator;
+    event.asset = asset;
+    event.begin();
+    return event;
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public List<Record> getRecords() {
+    return List.copyOf(records);
+  }
+
+  /**
+   * Runs and measures a stage that produces a result.
+   *
+   * @param stage name of the stage
+   * @param action the stage
+   * @return the result of the stage
+   */
+  public <T> T measure(String stage, Stage<T> action) throws IOException, CompilerException {
+    var event = new StageEvent();
+    event.stage = stage;
+    long heapBefore = retained ? usedHeapAfterGC() : 0;
+    long allocatedBefore = allocatedBytes();
+    long cpuBefore = cpuTime();
+    long wallBefore = System.nanoTime();
+    event.begin();
+    T result = action.run();
+    event.end();
+    long wallNanos = System.nanoTime() - wallBefore;
+    long cpuNanos = cpuBefore < 0 ? -1 : cpuTime() - cpuBefore;
+    long allocated = allocatedBefore < 0 ? -1 : allocatedBytes() - allocatedBefore;
+    event.allocated = allocated;
+    event.commit();
+    if (enabled) {
+      // The result is still reachable here, so it is part of the heap after the stage
+      long retainedBytes = retained ? Math.max(0, usedHeapAfterGC() - heapBefore) : -1;
+      records.add(new Record(stage, wallNanos, cpuNanos, allocated, retainedBytes));
+    }
+    return result;
+  }
+
+  /**
+   * Runs and measures a stage without a result.
+   *
+   * @param stage name of the stage
+   * @param action the stage
+   */
+  public void run(String stage, Action action) throws IOException, CompilerException {
+    measure(
+        stage,
+        () -> {
+          action.run();
+          return null;
+        });
+  }
+
+  private long cpuTime() {
+    if (!enabled || !threads.isThreadCpuTimeSupported()) {
+      return -1;
+    }
+    return threads.getCurrentThreadCpuTime();
+  }
+
+  private long allocatedBytes() {
+    if (threads instanceof com.sun.management.ThreadMXBean) {
+      var sunThreads = (com.sun.management.ThreadMXBean) threads;
+      if (sunThreads.isThreadAllocatedMemorySupported()
+          && sunThreads.isThreadAllocatedMemoryEnabled()) {
+        return sunThreads.getThreadAllocatedBytes(Thread.currentThread().getId());
+      }
+    }
+    return -1;
+  }
+
+  private static long usedHeapAfterGC() {
+    var memory = ManagementFactory.getMemoryMXBean();
+    System.gc();
+    return memory.getHeapMemoryUsage().getUsed();
+  }
+
+  private static String millis(long nanos) {
+    return nanos < 0 ? "-" : String.format(Locale.ROOT, "%.1f", nanos / 1e6);
+  }
+
+  private static String kibibytes(long bytes) {
+    return bytes < 0 ? "-" : String.format(Locale.ROOT, "%.1f", bytes / 1024.0);
+  }
+
+  /** Returns the records as a human readable table. */
+  public String toTable() {
+    var sb = new StringBuilder();
+    var format = "%-24s %12s %12s %16s %16s%n";
+    sb.append(
+        String.format(
+            format, "Stage", "Wall (ms)", "CPU (ms)", "Allocated (KiB)", "Retained (KiB)"));
+    for (var record : records) {
+      sb.append(
+          String.format(
+              format,
+              record.stage,
+              millis(record.wallNanos),
+              millis(record.cpuNanos),
+              kibibytes(record.allocatedBytes),
+              kibibytes(record.retainedBytes)));
+    }
+    return sb.toString();
+  }
+
+  /** Returns the records as a JSON document. Unavailable measurements are -1. */
+  public String toJson() {
+    var writer = new StringWriter();
+    try (var json = Json.createGenerator(writer)) {
+      json.writeStartObject();
+      json.writeStartArray("stages");
+      for (var record : records) {
+        json.writeStartObject();
+        json.write("stage", record.stage);
+        json.write("wallNanos", record.wallNanos);
+        json.write("cpuNanos", record.cpuNanos);
+        json.write("allocatedBytes", record.allocatedBytes);
+        json.write("retainedBytes", record.retainedBytes);
+        json.writeEnd();
+      }
+      json.writeEnd();
+      json.writeEnd();
+    }
+    return writer.toString();
+  }
+}
@@ -0,0 +1,353 @@
+/*
+ * Copyright 2019-2022 Foreseeti AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mal_lang.compiler.lib;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.mal_lang.compiler.lib.Lang.Asset;
+import org.mal_lang.compiler.lib.Lang.AttackStep;
+import org.mal_lang.compiler.lib.Lang.StepAttackStep;
+import org.mal_lang.compiler.lib.Lang.StepBinOp;
+import org.mal_lang.compiler.lib.Lang.StepExpr;
+
+/**
+ * Static reachability between the attack steps of a language.
+ *
+ * <p>The graph has an edge from every attack step to the attack steps it reaches, taken from both
+ * {@link AttackStep#getReaches()} and {@link AttackStep#getParentSteps()}. Reaching an attack step
+ * also reaches every attack step overriding it in a sub asset, and an attack step declared with
+ * {@code +>} also has the edges of the attack step it overrides. The graph does not know which
+ * associations exist in a model, so the answers over-approximate: if a step cannot reach another
+ * here, it cannot in any model.
+ *
+ * <p>The transitive closure is computed once over the strongly connected components of the graph,
+ * which are numbered so that a component only reaches components with lower numbers. Each
+ * component keeps its closure as a compressed bitset of those numbers, shared by all its steps.
+ * Every attack step reaches itself.
+ */
+public final class Reachability {
+  private final List<AttackStep> attackSteps;
+  private final Map<AttackStep, Integer> indices;
+  private final List<Set<AttackStep>> successors;
+  private final int[] components;
+  private final Bits[] closures;
+  private final Set<AttackStep> entrySteps;
+  private final Bits entryReachable;
+
+  private Reachability(Lang lang) {
+    attackSteps = new ArrayList<>();
+    indices = new HashMap<>();
+    for (var asset : lang.getAssets().values()) {
+      for (var attackStep : asset.getAttackSteps().values()) {
+        indices.put(attackStep, attackSteps.size());
+        attackSteps.add(attackStep);
+      }
+    }
+    successors = buildSuccessors(lang);
+
+    var predecessors = new int[attackSteps.size()];
+    for (var targets : successors) {
+      for (var target : targets) {
+        predecessors[indices.get(target)]++;
+      }
+    }
+    var entries = new LinkedHashSet<AttackStep>();
+    for (int i = 0; i < predecessors.length; i++) {
+      if (predecessors[i] == 0) {
+        entries.add(attackSteps.get(i));
+      }
+    }
+    entrySteps = Collections.unmodifiableSet(entries);
+
+    components = new int[attackSteps.size()];
+    var members = findComponents();
+    closures = new Bits[members.size()];
+    for (int c = 0; c < members.size(); c++) {
+      var closure = Bits.of(new int[] {c});
+      for (var i : members.get(c)) {
+        for (var target : successors.get(i)) {
+          int other = components[indices.get(target)];
+          if (other != c) {
+            closure = closure.or(closures[other]);
+          }
+        }
+      }
+      closures[c] = closure;
+    }
+
+    var reachable = Bits.of(new int[0]);
+    for (var entry : entrySteps) {
+      reachable = reachable.or(closures[components[indices.get(entry)]]);
+    }
+    entryReachable = reachable;
+  }
+
+  /**
+   * Builds the reachability index of {@code lang}.
+   *
+   * @param lang the language
+   * @return the reachability index
+   */
+  public static Reachability of(Lang lang) {
+    return new Reachability(lang);
+  }
+
+  /** Returns all attack steps of the language, in declaration order. */
+  public List<AttackStep> getAttackSteps() {
+    return List.copyOf(attackSteps);
+  }
+
+  /** Returns the attack steps that {@code attackStep} has an edge to. */
+  public Set<AttackStep> getSuccessors(AttackStep attackStep) {
+    return successors.get(index(attackStep));
+  }
+
+  /** Returns whether {@code to} can ever be reached from {@code from}. */
+  public boolean canReach(AttackStep from, AttackStep to) {
+    return closures[components[index(from)]].get(components[index(to)]);
+  }
+
+  /** Returns all attack steps that can be reached from {@code attackStep}, itself included. */
+  public Set<AttackStep> getReachable(AttackStep attackStep) {
+    return collect(closures[components[index(attackStep)]]);
+  }
+
+  /** Returns the attack steps that no other attack step reaches. */
+  public Set<AttackStep> getEntrySteps() {
+    return entrySteps;
+  }
+
+  /** Returns whether {@code attackStep} can be reached from some entry step. */
+  public boolean isEntryReachable(AttackStep attackStep) {
+    return entryReachable.get(components[index(attackStep)]);
+  }
+
+  /** Returns all attack steps that can be reached from some entry step. */
+  public Set<AttackStep> getEntryReachable() {
+    return collect(entryReachable);
+  }
+
+  private int index(AttackStep attackStep) {
+    var index = indices.get(attackStep);
+    if (index == null) {
+      throw new IllegalArgumentException(
+          String.format(
+              "Attack step '%s.%s' is not part of the language",
+              attackStep.getAsset().getName(), attackStep.getName()));
+    }
+    return index;
+  }
+
+  private Set<AttackStep> collect(Bits bits) {
+    var set = new LinkedHashSet<AttackStep>();
+    for (int i = 0; i < attackSteps.size(); i++) {
+      if (bits.get(components[i])) {
+        set.add(attackSteps.get(i));
+      }
+    }
+    return set;
+  }
+
+  private List<Set<AttackStep>> buildSuccessors(Lang lang) {
+    var subAssets = new HashMap<Asset, List<Asset>>();
+    for (var asset : lang.getAssets().values()) {
+      if (asset.hasSuperAsset()) {
+        subAssets.computeIfAbsent(asset.getSuperAsset(), a -> new ArrayList<>()).add(asset);
+      }
+    }
+    var direct = new ArrayList<Set<AttackStep>>();
+    for (var attackStep : attackSteps) {
+      var targets = new LinkedHashSet<AttackStep>();
+      for (var expr : attackStep.getReaches()) {
+        addWithOverrides(targets, getTargetStep(expr), subAssets);
+      }
+      direct.add(targets);
+    }
+    // Parent steps mirror reaches, but generators may have edited one and not the other
+    for (var attackStep : attackSteps) {
+      for (var expr : attackStep.getParentSteps()) {
+        var parent = getTargetStep(expr);
+        if (indices.containsKey(parent)) {
+          addWithOverrides(direct.get(indices.get(parent)), attackStep, subAssets);
+        }
+      }
+    }
+    var result = new ArrayList<Set<AttackStep>>();
+    for (var attackStep : attackSteps) {
+      var targets = new LinkedHashSet<AttackStep>();
+      var current = attackStep;
+      while (true) {
+        targets.addAll(direct.get(indices.get(current)));
+        if (!current.inheritsReaches() || !current.hasParent()) {
+          break;
+        }
+        current = current.getParent();
+      }
+      result.add(Collections.unmodifiableSet(targets));
+    }
+    return result;
+  }
+
+  private void addWithOverrides(
+      Set<AttackStep> targets, AttackStep attackStep, Map<Asset, List<Asset>> subAssets) {
+    targets.add(attackStep);
+    var queue = new ArrayDeque<Asset>();
+    queue.add(attackStep.getAsset());
+    while (!queue.isEmpty()) {
+      for (var subAsset : subAssets.getOrDefault(queue.remove(), List.of())) {
+        var override = subAsset.getAttackSteps().get(attackStep.getName());
+        if (override != null) {
+          targets.add(override);
+        }
+        queue.add(subAsset);
+      }
+    }
+  }
+
+  private static AttackStep getTargetStep(StepExpr expr) {
+    if (expr instanceof StepAttackStep) {
+      return ((StepAttackStep) expr).attackStep;
+    } else if (expr instanceof StepBinOp) {
+      return getTargetStep(((StepBinOp) expr).rhs);
+    }
+    throw new RuntimeException("Invalid step expression");
+  }
+
+  /**
+   * Finds the strongly connected components with an iterative version of Tarjan's algorithm. Fills
+   * {@link #components} and returns the members of each component. Tarjan's algorithm completes a
+   * component only after all components it reaches, so those get lower numbers.
+   */
+  private List<List<Integer>> findComponents() {
+    int n = attackSteps.size();
+    var targets = new int[n][];
+    for (int i = 0; i < n; i++) {
+      targets[i] = successors.get(i).stream().mapToInt(indices::get).toArray();
+    }
+    var order = new int[n];
+    var lowLink = new int[n];
+    var onStack = new boolean[n];
+    var next = new int[n];
+    Arrays.fill(order, -1);
+    var stack = new ArrayDeque<Integer>();
+    var callStack = new ArrayDeque<Integer>();
+    var members = new ArrayList<List<Integer>>();
+    int counter = 0;
+    for (int root = 0; root < n; root++) {
+      if (order[root] != -1) {
+        continue;
+      }
+      callStack.push(root);
+      order[root] = lowLink[root] = counter++;
+      stack.push(root);
+      onStack[root] = true;
+      while (!callStack.isEmpty()) {
+        int v = callStack.peek();
+        if (next[v] < targets[v].length) {
+          int w = targets[v][next[v]++];
+          if (order[w] == -1) {
+            order[w] = lowLink[w] = counter++;
+            stack.push(w);
+            onStack[w] = true;
+            callStack.push(w);
+          } else if (onStack[w]) {
+            lowLink[v] = Math.min(lowLink[v], order[w]);
+          }
+          continue;
+        }
+        callStack.pop();
+        if (!callStack.isEmpty()) {
+          int u = callStack.peek();
+          lowLink[u] = Math.min(lowLink[u], lowLink[v]);
+        }
+        if (lowLink[v] == order[v]) {
+          var component = new ArrayList<Integer>();
+          int w;
+          do {
+            w = stack.pop();
+            onStack[w] = false;
+            components[w] = members.size();
+            component.add(w);
+          } while (w != v);
+          members.add(component);
+        }
+      }
+    }
+    return members;
+  }
+
+  /**
+   * An immutable compressed bitset. Only the non-zero 64-bit words are stored, together with their
+   * word indices in ascending order.
+   */
+  static final class Bits {
+    private final int[] keys;
+    private final long[] words;
+
+    private Bits(int[] keys, long[] words) {
+      this.keys = keys;
+      this.words = words;
+    }
+
+    /** Returns a bitset with the bits {@code bits} set, which must be in ascending order. */
+    static Bits of(int[] bits) {
+      var keys = new int[bits.length];
+      var words = new long[bits.length];
+      int size = 0;
+      for (var bit : bits) {
+        int key = bit >>> 6;
+        if (size == 0 || keys[size - 1] != key) {
+          keys[size++] = key;
+        }
+        words[size - 1] |= 1L << bit;
+      }
+      return new Bits(Arrays.copyOf(keys, size), Arrays.copyOf(words, size));
+    }
+
+    boolean get(int bit) {
+      int i = Arrays.binarySearch(keys, bit >>> 6);
+      return i >= 0 && (words[i] & (1L << bit)) != 0;
+    }
+
+    Bits or(Bits other) {
+      var keys = new int[this.keys.length + other.keys.length];
+      var words = new long[keys.length];
+      int i = 0;
+      int j = 0;
+      int size = 0;
+      while (i < this.keys.length || j < other.keys.length) {
+        if (j == other.keys.length || (i < this.keys.length && this.keys[i] < other.keys[j])) {
+          keys[size] = this.keys[i];
+          words[size++] = this.words[i++];
+        } else if (i == this.keys.length || other.keys[j] < this.keys[i]) {
+          keys[size] = other.keys[j];
+          words[size++] = other.words[j++];
+        } else {
+          keys[size] = this.keys[i];
+          words[size++] = this.words[i++] | other.words[j++];
+        }
+      }
+      return new Bits(Arrays.copyOf(keys, size), Arrays.copyOf(words, size));
+    }
+  }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2019-2022 Foreseeti AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mal_lang.compiler.lib;
+
+/**
+ * Random variates for {@link Distributions}.
+ *
+ * <p>Standard normal and exponential variates use the ziggurat method. The density is covered by
+ * layers of equal area. A sample picks a layer and a point in it from one 64-bit random value.
+ * Almost always the point lies in the part of the layer that is entirely under the density, and is
+ * accepted after one multiplication and one comparison. Points in the wedges and in the tail are
+ * resolved exactly, so the samples follow the distributions exactly.
+ *
+ * <p>Marsaglia, G., Tsang, W. W. (2000). The Ziggurat Method for Generating Random Variables.
+ */
+final class Sampling {
+  // Layer i spans x in [0, X[i]) and y in [F[i], F[i + 1]), layer 0 is the base strip with the tail
+  private static final int NORMAL_LAYERS = 128;
+  private static final double NORMAL_R = 3.442619855899;
+  private static final double NORMAL_V = 9.91256303526217e-3;
+  private static final double[] NORMAL_X = new double[NORMAL_LAYERS + 1];
+  private static final double[] NORMAL_F = new double[NORMAL_LAYERS + 1];
+
+  private static final int EXPONENTIAL_LAYERS = 256;
+  private static final double EXPONENTIAL_R = 7.69711747013104972;
+  private static final double EXPONENTIAL_V = 3.949659822581572e-3;
+  private static final double[] EXPONENTIAL_X = new double[EXPONENTIAL_LAYERS + 1];
+  private static final double[] EXPONENTIAL_F = new double[EXPONENTIAL_LAYERS + 1];
+
+  // Up to this many trials, binomial variates are drawn by inversion
+  private static final int BINOMIAL_INVERSION_TRIALS = 64;
+
+  static {
+    NORMAL_X[0] = NORMAL_V / Math.exp(-0.5 * NORMAL_R * NORMAL_R);
+    NORMAL_X[1] = NORMAL_R;
+    NORMAL_F[0] = 0;
+    NORMAL_F[1] = Math.exp(-0.5 * NORMAL_R * NORMAL_R);
+    for (int i = 1; i < NORMAL_LAYERS - 1; i++) {
+      NORMAL_F[i + 1] = NORMAL_F[i] + NORMAL_V / NORMAL_X[i];
+      NORMAL_X[i + 1] = Math.sqrt(-2 * Math.log(NORMAL_F[i + 1]));
+    }
+    NORMAL_X[NORMAL_LAYERS] = 0;
+    NORMAL_F[NORMAL_LAYERS] = 1;
+
+    EXPONENTIAL_X[0] = EXPONENTIAL_V / Math.exp(-EXPONENTIAL_R);
+    EXPONENTIAL_X[1] = EXPONENTIAL_R;
+    EXPONENTIAL_F[0] = 0;
+    EXPONENTIAL_F[1] = Math.exp(-EXPONENTIAL_R);
+    for (int i = 1; i < EXPONENTIAL_LAYERS - 1; i++) {
+      EXPONENTIAL_F[i + 1] = EXPONENTIAL_F[i] + EXPONENTIAL_V / EXPONENTIAL_X[i];
+      EXPONENTIAL_X[i + 1] = -Math.log(EXPONENTIAL_F[i + 1]);
+    }
+    EXPONENTIAL_X[EXPONENTIAL_LAYERS] = 0;
+    EXPONENTIAL_F[EXPONENTIAL_LAYERS] = 1;
+  }
+
+  private Sampling() {}
+
+  /** Returns a uniform double in (0, 1], which is safe to take the logarithm of. */
+  static double positiveUniform(Distributions.RandomSource random) {
+    return ((random.nextLong() >>> 11) + 1) * 0x1.0p-53;
+  }
+
+  /** Returns a standard normal variate. */
+  static double normal(Distributions.RandomSource random) {
+    while (true) {
+      long bits = random.nextLong();
+      // The low 7 bits pick the layer, the high 56 bits a signed position in [-1, 1)
+      int i = (int) bits & (NORMAL_LAYERS - 1);
+      double u = (bits >> 8) * 0x1.0p-55;
+      double x = u * NORMAL_X[i];
+      if (Math.abs(x) < NORMAL_X[i + 1]) {
+        return x;
+      }
+      if (i == 0) {
+        double a;
+        double b;
+        do {
+          a = -Math.log(positiveUniform(random)) / NORMAL_R;
+          b = -Math.log(positiveUniform(random));
+        } while (b + b < a * a);
+        return u > 0 ? NORMAL_R + a : -(NORMAL_R + a);
+      }
+      double y = NORMAL_F[i] + random.nextDouble() * (NORMAL_F[i + 1] - NORMAL_F[i]);
+      if (y < Math.exp(-0.5 * x * x)) {
+        return x;
+      }
+    }
+  }
+
+  /** Returns a standard exponential variate, with rate 1. */
+  static double exponential(Distributions.RandomSource random) {
+    while (true) {
+      long bits = random.nextLong();
+      // The low 8 bits pick the layer, the high 53 bits a position in [0, 1)
+      int i = (int) bits & (EXPONENTIAL_LAYERS - 1);
+      double x = (bits >>> 11) * 0x1.0p-53 * EXPONENTIAL_X[i];
+      if (x < EXPONENTIAL_X[i + 1]) {
+        return x;
+      }
+      if (i == 0) {
+        // The tail is an exponential shifted by R
+        return EXPONENTIAL_R - Math.log(positiveUniform(random));
+      }
+      double y =
+          EXPONENTIAL_F[i] + random.nextDouble() * (EXPONENTIAL_F[i + 1] - EXPONENTIAL_F[i]);
+      if (y < Math.exp(-x)) {
+        return x;
+      }
+    }
+  }
+
+  /**
+   * Returns a gamma variate with the given shape and scale 1, with the method of Marsaglia and
+   * Tsang. Shapes below 1 are boosted to shape + 1 and scaled back with a uniform power.
+   *
+   * <p>Marsaglia, G., Tsang, W. W. (2000). A Simple Method for Generating Gamma Variables.
+   */
+  static double gamma(Distributions.RandomSource random, double shape) {
+    if (shape < 1) {
+      return gamma(random, shape + 1) * Math.pow(positiveUniform(random), 1 / shape);
+    }
+    double d = shape - 1.0 / 3;
+    return gamma(random, d, 1 / Math.sqrt(9 * d));
+  }
+
+  /** Returns a gamma variate with shape d + 1/3 >= 1 and scale 1, where c = 1 / sqrt(9d). */
+  static double gamma(Distributions.RandomSource random, double d, double c) {
+    while (true) {
+      double x;
+      double v;
+      do {
+        x = normal(random);
+        v = 1 + c * x;
+      } while (v <= 0);
+      v = v * v * v;
+      double u = positiveUniform(random);
+      double xx = x * x;
+      if (u < 1 - 0.0331 * xx * xx || Math.log(u) < 0.5 * xx + d * (1 - v + Math.log(v))) {
+        return d * v;
+      }
+    }
+  }
+
+  /**
+   * Returns a binomial variate. Many trials are split with beta variates, which are order
+   * statistics of the uniforms behind the trials, until few enough remain for inversion. The
+   * expected cost is logarithmic in the number of trials.
+   *
+   * <p>Knuth, D. E. (1997). The Art of Computer Programming, vol. 2, 3.4.1 F.
+   */
+  static int binomial(Distributions.RandomSource random, int trials, double probability) {
+    int successes = 0;
+    while (trials > BINOMIAL_INVERSION_TRIALS) {
+      // x is the a:th smallest of the uniforms of all trials
+      int a = 1 + trials / 2;
+      int b = trials + 1 - a;
+      double ga = gamma(random, a);
+      double x = ga / (ga + gamma(random, b));
+      if (x >= probability) {
+        trials = a - 1;
+        probability /= x;
+      } else {
+        successes += a;
+        trials = b - 1;
+        probability = (probability - x) / (1 - x);
+      }
+    }
+    return successes + binomialInversion(random, trials, probability);
+  }
+
+  private static int binomialInversion(
+      Distributions.RandomSource random, int trials, double probability) {
+    // Count the less likely outcome, so that the search is short and (1 - q)^trials is not tiny
+    boolean flip = probability > 0.5;
+    double q = flip ? 1 - probability : probability;
+    if (trials <= 0 || q <= 0) {
+      return flip ? Math.max(trials, 0) : 0;
+    }
+    double s = q / (1 - q);
+    double a = (trials + 1) * s;
+    double r = Math.pow(1 - q, trials);
+    double u = random.nextDouble();
+    int x = 0;
+    while (u > r && x < trials) {
+      u -= r;
+      x++;
+      r *= a / x - s;
+    }
+    return flip ? trials - x : x;
+  }
+}
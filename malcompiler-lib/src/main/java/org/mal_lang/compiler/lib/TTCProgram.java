@@ -0,0 +1,346 @@
+/*
+ * Copyright 2019-2022 Foreseeti AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mal_lang.compiler.lib;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.mal_lang.compiler.lib.Distributions.Distribution;
+import org.mal_lang.compiler.lib.Distributions.RandomSource;
+import org.mal_lang.compiler.lib.Lang.TTCAdd;
+import org.mal_lang.compiler.lib.Lang.TTCBinOp;
+import org.mal_lang.compiler.lib.Lang.TTCDiv;
+import org.mal_lang.compiler.lib.Lang.TTCExpr;
+import org.mal_lang.compiler.lib.Lang.TTCFunc;
+import org.mal_lang.compiler.lib.Lang.TTCMul;
+import org.mal_lang.compiler.lib.Lang.TTCNum;
+import org.mal_lang.compiler.lib.Lang.TTCPow;
+import org.mal_lang.compiler.lib.Lang.TTCSub;
+
+/**
+ * A TTC expression compiled to a flat postfix program.
+ *
+ * <p>Constant subexpressions are folded when the program is compiled. Evaluating the program walks
+ * its instructions once with a preallocated stack, so sampling never allocates. A program is not
+ * thread safe, threads sampling the same program concurrently must pass their own stacks to {@link
+ * #sample(RandomSource, double[])}.
+ *
+ * <p>Bernoulli distributions are attempts, as in the securiCAD generator: an attempt takes no time
+ * if it succeeds and {@link Double#MAX_VALUE} if it fails. Multiplying by an attempt therefore adds
+ * it, so that {@code Bernoulli(p) * X} is {@code X} with probability {@code p} and impossible
+ * otherwise. All intermediate values saturate at {@link Double#MAX_VALUE}, and the result is never
+ * negative.
+ *
+ * <p>{@link #toString()} writes the program as space separated postfix tokens, which is how
+ * advanced TTC expressions are stored in the attacker profile of the reference generator.
+ */
+public final class TTCProgram {
+  private static final int CONST = 0;
+  private static final int SAMPLE = 1;
+  private static final int ATTEMPT = 2;
+  private static final int ADD = 3;
+  private static final int SUB = 4;
+  private static final int MUL = 5;
+  private static final int DIV = 6;
+  private static final int POW = 7;
+  private static final String[] OPERATORS = {null, null, null, "+", "-", "*", "/", "^"};
+
+  private final int[] ops;
+  private final double[] args;
+  private final Distribution[] dists;
+  private final double[] stack;
+
+  private static class Instruction {
+    final int op;
+    final double arg;
+    final Distribution dist;
+
+    Instruction(int op, double arg, Distribution dist) {
+      this.op = op;
+      this.arg = arg;
+      this.dist = dist;
+    }
+
+    boolean isConst() {
+      return op == CONST;
+    }
+  }
+
+  private TTCProgram(List<Instruction> code) {
+    int size = code.size();
+    ops = new int[size];
+    args = new double[size];
+    dists = new Distribution[size];
+    int depth = 0;
+    int maxDepth = 0;
+    for (int i = 0; i < size; i++) {
+      var instruction = code.get(i);
+      ops[i] = instruction.op;
+      args[i] = instruction.arg;
+      dists[i] = instruction.dist;
+      depth += instruction.op <= ATTEMPT ? 1 : -1;
+      maxDepth = Math.max(maxDepth, depth);
+    }
+    stack = new double[maxDepth];
+  }
+
+  /**
+   * Compiles a TTC expression.
+   *
+   * @param expr the TTC expression of an attack step
+   * @return the compiled program
+   */
+  public static TTCProgram compile(TTCExpr expr) {
+    return new TTCProgram(lower(expr));
+  }
+
+  private static List<Instruction> lower(TTCExpr expr) {
+    if (expr instanceof TTCNum) {
+      return constant(((TTCNum) expr).value);
+    } else if (expr instanceof TTCFunc) {
+      return lower(((TTCFunc) expr).dist);
+    } else if (expr instanceof TTCBinOp) {
+      var binOp = (TTCBinOp) expr;
+      int op = getOp(binOp);
+      if (op == MUL && (isAttempt(binOp.lhs) || isAttempt(binOp.rhs))) {
+        op = ADD;
+      }
+      return lower(op, lower(binOp.lhs), lower(binOp.rhs));
+    } else {
+      throw new RuntimeException(
+          String.format("Unexpected TTC expression '%s'", expr.getClass().getSimpleName()));
+    }
+  }
+
+  private static List<Instruction> lower(Distribution dist) {
+    if (dist instanceof Distributions.Bernoulli) {
+      return attempt(((Distributions.Bernoulli) dist).probability);
+    } else if (dist instanceof Distributions.EasyAndCertain) {
+      return lower(Distributions.EasyAndCertain.exponential);
+    } else if (dist instanceof Distributions.EasyAndUncertain) {
+      return lower(Distributions.EasyAndUncertain.bernoulli);
+    } else if (dist instanceof Distributions.HardAndCertain) {
+      return lower(Distributions.HardAndCertain.exponential);
+    } else if (dist instanceof Distributions.HardAndUncertain) {
+      return lower(
+          ADD,
+          lower(Distributions.HardAndUncertain.bernoulli),
+          lower(Distributions.HardAndUncertain.exponential));
+    } else if (dist instanceof Distributions.VeryHardAndCertain) {
+      return lower(Distributions.VeryHardAndCertain.exponential);
+    } else if (dist instanceof Distributions.VeryHardAndUncertain) {
+      return lower(
+          ADD,
+          lower(Distributions.VeryHardAndUncertain.bernoulli),
+          lower(Distributions.VeryHardAndUncertain.exponential));
+    } else if (dist instanceof Distributions.Infinity
+        || dist instanceof Distributions.Zero
+        || dist instanceof Distributions.Enabled
+        || dist instanceof Distributions.Disabled) {
+      return constant(dist.getMean());
+    } else {
+      var code = new ArrayList<Instruction>();
+      code.add(new Instruction(SAMPLE, 0, dist));
+      return code;
+    }
+  }
+
+  private static List<Instruction> lower(int op, List<Instruction> lhs, List<Instruction> rhs) {
+    boolean lhsConst = lhs.size() == 1 && lhs.get(0).isConst();
+    boolean rhsConst = rhs.size() == 1 && rhs.get(0).isConst();
+    if (lhsConst && rhsConst) {
+      return constant(apply(op, lhs.get(0).arg, rhs.get(0).arg));
+    }
+    // Fold the identities, x + 0, x - 0, x * 1, x / 1, x ^ 1, 0 + x and 1 * x
+    if (rhsConst) {
+      double value = rhs.get(0).arg;
+      if (value == 0 && (op == ADD || op == SUB)
+          || value == 1 && (op == MUL || op == DIV || op == POW)) {
+        return lhs;
+      }
+    }
+    if (lhsConst) {
+      double value = lhs.get(0).arg;
+      if (value == 0 && op == ADD || value == 1 && op == MUL) {
+        return rhs;
+      }
+    }
+    lhs.addAll(rhs);
+    lhs.add(new Instruction(op, 0, null));
+    return lhs;
+  }
+
+  private static List<Instruction> constant(double value) {
+    var code = new ArrayList<Instruction>();
+    code.add(new Instruction(CONST, Math.min(value, Double.MAX_VALUE), null));
+    return code;
+  }
+
+  private static List<Instruction> attempt(double probability) {
+    if (probability >= 1) {
+      return constant(0);
+    } else if (probability <= 0) {
+      return constant(Double.MAX_VALUE);
+    }
+    var code = new ArrayList<Instruction>();
+    code.add(new Instruction(ATTEMPT, probability, null));
+    return code;
+  }
+
+  private static boolean isAttempt(TTCExpr expr) {
+    if (expr instanceof TTCFunc) {
+      var dist = ((TTCFunc) expr).dist;
+      return dist instanceof Distributions.Bernoulli
+          || dist instanceof Distributions.EasyAndUncertain;
+    }
+    return false;
+  }
+
+  private static int getOp(TTCBinOp expr) {
+    if (expr instanceof TTCAdd) {
+      return ADD;
+    } else if (expr instanceof TTCSub) {
+      return SUB;
+    } else if (expr instanceof TTCMul) {
+      return MUL;
+    } else if (expr instanceof TTCDiv) {
+      return DIV;
+    } else if (expr instanceof TTCPow) {
+      return POW;
+    } else {
+      throw new RuntimeException(
+          String.format(
+              "TTC binary operation not recognized '%s'", expr.getClass().getSimpleName()));
+    }
+  }
+
+  private static double apply(int op, double lhs, double rhs) {
+    double value;
+    switch (op) {
+      case ADD:
+        value = lhs + rhs;
+        break;
+      case SUB:
+        value = lhs - rhs;
+        break;
+      case MUL:
+        value = lhs * rhs;
+        break;
+      case DIV:
+        value = lhs / rhs;
+        break;
+      default:
+        value = Math.pow(lhs, rhs);
+        break;
+    }
+    return Math.min(value, Double.MAX_VALUE);
+  }
+
+  /** Returns the number of instructions of this program. */
+  public int size() {
+    return ops.length;
+  }
+
+  /** Returns whether this program was folded to a single constant. */
+  public boolean isConstant() {
+    return ops.length == 1 && ops[0] == CONST;
+  }
+
+  /** Returns the size of the stack needed by {@link #sample(RandomSource, double[])}. */
+  public int getStackSize() {
+    return stack.length;
+  }
+
+  /**
+   * Evaluates this program with every distribution replaced by its mean, the way the reference
+   * runtime assigns a single TTC value to an attack step. An attempt is treated as certain if its
+   * probability is at least 0.5 and as impossible otherwise.
+   */
+  public double getMean() {
+    return run(null, new double[stack.length]);
+  }
+
+  /** Draws one TTC value, using the stack of this program. */
+  public double sample(RandomSource random) {
+    return run(random, stack);
+  }
+
+  /**
+   * Draws one TTC value.
+   *
+   * @param random the source of randomness
+   * @param stack a stack of at least {@link #getStackSize()} elements
+   * @return the sampled TTC value
+   */
+  public double sample(RandomSource random, double[] stack) {
+    return run(random, stack);
+  }
+
+  /** Fills {@code out} with independent TTC values, using the stack of this program. */
+  public void fill(RandomSource random, double[] out) {
+    for (int i = 0; i < out.length; i++) {
+      out[i] = run(random, stack);
+    }
+  }
+
+  // Evaluates the means when random is null
+  private double run(RandomSource random, double[] stack) {
+    int top = -1;
+    for (int pc = 0; pc < ops.length; pc++) {
+      switch (ops[pc]) {
+        case CONST:
+          stack[++top] = args[pc];
+          break;
+        case SAMPLE:
+          stack[++top] = random == null ? dists[pc].getMean() : dists[pc].sample(random);
+          break;
+        case ATTEMPT:
+          boolean success = random == null ? args[pc] >= 0.5 : random.nextDouble() < args[pc];
+          stack[++top] = success ? 0 : Double.MAX_VALUE;
+          break;
+        default:
+          top--;
+          stack[top] = apply(ops[pc], stack[top], stack[top + 1]);
+          break;
+      }
+    }
+    return Math.max(stack[0], 0);
+  }
+
+  @Override
+  public String toString() {
+    var sb = new StringBuilder();
+    for (int pc = 0; pc < ops.length; pc++) {
+      if (pc > 0) {
+        sb.append(' ');
+      }
+      switch (ops[pc]) {
+        case CONST:
+          sb.append(args[pc] == Double.MAX_VALUE ? "Infinity" : Double.toString(args[pc]));
+          break;
+        case SAMPLE:
+          sb.append(dists[pc]);
+          break;
+        case ATTEMPT:
+          sb.append(new Distributions.Bernoulli(args[pc]));
+          break;
+        default:
+          sb.append(OPERATORS[ops[pc]]);
+          break;
+      }
+    }
+    return sb.toString();
+  }
+}
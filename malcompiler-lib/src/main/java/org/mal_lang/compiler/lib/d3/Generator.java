@@ -1,31 +1,42 @@
 package org.mal_lang.compiler.lib.d3;
 
 import jakarta.json.Json;
-import jakarta.json.JsonObjectBuilder;
+import jakarta.json.stream.JsonGenerator;
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
 import org.mal_lang.compiler.lib.CompilerException;
 import org.mal_lang.compiler.lib.Lang;
+import org.mal_lang.compiler.lib.Lang.Asset;
+import org.mal_lang.compiler.lib.Lang.AttackStep;
 import org.mal_lang.compiler.lib.Lang.StepAttackStep;
 import org.mal_lang.compiler.lib.Lang.StepBinOp;
 import org.mal_lang.compiler.lib.Lang.StepExpr;
+import org.mal_lang.compiler.lib.Profiler;
 
 public class Generator extends org.mal_lang.compiler.lib.Generator {
+  private static final String TEMPLATE = "/d3/visualization.html";
+  private static final String SPLIT_TEMPLATE = "/d3/visualization-split.html";
+  private static final String JSON_PLACEHOLDER = "{{JSON}}";
+
   public static void generate(Lang lang, Map<String, String> args)
-      throws CompilerException, FileNotFoundException {
+      throws CompilerException, IOException {
     new Generator(lang, args);
   }
 
-  private Generator(Lang lang, Map<String, String> args)
-      throws CompilerException, FileNotFoundException {
+  private Generator(Lang lang, Map<String, String> args) throws CompilerException, IOException {
     super(false, false);
-    Locale.setDefault(Locale.ROOT);
     if (!args.containsKey("path") || args.get("path").isBlank()) {
       throw error("D3 generator requires argument 'path'");
     }
@@ -34,74 +45,261 @@ public class Generator extends org.mal_lang.compiler.lib.Generator {
       throw error("Argument 'path' must be a directory");
     }
 
-    var json = Json.createObjectBuilder();
-    var assets = Json.createArrayBuilder();
+    boolean split;
+    if (!args.containsKey("split")) {
+      split = false;
+    } else {
+      switch (args.get("split").toLowerCase(Locale.ROOT).strip()) {
+        case "true":
+          split = true;
+          break;
+        case "false":
+          split = false;
+          break;
+        default:
+          throw error("Optional argument 'split' must be either 'true' or 'false'");
+      }
+    }
+
+    var name = lang.getDefine("id");
+    var output = new File(outputDir, "visualization." + name + ".html");
+    if (!split) {
+      try (var reader = openTemplate(TEMPLATE);
+          var writer = Files.newBufferedWriter(output.toPath(), StandardCharsets.UTF_8)) {
+        writeTemplate(reader, writer, name, json -> writeLang(json, lang));
+      }
+    } else {
+      var chunkDir = "visualization." + name;
+      Files.createDirectories(new File(outputDir, chunkDir).toPath());
+      var chunks = writeChunks(new File(outputDir, chunkDir), chunkDir, lang);
+      try (var reader = openTemplate(SPLIT_TEMPLATE);
+          var writer = Files.newBufferedWriter(output.toPath(), StandardCharsets.UTF_8)) {
+        writeTemplate(reader, writer, name, json -> writeOverview(json, lang, chunks));
+      }
+    }
+  }
+
+  private BufferedReader openTemplate(String template) throws CompilerException {
+    var is = getClass().getResourceAsStream(template);
+    if (is == null) {
+      throw error(String.format("Couldn't get resource %s", template));
+    }
+    return new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Copies the template line by line to {@code writer}, streaming JSON from {@code content} in
+   * place of the {@code {{JSON}}} placeholder, so that the JSON is never held in memory as a whole.
+   */
+  private void writeTemplate(
+      BufferedReader reader, BufferedWriter writer, String name, Consumer<JsonGenerator> content)
+      throws IOException {
+    boolean first = true;
+    String line;
+    while ((line = reader.readLine()) != null) {
+      if (!first) {
+        writer.newLine();
+      }
+      first = false;
+      line = line.replace("{{NAME}}", name);
+      int index = line.indexOf(JSON_PLACEHOLDER);
+      if (index == -1) {
+        writer.write(line);
+      } else {
+        writer.write(line.substring(0, index));
+        writeJson(writer, content);
+        writer.write(line.substring(index + JSON_PLACEHOLDER.length()));
+      }
+    }
+  }
+
+  private static void writeJson(Writer writer, Consumer<JsonGenerator> content) {
+    // Closing the generator would close the writer, the rest of the template still follows
+    var json = Json.createGenerator(writer);
+    content.accept(json);
+    json.flush();
+  }
+
+  private void writeLang(JsonGenerator json, Lang lang) {
+    json.writeStartObject();
+    json.writeStartArray("children");
     for (var asset : lang.getAssets().values()) {
-      var jsonAsset = Json.createObjectBuilder();
-      jsonAsset.add("name", asset.getName());
-      if (!asset.getAttackSteps().isEmpty()) {
-        var attackSteps = Json.createArrayBuilder();
-        for (var attackStep : asset.getAttackSteps().values()) {
-          var jsonAttackStep = Json.createObjectBuilder();
-          jsonAttackStep.add("name", attackStep.getName());
-          switch (attackStep.getType()) {
-            case ANY:
-              jsonAttackStep.add("type", "or");
-              break;
-            case ALL:
-              jsonAttackStep.add("type", "and");
-              break;
-            case DEFENSE:
-            case EXIST:
-            case NOTEXIST:
-              jsonAttackStep.add("type", "defense");
-              break;
-            default:
-              throw new RuntimeException("Invalid attack step type " + attackStep.getType());
-          }
+      var event = Profiler.assetEvent("d3", asset.getName());
+      writeAsset(json, asset);
+      event.commit();
+    }
+    json.writeEnd();
+    json.writeEnd();
+  }
 
-          var targets = Json.createArrayBuilder();
-
-          if (asset.hasSuperAsset()) {
-            // getAttackStep will traverse all parents
-            var as = asset.getSuperAsset().getAttackStep(attackStep.getName());
-            if (as != null) {
-              JsonObjectBuilder jsonStep = Json.createObjectBuilder();
-              jsonStep.add("name", as.getName());
-              jsonStep.add("entity_name", as.getAsset().getName());
-              jsonStep.add("size", 4000);
-              targets.add(jsonStep);
-            }
-          }
+  /**
+   * Writes the attack steps of every category to a script of its own in {@code dir}, which hands
+   * them to {@code loadChunk} in the split template when loaded.
+   *
+   * @return the path of each chunk relative to the HTML page, by category name
+   */
+  private Map<String, String> writeChunks(File dir, String relativeDir, Lang lang)
+      throws IOException {
+    var chunks = new LinkedHashMap<String, String>();
+    int i = 0;
+    for (var category : lang.getCategories().values()) {
+      var fileName = String.format(Locale.ROOT, "category-%d.js", i++);
+      try (var writer =
+          Files.newBufferedWriter(new File(dir, fileName).toPath(), StandardCharsets.UTF_8)) {
+        writer.write("loadChunk(");
+        writeJson(
+            writer,
+            json -> {
+              json.writeStartObject();
+              json.write("name", category.getName());
+              json.writeStartArray("children");
+              for (var asset : category.getAssets().values()) {
+                var event = Profiler.assetEvent("d3", asset.getName());
+                writeAsset(json, asset);
+                event.commit();
+              }
+              json.writeEnd();
+              json.writeEnd();
+            });
+        writer.write(");");
+        writer.newLine();
+      }
+      chunks.put(category.getName(), String.format("%s/%s", relativeDir, fileName));
+    }
+    return chunks;
+  }
 
-          for (var expr : attackStep.getReaches()) {
-            var as = getAttackStep(expr);
-            JsonObjectBuilder jsonStep = Json.createObjectBuilder();
-            jsonStep.add("name", as.attackStep.getName());
-            jsonStep.add("entity_name", as.attackStep.getAsset().getName());
-            jsonStep.add("size", 4000);
-            targets.add(jsonStep);
+  /**
+   * Writes the categories and assets of {@code lang} without their attack steps, together with the
+   * number of attack step edges between each pair of assets and each pair of categories.
+   */
+  private void writeOverview(JsonGenerator json, Lang lang, Map<String, String> chunks) {
+    var assetEdges = new LinkedHashMap<Asset, Map<Asset, Integer>>();
+    var categoryEdges = new LinkedHashMap<String, Map<String, Integer>>();
+    for (var asset : lang.getAssets().values()) {
+      for (var attackStep : asset.getAttackSteps().values()) {
+        for (var target : getTargets(asset, attackStep)) {
+          var targetAsset = target.getAsset();
+          if (targetAsset != asset) {
+            assetEdges
+                .computeIfAbsent(asset, a -> new LinkedHashMap<>())
+                .merge(targetAsset, 1, Integer::sum);
+          }
+          var category = asset.getCategory().getName();
+          var targetCategory = targetAsset.getCategory().getName();
+          if (!targetCategory.equals(category)) {
+            categoryEdges
+                .computeIfAbsent(category, c -> new LinkedHashMap<>())
+                .merge(targetCategory, 1, Integer::sum);
           }
-          jsonAttackStep.add("targets", targets);
-          attackSteps.add(jsonAttackStep);
         }
-        jsonAsset.add("children", attackSteps);
       }
-      assets.add(jsonAsset);
     }
-    json.add("children", assets);
-    var jsonString = json.build().toString();
 
-    var name = lang.getDefine("id");
-    var output = new File(outputDir, "visualization." + name + ".html");
-    var is = getClass().getResourceAsStream("/d3/visualization.html");
-    var reader = new BufferedReader(new InputStreamReader(is));
-    String content = reader.lines().collect(Collectors.joining(System.lineSeparator()));
-    content = content.replace("{{NAME}}", name).replace("{{JSON}}", jsonString);
+    json.writeStartObject();
+    json.writeStartArray("categories");
+    for (var category : lang.getCategories().values()) {
+      json.writeStartObject();
+      json.write("name", category.getName());
+      json.write("chunk", chunks.get(category.getName()));
+      json.writeStartArray("assets");
+      for (var asset : category.getAssets().values()) {
+        json.writeStartObject();
+        json.write("name", asset.getName());
+        json.write("steps", asset.getAttackSteps().size());
+        json.writeEnd();
+      }
+      json.writeEnd();
+      json.writeEnd();
+    }
+    json.writeEnd();
+    json.writeStartArray("asset_edges");
+    for (var source : assetEdges.entrySet()) {
+      for (var target : source.getValue().entrySet()) {
+        writeEdge(json, source.getKey().getName(), target.getKey().getName(), target.getValue());
+      }
+    }
+    json.writeEnd();
+    json.writeStartArray("category_edges");
+    for (var source : categoryEdges.entrySet()) {
+      for (var target : source.getValue().entrySet()) {
+        writeEdge(json, source.getKey(), target.getKey(), target.getValue());
+      }
+    }
+    json.writeEnd();
+    json.writeEnd();
+  }
+
+  private void writeEdge(JsonGenerator json, String source, String target, int count) {
+    json.writeStartObject();
+    json.write("source", source);
+    json.write("target", target);
+    json.write("count", count);
+    json.writeEnd();
+  }
+
+  /** Returns the attack steps that {@code attackStep} has edges to in the visualization. */
+  private List<AttackStep> getTargets(Asset asset, AttackStep attackStep) {
+    var targets = new ArrayList<AttackStep>();
+    if (asset.hasSuperAsset()) {
+      // getAttackStep will traverse all parents
+      var as = asset.getSuperAsset().getAttackStep(attackStep.getName());
+      if (as != null) {
+        targets.add(as);
+      }
+    }
+    for (var expr : attackStep.getReaches()) {
+      targets.add(getAttackStep(expr).attackStep);
+    }
+    return targets;
+  }
+
+  private void writeAsset(JsonGenerator json, Asset asset) {
+    json.writeStartObject();
+    json.write("name", asset.getName());
+    if (!asset.getAttackSteps().isEmpty()) {
+      json.writeStartArray("children");
+      for (var attackStep : asset.getAttackSteps().values()) {
+        writeAttackStep(json, asset, attackStep);
+      }
+      json.writeEnd();
+    }
+    json.writeEnd();
+  }
 
-    try (var pw = new PrintWriter(output)) {
-      pw.write(content);
+  private void writeAttackStep(JsonGenerator json, Asset asset, AttackStep attackStep) {
+    json.writeStartObject();
+    json.write("name", attackStep.getName());
+    switch (attackStep.getType()) {
+      case ANY:
+        json.write("type", "or");
+        break;
+      case ALL:
+        json.write("type", "and");
+        break;
+      case DEFENSE:
+      case EXIST:
+      case NOTEXIST:
+        json.write("type", "defense");
+        break;
+      default:
+        throw new RuntimeException("Invalid attack step type " + attackStep.getType());
     }
+
+    json.writeStartArray("targets");
+    for (var target : getTargets(asset, attackStep)) {
+      writeTarget(json, target);
+    }
+    json.writeEnd();
+    json.writeEnd();
+  }
+
+  private void writeTarget(JsonGenerator json, AttackStep attackStep) {
+    json.writeStartObject();
+    json.write("name", attackStep.getName());
+    json.write("entity_name", attackStep.getAsset().getName());
+    json.write("size", 4000);
+    json.writeEnd();
   }
 
   private StepAttackStep getAttackStep(StepExpr expr) {
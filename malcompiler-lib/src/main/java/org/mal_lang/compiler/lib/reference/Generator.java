@@ -16,6 +16,7 @@
 package org.mal_lang.compiler.lib.reference;
 
 import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
 import com.squareup.javapoet.FieldSpec;
 import com.squareup.javapoet.JavaFile;
 import com.squareup.javapoet.MethodSpec;
@@ -28,13 +29,16 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Function;
 import javax.lang.model.element.Modifier;
 import org.mal_lang.compiler.lib.CompilerException;
 import org.mal_lang.compiler.lib.JavaGenerator;
@@ -46,8 +50,14 @@ import org.mal_lang.compiler.lib.Lang.Field;
 import org.mal_lang.compiler.lib.Lang.StepExpr;
 import org.mal_lang.compiler.lib.Lang.TTCExpr;
 import org.mal_lang.compiler.lib.Lang.TTCFunc;
+import org.mal_lang.compiler.lib.Profiler;
+import org.mal_lang.compiler.lib.TTCProgram;
 
 public class Generator extends JavaGenerator {
+  private static final String FACTORY = "AssetFactory";
+  // Number of assets registered per method, keeps the factory below the size limit of methods
+  private static final int FACTORY_CHUNK = 1000;
+
   private final File output;
   private final Lang lang;
   private final boolean core;
@@ -65,7 +75,6 @@ public class Generator extends JavaGenerator {
   private Generator(Lang lang, Map<String, String> args, boolean verbose, boolean debug)
       throws CompilerException {
     super(verbose, debug);
-    Locale.setDefault(Locale.ROOT);
     this.lang = lang;
     if (!args.containsKey("path") || args.get("path").isBlank()) {
       throw error("Reference generator requires argument 'path'");
@@ -80,7 +89,7 @@ public class Generator extends JavaGenerator {
     if (!args.containsKey("core")) {
       this.core = true;
     } else {
-      switch (args.get("core").toLowerCase().trim()) {
+      switch (args.get("core").toLowerCase(Locale.ROOT).trim()) {
         case "true":
           this.core = true;
           break;
@@ -94,14 +103,21 @@ public class Generator extends JavaGenerator {
 
     validateNames(this.lang);
     checkSteps(this.lang);
+    optimize(this.lang);
+    if (this.lang.getAssets().containsKey(FACTORY)) {
+      throw error(String.format("Asset '%s' conflicts with the generated factory", FACTORY));
+    }
     fillAlwaysQualifiedNames(this.lang);
   }
 
   private void _generate() throws IOException, CompilerException {
     for (Asset asset : lang.getAssets().values()) {
+      var event = Profiler.assetEvent("reference", asset.getName());
       var javaFile = JavaFile.builder(pkg, createAsset(asset)).build();
       javaFile.writeTo(this.output);
+      event.commit();
     }
+    JavaFile.builder(pkg, createAssetFactory()).build().writeTo(this.output);
     if (core) {
       _generateCore();
     }
@@ -115,7 +131,15 @@ public class Generator extends JavaGenerator {
 
     List<String> fileNames =
         Arrays.asList(
-            "Asset", "Attacker", "AttackStep", "AttackStepMax", "AttackStepMin", "Defense");
+            "Asset",
+            "Attacker",
+            "AttackStep",
+            "AttackStepMax",
+            "AttackStepMin",
+            "Defense",
+            "IndexedList",
+            "Profile",
+            "Validator");
     for (String fileName : fileNames) {
       String name = String.format("%s.java", fileName);
       String resourcePath = String.format("/reference/%s", name);
@@ -128,7 +152,7 @@ public class Generator extends JavaGenerator {
     }
   }
 
-  private void _generateProfile() throws CompilerException, IOException {
+  private void _generateProfile() throws IOException {
     File out = new File(output, "attackerProfile.ttc");
     try (var fw = new FileWriter(out)) {
       for (Asset asset : lang.getAssets().values()) {
@@ -139,11 +163,8 @@ public class Generator extends JavaGenerator {
             if (expr instanceof TTCFunc) {
               dist = ((TTCFunc) expr).dist.toString();
             } else {
-              fw.close();
-              throw error(
-                  String.format(
-                      "Advanced TTC, used at %s.%s, is not supported",
-                      asset.getName(), attackStep.getName()));
+              // Advanced TTC is written as a postfix program that the runtime evaluates
+              dist = TTCProgram.compile(expr).toString();
             }
           }
           fw.write(String.format("%s.%s = %s%n", asset.getName(), attackStep.getName(), dist));
@@ -204,7 +225,7 @@ public class Generator extends JavaGenerator {
   }
 
   private TypeSpec createAsset(Asset asset) {
-    LOGGER.info(String.format("Creating '%s.java'", asset.getName()));
+    LOGGER.info(() -> String.format("Creating '%s.java'", asset.getName()));
     TypeSpec.Builder builder = TypeSpec.classBuilder(asset.getName());
     builder.alwaysQualify(this.alwaysQualifiedNames);
     builder.addModifiers(Modifier.PUBLIC);
@@ -218,6 +239,7 @@ public class Generator extends JavaGenerator {
       ClassName parent = ClassName.get("core", "Asset");
       builder.superclass(parent);
     }
+    createAssetTypes(builder, asset);
 
     // Normal constructor with all parameters, for normal assets this will only be (name), for
     // assets containing or inheriting defenses it will be (name, isDef1, isDef2...)
@@ -364,6 +386,32 @@ public class Generator extends JavaGenerator {
     return builder.build();
   }
 
+  /**
+   * Creates a constant with the names of the asset and all its super assets, which the runtime
+   * indexes assets by instead of looking at their classes.
+   *
+   * @param builder asset class to add the constant to
+   * @param asset the asset
+   */
+  private static void createAssetTypes(TypeSpec.Builder builder, Asset asset) {
+    List<String> names = new ArrayList<>();
+    for (Asset type = asset; type != null; type = type.getSuperAsset()) {
+      names.add(CodeBlock.of("$S", type.getName()).toString());
+    }
+    TypeName type = ParameterizedTypeName.get(List.class, String.class);
+    FieldSpec.Builder field = FieldSpec.builder(type, "_assetTypes");
+    field.addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL);
+    field.initializer("$T.of($L)", List.class, String.join(", ", names));
+    builder.addField(field.build());
+
+    MethodSpec.Builder method = MethodSpec.methodBuilder("assetTypes");
+    method.addAnnotation(Override.class);
+    method.addModifiers(Modifier.PUBLIC);
+    method.returns(type);
+    method.addStatement("return _assetTypes");
+    builder.addMethod(method.build());
+  }
+
   private void createVariable(
       TypeSpec.Builder parentBuilder, String name, StepExpr expr, Asset asset) {
     String setName = String.format("_cache%s", name);
@@ -498,7 +546,7 @@ public class Generator extends JavaGenerator {
   }
 
   private void createDefense(TypeSpec.Builder builder, AttackStep attackStep) {
-    LOGGER.debug(String.format("Creating defense '%s'", ucFirst(attackStep.getName())));
+    LOGGER.debug(() -> String.format("Creating defense '%s'", ucFirst(attackStep.getName())));
     // Defense constructor with only (name)
     MethodSpec.Builder constructor = MethodSpec.constructorBuilder();
     constructor.addModifiers(Modifier.PUBLIC);
@@ -530,7 +578,8 @@ public class Generator extends JavaGenerator {
   }
 
   private void createConditionalDefense(TypeSpec.Builder builder, AttackStep attackStep) {
-    LOGGER.debug(String.format("Creating conditional defense '%s'", ucFirst(attackStep.getName())));
+    LOGGER.debug(
+        () -> String.format("Creating conditional defense '%s'", ucFirst(attackStep.getName())));
     // Conditional defense constructor with only (name)
     MethodSpec.Builder constructor = MethodSpec.constructorBuilder();
     constructor.addModifiers(Modifier.PUBLIC);
@@ -573,7 +622,7 @@ public class Generator extends JavaGenerator {
   }
 
   private void createAttackStep(TypeSpec.Builder parentBuilder, AttackStep attackStep) {
-    Name.reset();
+    names.reset();
     TypeSpec.Builder builder = TypeSpec.classBuilder(ucFirst(attackStep.getName()));
     builder.addModifiers(Modifier.PUBLIC);
     if (attackStep.hasParent()) {
@@ -591,7 +640,7 @@ public class Generator extends JavaGenerator {
       createConditionalDefense(builder, attackStep);
       builder.addType(createDisable(attackStep).build());
     } else {
-      LOGGER.debug(String.format("Creating attack step '%s'", ucFirst(attackStep.getName())));
+      LOGGER.debug(() -> String.format("Creating attack step '%s'", ucFirst(attackStep.getName())));
       // Attack step constructor with only (name)
       MethodSpec.Builder constructor = MethodSpec.constructorBuilder();
       constructor.addModifiers(Modifier.PUBLIC);
@@ -710,7 +759,85 @@ public class Generator extends JavaGenerator {
       }
       builder.addStatement("return $N", "assets");
       assetBuilder.addMethod(builder.build());
+
+      builder = MethodSpec.methodBuilder("link");
+      builder.addAnnotation(Override.class);
+      builder.addModifiers(Modifier.PUBLIC);
+      builder.addParameter(String.class, "field");
+      builder.addParameter(assetType, "other");
+      started = false;
+      for (Field field : asset.getFields().values()) {
+        if (!started) {
+          builder.beginControlFlow("if ($N.equals($S))", "field", field.getName());
+          started = true;
+        } else {
+          builder.nextControlFlow("else if ($N.equals($S))", "field", field.getName());
+        }
+        ClassName type = ClassName.get(pkg, field.getTarget().getAsset().getName());
+        builder.addStatement("add$L(($T) $N)", ucFirst(field.getName()), type, "other");
+      }
+      builder.nextControlFlow("else");
+      builder.addStatement("super.link($N, $N)", "field", "other");
+      builder.endControlFlow();
+      assetBuilder.addMethod(builder.build());
+    }
+  }
+
+  /**
+   * Creates the factory that instantiates concrete assets by name, which lets tools build models
+   * of the generated language without compiling against its classes.
+   *
+   * @return the factory class
+   */
+  private TypeSpec createAssetFactory() {
+    ClassName assetType = ClassName.get("core", "Asset");
+    ClassName string = ClassName.get(String.class);
+    TypeName constructorType =
+        ParameterizedTypeName.get(ClassName.get(Function.class), string, assetType);
+    TypeName mapType = ParameterizedTypeName.get(ClassName.get(Map.class), string, constructorType);
+    TypeSpec.Builder builder = TypeSpec.classBuilder(FACTORY);
+    builder.addModifiers(Modifier.PUBLIC, Modifier.FINAL);
+    FieldSpec.Builder constructors = FieldSpec.builder(mapType, "CONSTRUCTORS");
+    constructors.addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL);
+    constructors.initializer("new $T<>()", HashMap.class);
+    builder.addField(constructors.build());
+    builder.addMethod(MethodSpec.constructorBuilder().addModifiers(Modifier.PRIVATE).build());
+
+    List<Asset> concrete = new ArrayList<>();
+    for (Asset asset : lang.getAssets().values()) {
+      if (!asset.isAbstract()) {
+        concrete.add(asset);
+      }
     }
+    CodeBlock.Builder staticBlock = CodeBlock.builder();
+    for (int i = 0; i * FACTORY_CHUNK < concrete.size(); i++) {
+      String name = String.format(Locale.ROOT, "register%d", i);
+      MethodSpec.Builder register = MethodSpec.methodBuilder(name);
+      register.addModifiers(Modifier.PRIVATE, Modifier.STATIC);
+      int end = Math.min(concrete.size(), (i + 1) * FACTORY_CHUNK);
+      for (Asset asset : concrete.subList(i * FACTORY_CHUNK, end)) {
+        register.addStatement(
+            "CONSTRUCTORS.put($S, $T::new)", asset.getName(), ClassName.get(pkg, asset.getName()));
+      }
+      builder.addMethod(register.build());
+      staticBlock.addStatement("$N()", name);
+    }
+    builder.addStaticBlock(staticBlock.build());
+
+    MethodSpec.Builder create = MethodSpec.methodBuilder("create");
+    create.addModifiers(Modifier.PUBLIC, Modifier.STATIC);
+    create.returns(assetType);
+    create.addParameter(String.class, "type");
+    create.addParameter(String.class, "name");
+    create.addStatement("$T constructor = CONSTRUCTORS.get(type)", constructorType);
+    create.beginControlFlow("if (constructor == null)");
+    create.addStatement(
+        "throw new $T(\"Unknown or abstract asset type \" + type + \".\")",
+        IllegalArgumentException.class);
+    create.endControlFlow();
+    create.addStatement("return constructor.apply(name)");
+    builder.addMethod(create.build());
+    return builder.build();
   }
 
   private void createSetField(TypeSpec.Builder parentBuilder, String name) {
@@ -15,7 +15,6 @@
  */
 package org.mal_lang.compiler.lib.securicad;
 
-import com.kitfox.svg.app.beans.SVGIcon;
 import com.squareup.javapoet.AnnotationSpec;
 import com.squareup.javapoet.ClassName;
 import com.squareup.javapoet.FieldSpec;
@@ -24,19 +23,17 @@ import com.squareup.javapoet.MethodSpec;
 import com.squareup.javapoet.ParameterizedTypeName;
 import com.squareup.javapoet.TypeName;
 import com.squareup.javapoet.TypeSpec;
-import java.awt.Dimension;
-import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import javax.imageio.ImageIO;
 import javax.lang.model.element.Modifier;
 import org.mal_lang.compiler.lib.JavaGenerator;
 import org.mal_lang.compiler.lib.Lang;
@@ -49,6 +46,8 @@ import org.mal_lang.compiler.lib.MalLogger;
 public class AssetGenerator extends JavaGenerator {
   private final File output;
   private final File icons;
+  private final IconCache iconCache;
+  private final Map<String, File> iconFiles = new HashMap<>();
   private final Lang lang;
   private final AttackStepGenerator asGen;
   private final DefenseGenerator defGen;
@@ -60,11 +59,18 @@ public class AssetGenerator extends JavaGenerator {
       String pkg,
       File output,
       File icons,
+      IconCache iconCache,
       Lang lang,
       String[] alwaysQualifiedNames) {
     super(LOGGER, pkg);
     this.output = output;
     this.icons = icons;
+    this.iconCache = iconCache;
+    if (icons != null && icons.isDirectory()) {
+      for (var file : icons.listFiles()) {
+        iconFiles.put(file.getName(), file);
+      }
+    }
     this.lang = lang;
     this.alwaysQualifiedNames = alwaysQualifiedNames;
     asGen = new AttackStepGenerator(LOGGER, pkg);
@@ -72,8 +78,26 @@ public class AssetGenerator extends JavaGenerator {
     varGen = new VariableGenerator(LOGGER, pkg);
   }
 
+  /**
+   * Renders the SVG icons of all {@code assets} that are not cached yet, in parallel, so that
+   * {@link #generate(Asset)} finds them in the cache.
+   */
+  protected void prefetchIcons(Collection<Asset> assets) {
+    if (this.icons == null) {
+      return;
+    }
+    var svgs = new ArrayList<File>();
+    for (var asset : assets) {
+      var icon = asset.isAbstract() ? null : getAssetIcon(asset, "svg");
+      if (icon != null) {
+        svgs.add(icon);
+      }
+    }
+    iconCache.prefetch(svgs, Runtime.getRuntime().availableProcessors());
+  }
+
   protected void generate(Asset asset) throws IOException {
-    LOGGER.info(String.format("Creating '%s.java'", asset.getName()));
+    LOGGER.info(() -> String.format("Creating '%s.java'", asset.getName()));
     TypeSpec.Builder builder = TypeSpec.classBuilder(asset.getName());
     builder.alwaysQualify(this.alwaysQualifiedNames);
 
@@ -146,35 +170,28 @@ public class AssetGenerator extends JavaGenerator {
       varGen.generate(builder, variable.getKey(), variable.getValue(), asset);
     }
 
-    Set<String> variables = new LinkedHashSet<>();
-    variables.addAll(asset.getVariables().keySet());
-    variables.addAll(asset.getReverseVariables().keySet());
-    if (!variables.isEmpty() || !asset.getAttackSteps().isEmpty()) {
-      createClearCache(builder, asset, variables);
+    if (!asset.hasSuperAsset()) {
+      createClearCache(builder);
     }
 
     var file = JavaFile.builder(this.pkg, builder.build()).build();
     file.writeTo(this.output);
   }
 
-  private void createClearCache(
-      TypeSpec.Builder parentBuilder, Asset asset, Set<String> variables) {
+  private void createClearCache(TypeSpec.Builder parentBuilder) {
+    // The caches of the asset and of its attack steps and defenses share one epoch
+    ClassName graphCache = Generator.getGraphCache(pkg);
+    FieldSpec.Builder field =
+        FieldSpec.builder(
+            graphCache, Generator.getGraphCacheName(), Modifier.PROTECTED, Modifier.FINAL);
+    field.initializer("new $T()", graphCache);
+    parentBuilder.addField(field.build());
+
+    // Caches are stamped with the epoch they were computed in, so moving the epoch clears them all
     MethodSpec.Builder builder = MethodSpec.methodBuilder("clearGraphCache");
     builder.addAnnotation(Override.class);
     builder.addModifiers(Modifier.PUBLIC);
-    if (asset.hasSuperAsset()) {
-      builder.addStatement("super.clearGraphCache()");
-    }
-    for (var variable : variables) {
-      builder.addStatement("_cache$N = null", variable);
-    }
-    for (var attackStep : asset.getAttackSteps().values()) {
-      if (attackStep.isDefense() || attackStep.isConditionalDefense()) {
-        builder.addStatement("$N.disable.clearGraphCache()", attackStep.getName());
-      } else {
-        builder.addStatement("$N.clearGraphCache()", attackStep.getName());
-      }
-    }
+    builder.addStatement("$N.invalidate()", Generator.getGraphCacheName());
     parentBuilder.addMethod(builder.build());
   }
 
@@ -361,13 +378,10 @@ public class AssetGenerator extends JavaGenerator {
   }
 
   private File getAssetIcon(Asset asset, String type) {
-    var name = String.format("%s.%s", asset.getName(), type);
-    for (var file : this.icons.listFiles()) {
-      if (file.getName().equals(name)) {
-        return file;
-      }
-    }
-    if (asset.hasSuperAsset()) {
+    var file = iconFiles.get(String.format("%s.%s", asset.getName(), type));
+    if (file != null) {
+      return file;
+    } else if (asset.hasSuperAsset()) {
       return getAssetIcon(asset.getSuperAsset(), type);
     } else {
       return null;
@@ -390,18 +404,7 @@ public class AssetGenerator extends JavaGenerator {
     if (!isSvg) {
       pngBytes = Files.readAllBytes(icon.toPath());
     } else {
-      SVGIcon svg = new SVGIcon();
-      svg.setPreferredSize(new Dimension(48, 48));
-      svg.setAutosize(SVGIcon.AUTOSIZE_BESTFIT);
-      svg.setInterpolation(SVGIcon.INTERP_BICUBIC);
-      svg.setAntiAlias(true);
-      svg.setSvgURI(icon.toURI());
-
-      BufferedImage img = (BufferedImage) svg.getImage();
-      ByteArrayOutputStream out = new ByteArrayOutputStream();
-      ImageIO.write(img, "png", out);
-      pngBytes = out.toByteArray();
-
+      pngBytes = iconCache.getPNG(icon);
       svgBytes = Files.readAllBytes(icon.toPath());
       MethodSpec.Builder builder = MethodSpec.methodBuilder("getIconSVG");
       builder.addModifiers(Modifier.PUBLIC, Modifier.STATIC);
@@ -569,7 +572,9 @@ public class AssetGenerator extends JavaGenerator {
     for (AttackStep attackStep : asset.getAttackSteps().values()) {
       if (attackStep.hasCIA()) {
         LOGGER.debug(
-            String.format("'%s$%s' set to affect color", asset.getName(), attackStep.getName()));
+            () ->
+                String.format(
+                    "'%s$%s' set to affect color", asset.getName(), attackStep.getName()));
         builder.addStatement("elements.add($L)", attackStep.getName());
       }
     }
@@ -23,9 +23,7 @@ import com.squareup.javapoet.MethodSpec;
 import com.squareup.javapoet.ParameterizedTypeName;
 import com.squareup.javapoet.TypeName;
 import com.squareup.javapoet.TypeSpec;
-import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Set;
 import javax.lang.model.element.Modifier;
 import org.mal_lang.compiler.lib.Distributions;
 import org.mal_lang.compiler.lib.JavaGenerator;
@@ -81,7 +79,7 @@ public class AttackStepGenerator extends JavaGenerator {
       createDefaultLocalTtc(builder, attackStep);
     }
 
-    createSteps(builder, exprGen, attackStep);
+    createSteps(builder, exprGen, this.pkg, attackStep);
     createGetDescription(builder, attackStep);
     createTraceabilityHelper(builder, attackStep);
     createGetTags(builder, attackStep);
@@ -90,33 +88,33 @@ public class AttackStepGenerator extends JavaGenerator {
   }
 
   protected static void createSteps(
-      TypeSpec.Builder parentBuilder, ExpressionGenerator exprGen, AttackStep attackStep) {
-    Set<String> caches = new LinkedHashSet<>();
-
+      TypeSpec.Builder parentBuilder,
+      ExpressionGenerator exprGen,
+      String pkg,
+      AttackStep attackStep) {
     if (!attackStep.getReaches().isEmpty()) {
       String childCacheName = String.format("_cacheChildren%s", ucFirst(attackStep.getName()));
       createSetField(parentBuilder, childCacheName);
       exprGen.createGetAttackStepChildren(parentBuilder, attackStep, childCacheName);
-      caches.add(childCacheName);
     }
 
     if (!attackStep.getParentSteps().isEmpty()) {
       String parentCacheName = String.format("_cacheParent%s", ucFirst(attackStep.getName()));
       createSetField(parentBuilder, parentCacheName);
       exprGen.createSetExpectedParents(parentBuilder, attackStep, parentCacheName);
-      caches.add(parentCacheName);
     }
 
-    MethodSpec.Builder builder = MethodSpec.methodBuilder("clearGraphCache");
-    builder.addAnnotation(Override.class);
-    builder.addModifiers(Modifier.PUBLIC);
-    if (attackStep.hasParent()) {
-      builder.addStatement("super.clearGraphCache()");
-    }
-    for (var cache : caches) {
-      builder.addStatement("$N = null", cache);
+    // Subclasses inherit the override, caches are invalidated by the epoch of the asset
+    if (!attackStep.hasParent()) {
+      MethodSpec.Builder builder = MethodSpec.methodBuilder("clearGraphCache");
+      builder.addAnnotation(Override.class);
+      builder.addModifiers(Modifier.PUBLIC);
+      builder.addStatement(
+          "$T.this.$N.invalidate()",
+          ClassName.get(pkg, attackStep.getAsset().getName()),
+          Generator.getGraphCacheName());
+      parentBuilder.addMethod(builder.build());
     }
-    parentBuilder.addMethod(builder.build());
   }
 
   ////////////////////
@@ -390,5 +388,6 @@ public class AttackStepGenerator extends JavaGenerator {
     FieldSpec.Builder builder = FieldSpec.builder(type, name);
     builder.addModifiers(Modifier.PRIVATE);
     parentBuilder.addField(builder.build());
+    parentBuilder.addField(TypeName.LONG, Generator.getEpochName(name), Modifier.PRIVATE);
   }
 }
@@ -176,7 +176,7 @@ public class DefenseGenerator extends JavaGenerator {
     method.addStatement("return $T.this", parent);
     builder.addMethod(method.build());
 
-    AttackStepGenerator.createSteps(builder, exprGen, attackStep);
+    AttackStepGenerator.createSteps(builder, exprGen, this.pkg, attackStep);
     AttackStepGenerator.createGetTags(builder, attackStep);
 
     parentBuilder.addType(builder.build());
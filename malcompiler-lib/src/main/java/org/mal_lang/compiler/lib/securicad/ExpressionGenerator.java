@@ -36,7 +36,7 @@ public class ExpressionGenerator extends JavaGenerator {
 
   protected void createGetAttackStepChildren(
       TypeSpec.Builder parentBuilder, AttackStep attackStep, String cacheName) {
-    Name.reset();
+    names.reset();
     MethodSpec.Builder builder = MethodSpec.methodBuilder("getAttackStepChildren");
     builder.addAnnotation(Override.class);
     builder.addModifiers(Modifier.PUBLIC);
@@ -46,7 +46,12 @@ public class ExpressionGenerator extends JavaGenerator {
     TypeName asSet = ParameterizedTypeName.get(set, as);
     builder.returns(asSet);
 
-    builder.beginControlFlow("if ($N == null)", cacheName);
+    String epochName = Generator.getEpochName(cacheName);
+    builder.addStatement(
+        "long epoch = $T.this.$N.epoch()",
+        ClassName.get(pkg, attackStep.getAsset().getName()),
+        Generator.getGraphCacheName());
+    builder.beginControlFlow("if ($N != epoch)", epochName);
     if (attackStep.inheritsReaches()) {
       builder.addStatement("$T tmpCache = new $T<>(super.getAttackStepChildren())", asSet, hashSet);
     } else {
@@ -60,6 +65,7 @@ public class ExpressionGenerator extends JavaGenerator {
     }
     // copyOf returns an immutable set
     builder.addStatement("$N = $T.copyOf(tmpCache)", cacheName, set);
+    builder.addStatement("$N = epoch", epochName);
     builder.endControlFlow();
 
     builder.addStatement("return $N", cacheName);
@@ -68,7 +74,7 @@ public class ExpressionGenerator extends JavaGenerator {
 
   protected void createSetExpectedParents(
       TypeSpec.Builder parentBuilder, AttackStep attackStep, String cacheName) {
-    Name.reset();
+    names.reset();
     MethodSpec.Builder builder = MethodSpec.methodBuilder("setExpectedParents");
     builder.addAnnotation(Override.class);
     builder.addModifiers(Modifier.PUBLIC);
@@ -76,7 +82,12 @@ public class ExpressionGenerator extends JavaGenerator {
     builder.addParameter(concreteSample, "sample");
 
     builder.addStatement("super.setExpectedParents(sample)");
-    builder.beginControlFlow("if ($N == null)", cacheName);
+    String epochName = Generator.getEpochName(cacheName);
+    builder.addStatement(
+        "long epoch = $T.this.$N.epoch()",
+        ClassName.get(pkg, attackStep.getAsset().getName()),
+        Generator.getGraphCacheName());
+    builder.beginControlFlow("if ($N != epoch)", epochName);
     builder.addStatement("$N = new $T<>()", cacheName, HashSet.class);
     for (StepExpr expr : attackStep.getParentSteps()) {
       AutoFlow af = new AutoFlow();
@@ -84,6 +95,7 @@ public class ExpressionGenerator extends JavaGenerator {
       end.addStatement("$N.add($N)", cacheName, end.prefix);
       af.build(builder);
     }
+    builder.addStatement("$N = epoch", epochName);
     builder.endControlFlow();
 
     builder.beginControlFlow("if (sample != null)");
@@ -47,11 +47,13 @@ import org.mal_lang.compiler.lib.Lang.Asset;
 import org.mal_lang.compiler.lib.Lang.AttackStep;
 import org.mal_lang.compiler.lib.Lang.Link;
 import org.mal_lang.compiler.lib.MalInfo;
+import org.mal_lang.compiler.lib.Profiler;
 
 public class Generator extends JavaGenerator {
   private final File output;
   private final Lang lang;
   private final File icons;
+  private final File iconCache;
   private final boolean mock;
   private final boolean keepDebugSteps;
 
@@ -70,7 +72,6 @@ public class Generator extends JavaGenerator {
     super(verbose, debug);
     // to not have svgSalamander flash a ghost window
     System.setProperty("java.awt.headless", "true");
-    Locale.setDefault(Locale.ROOT);
     this.lang = lang;
     if (!args.containsKey("path") || args.get("path").isBlank()) {
       throw error("SecuriCAD generator requires argument 'path'");
@@ -92,10 +93,21 @@ public class Generator extends JavaGenerator {
     } else {
       this.icons = null;
     }
+    if (args.containsKey("iconCache") && !args.get("iconCache").isBlank()) {
+      this.iconCache = new File(args.get("iconCache"));
+      if (!this.iconCache.isAbsolute()) {
+        throw error("Argument 'iconCache' must be an absolute path");
+      } else if (iconCache.isFile()) {
+        throw error("Argument 'iconCache' is a file but must be a directory");
+      }
+    } else {
+      // A shared default directory could be written by other users, so only cache in memory
+      this.iconCache = null;
+    }
     if (!args.containsKey("mock")) {
       this.mock = false;
     } else {
-      switch (args.get("mock").toLowerCase().strip()) {
+      switch (args.get("mock").toLowerCase(Locale.ROOT).strip()) {
         case "true":
           this.mock = true;
           break;
@@ -109,7 +121,7 @@ public class Generator extends JavaGenerator {
     if (!args.containsKey("debug")) {
       this.keepDebugSteps = false;
     } else {
-      switch (args.get("debug").toLowerCase().strip()) {
+      switch (args.get("debug").toLowerCase(Locale.ROOT).strip()) {
         case "true":
           this.keepDebugSteps = true;
           break;
@@ -127,6 +139,7 @@ public class Generator extends JavaGenerator {
 
     validateNames(this.lang);
     checkSteps(this.lang);
+    optimize(this.lang);
     fillAlwaysQualifiedNames(this.lang);
   }
 
@@ -187,14 +200,26 @@ public class Generator extends JavaGenerator {
   }
 
   private void _generate() throws IOException, CompilerException {
-    AssetGenerator ag = new AssetGenerator(LOGGER, pkg, output, icons, lang, alwaysQualifiedNames);
+    AssetGenerator ag =
+        new AssetGenerator(
+            LOGGER,
+            pkg,
+            output,
+            icons,
+            new IconCache(LOGGER, iconCache),
+            lang,
+            alwaysQualifiedNames);
+    ag.prefetchIcons(lang.getAssets().values());
     for (Asset asset : lang.getAssets().values()) {
+      var event = Profiler.assetEvent("securicad", asset.getName());
       ag.generate(asset);
+      event.commit();
     }
 
     createAutoLangLink();
     createMetaData();
     createAttacker();
+    createGraphCache();
 
     if (mock) {
       createMock();
@@ -212,9 +237,12 @@ public class Generator extends JavaGenerator {
 
     for (Link link : lang.getLinks()) {
       LOGGER.debug(
-          String.format(
-              "Adding link '%s' <- %s -> '%s'",
-              link.getLeftField().getName(), link.getName(), link.getRightField().getName()));
+          () ->
+              String.format(
+                  "Adding link '%s' <- %s -> '%s'",
+                  link.getLeftField().getName(),
+                  link.getName(),
+                  link.getRightField().getName()));
       builder.addEnumConstant(
           String.format("%s_%s", link.getLeftField().getName(), link.getRightField().getName()),
           TypeSpec.anonymousClassBuilder("$S", link.getName()).build());
@@ -265,7 +293,8 @@ public class Generator extends JavaGenerator {
     CodeBlock.Builder codeBlock = CodeBlock.builder();
     codeBlock.addStatement("DATA = new $T<>()", hashMap);
     for (Entry<String, String> entry : lang.getDefines().entrySet()) {
-      LOGGER.debug(String.format("Adding define '%s' = '%s'", entry.getKey(), entry.getValue()));
+      LOGGER.debug(
+          () -> String.format("Adding define '%s' = '%s'", entry.getKey(), entry.getValue()));
       codeBlock.addStatement("DATA.put($S, $S)", entry.getKey(), entry.getValue());
     }
     builder.addStaticBlock(codeBlock.build());
@@ -336,16 +365,23 @@ public class Generator extends JavaGenerator {
   }
 
   private void createAttacker() throws IOException, CompilerException {
-    LOGGER.debug("Creating 'Attacker.java'");
-    String resourcePath = "/securicad/Attacker.java";
+    createFromResource("Attacker.java");
+  }
+
+  private void createGraphCache() throws IOException, CompilerException {
+    createFromResource("GraphCache.java");
+  }
+
+  private void createFromResource(String name) throws IOException, CompilerException {
+    LOGGER.debug(String.format("Creating '%s'", name));
+    String resourcePath = String.format("/securicad/%s", name);
     InputStream is = Generator.class.getResourceAsStream(resourcePath);
     if (is == null) {
       throw error(String.format("Couldn't get resource %s", resourcePath));
     }
     String code = String.format("package %s;%n%n%s", this.pkg, new String(is.readAllBytes()));
     Files.writeString(
-        new File(new File(output, this.pkg.replaceAll("\\.", "/")), "Attacker.java").toPath(),
-        code);
+        new File(new File(output, this.pkg.replaceAll("\\.", "/")), name).toPath(), code);
   }
 
   private void createMock() throws IOException, CompilerException {
@@ -451,6 +487,21 @@ public class Generator extends JavaGenerator {
     return metaInfoMap;
   }
 
+  /** Returns the generated class holding the epoch of the graph caches of an asset. */
+  static ClassName getGraphCache(String pkg) {
+    return ClassName.get(pkg, "GraphCache");
+  }
+
+  /** Returns the name of the field of root assets holding the epoch of their graph caches. */
+  static String getGraphCacheName() {
+    return "_graphCache";
+  }
+
+  /** Returns the name of the field holding the epoch that {@code cacheName} was computed in. */
+  static String getEpochName(String cacheName) {
+    return String.format("%sEpoch", cacheName);
+  }
+
   static void createMetaInfoAnnotations(
       TypeSpec.Builder parentBuilder, Map<String, String> metaInfoMap) {
     var metaInfo = ClassName.get("com.foreseeti.corelib.FAnnotations", "MetaInfo");
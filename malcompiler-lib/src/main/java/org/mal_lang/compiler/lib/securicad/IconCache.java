@@ -0,0 +1,183 @@
+/*
+ * Copyright 2019-2022 Foreseeti AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mal_lang.compiler.lib.securicad;
+
+import com.kitfox.svg.SVGUniverse;
+import com.kitfox.svg.app.beans.SVGIcon;
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.imageio.ImageIO;
+import org.mal_lang.compiler.lib.MalLogger;
+
+/**
+ * Renders SVG icons to PNG, and keeps the renderings in a directory so that later runs can reuse
+ * them.
+ *
+ * <p>Renderings are addressed by a SHA-256 hash of the SVG contents and the render parameters, so
+ * an edited icon or a changed renderer never hits a stale entry, and identical icons are rendered
+ * once. Entries are written atomically, so several generators may share a directory.
+ */
+class IconCache {
+  private static final int SIZE = 48;
+  // Part of every key, change it when the rendering below changes
+  private static final String PARAMETERS =
+      String.format("svgSalamander;%dx%d;bestfit;bicubic;antialias;png", SIZE, SIZE);
+
+  private final MalLogger LOGGER;
+  private final File dir;
+  private final Map<String, byte[]> pngs = new ConcurrentHashMap<>();
+
+  /**
+   * Constructs an IconCache.
+   *
+   * @param LOGGER logger of the generator
+   * @param dir directory of renderings from earlier runs, or {@code null} to only cache in memory
+   */
+  IconCache(MalLogger LOGGER, File dir) {
+    this.LOGGER = LOGGER;
+    this.dir = dir;
+  }
+
+  /**
+   * Renders all {@code svgs} that are not cached yet, on {@code threads} threads. Failures are
+   * ignored here, they are reported when the icon is requested with {@link #getPNG(File)}.
+   */
+  void prefetch(Collection<File> svgs, int threads) {
+    var files = new LinkedHashSet<>(svgs);
+    if (files.isEmpty()) {
+      return;
+    }
+    var executor = Executors.newFixedThreadPool(Math.min(threads, files.size()));
+    try {
+      var futures = new ArrayList<Future<byte[]>>();
+      for (var file : files) {
+        futures.add(executor.submit(() -> getPNG(file)));
+      }
+      for (var future : futures) {
+        try {
+          future.get();
+        } catch (ExecutionException e) {
+          // Reported by getPNG
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Returns {@code svg} rendered as a 48x48 PNG.
+   *
+   * @param svg the SVG icon
+   * @return the PNG bytes
+   * @throws IOException if {@code svg} cannot be read or rendered
+   */
+  byte[] getPNG(File svg) throws IOException {
+    var key = getKey(Files.readAllBytes(svg.toPath()));
+    var png = pngs.get(key);
+    if (png != null) {
+      return png;
+    }
+    var entry = dir == null ? null : new File(dir, String.format("%s.png", key));
+    if (entry != null && entry.isFile()) {
+      png = Files.readAllBytes(entry.toPath());
+      LOGGER.debug(() -> String.format("Using cached rendering of '%s'", svg.getName()));
+    } else {
+      png = render(svg);
+      if (entry != null) {
+        store(entry, png);
+      }
+    }
+    pngs.put(key, png);
+    return png;
+  }
+
+  private static String getKey(byte[] svgBytes) {
+    try {
+      var digest = MessageDigest.getInstance("SHA-256");
+      digest.update(PARAMETERS.getBytes(StandardCharsets.UTF_8));
+      digest.update((byte) 0);
+      digest.update(svgBytes);
+      var sb = new StringBuilder();
+      for (var b : digest.digest()) {
+        sb.append(String.format("%02x", b));
+      }
+      return sb.toString();
+    } catch (NoSuchAlgorithmException e) {
+      // Every Java platform is required to support SHA-256
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static byte[] render(File svg) throws IOException {
+    // The default universe of svgSalamander is shared and not thread safe
+    var icon = new SVGIcon();
+    icon.setSvgUniverse(new SVGUniverse());
+    icon.setPreferredSize(new Dimension(SIZE, SIZE));
+    icon.setAutosize(SVGIcon.AUTOSIZE_BESTFIT);
+    icon.setInterpolation(SVGIcon.INTERP_BICUBIC);
+    icon.setAntiAlias(true);
+    icon.setSvgURI(svg.toURI());
+
+    BufferedImage img = (BufferedImage) icon.getImage();
+    if (img == null) {
+      throw new IOException(String.format("Could not render %s", svg.getName()));
+    }
+    var out = new ByteArrayOutputStream();
+    ImageIO.write(img, "png", out);
+    return out.toByteArray();
+  }
+
+  private void store(File entry, byte[] png) {
+    try {
+      Files.createDirectories(dir.toPath());
+      var tmp = Files.createTempFile(dir.toPath(), ".icon", ".tmp");
+      try {
+        Files.write(tmp, png);
+        try {
+          Files.move(tmp, entry.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+          Files.move(tmp, entry.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+      } finally {
+        Files.deleteIfExists(tmp);
+      }
+    } catch (IOException e) {
+      // The rendering is still used, it is only not kept for later runs
+      LOGGER.debug(
+          () -> String.format("Failed to cache rendering %s: %s", entry.getName(), e.getMessage()));
+    }
+  }
+}
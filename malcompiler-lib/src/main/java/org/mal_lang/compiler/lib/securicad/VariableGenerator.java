@@ -50,8 +50,11 @@ public class VariableGenerator extends JavaGenerator {
     builder.returns(targetSet);
 
     parentBuilder.addField(targetSet, setName, Modifier.PRIVATE);
+    String epochName = Generator.getEpochName(setName);
+    parentBuilder.addField(TypeName.LONG, epochName, Modifier.PRIVATE);
 
-    builder.beginControlFlow("if ($N == null)", setName);
+    builder.addStatement("long epoch = $N.epoch()", Generator.getGraphCacheName());
+    builder.beginControlFlow("if ($N != epoch)", epochName);
     builder.addStatement("$T tmpCache = new $T<>()", targetSet, hashSet);
     AutoFlow varFlow = new AutoFlow();
     AutoFlow end = this.exprGen.generateExpr(varFlow, expr, asset);
@@ -59,6 +62,7 @@ public class VariableGenerator extends JavaGenerator {
     varFlow.build(builder);
     // copyOf returns an immutable set
     builder.addStatement("$N = $T.copyOf(tmpCache)", setName, set);
+    builder.addStatement("$N = epoch", epochName);
     builder.endControlFlow();
 
     builder.addStatement("return $N", setName);
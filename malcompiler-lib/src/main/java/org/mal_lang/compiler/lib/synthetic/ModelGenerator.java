@@ -0,0 +1,516 @@
+/*
+ * Copyright 2019-2022 Foreseeti AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mal_lang.compiler.lib.synthetic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import org.mal_lang.compiler.lib.CompilerException;
+import org.mal_lang.compiler.lib.Lang;
+
+/**
+ * ModelGenerator creates random instance models of a compiled language, for benchmarks of attack
+ * simulations.
+ *
+ * <p>Instances are added one at a time until the model holds at least the requested number of
+ * attack steps. Every new instance is connected to earlier instances chosen by the {@link
+ * Topology}, and its type is decided by a field of the first of them that can take another
+ * association. Associations never exceed the maximum multiplicity of either field. When the model
+ * is large enough, instances whose fields are below their minimum multiplicity are associated with
+ * existing instances, or with new ones when no existing instance can take the association. Since
+ * minimums can require endless chains of new instances, at most as many instances as the model
+ * already has are added this way.
+ *
+ * <p>The same language and options, including the seed, always produce the same model. The model
+ * only holds type names, instance names and field names, and is turned into objects of the
+ * generated reference classes by {@link Model#build}, e.g. {@code model.build(AssetFactory::create,
+ * Asset::link)}.
+ */
+public class ModelGenerator {
+  public enum Topology {
+    /** Every instance is associated with one earlier instance, its parent. */
+    TREE,
+    /** Instances are associated with earlier instances chosen by preferential attachment. */
+    SCALE_FREE,
+    /** Instances are laid out row by row and associated with their left and upper neighbours. */
+    GRID
+  }
+
+  public static class Options {
+    /** Seed of the random generator. */
+    public long seed = 0;
+
+    /** Minimum number of attack steps of the model. */
+    public long attackSteps = 1000;
+
+    /** Shape of the model. */
+    public Topology topology = Topology.SCALE_FREE;
+
+    /**
+     * Number of children of every instance in a tree, or number of earlier instances a new
+     * instance attaches to in a scale-free model. Unused by grids.
+     */
+    public int degree = 2;
+  }
+
+  /** Creates an instance of a type. */
+  @FunctionalInterface
+  public interface Factory<T> {
+    T create(String type, String name);
+  }
+
+  /** Associates two instances through a field of the first one, in both directions. */
+  @FunctionalInterface
+  public interface Linker<T> {
+    void link(T asset, String field, T other);
+  }
+
+  /** A generated instance model. */
+  public static class Model {
+    private final String[] types;
+    private final int[] from;
+    private final String[] fields;
+    private final int[] to;
+    private final long attackSteps;
+
+    private Model(String[] types, int[] from, String[] fields, int[] to, long attackSteps) {
+      this.types = types;
+      this.from = from;
+      this.fields = fields;
+      this.to = to;
+      this.attackSteps = attackSteps;
+    }
+
+    public int getInstanceCount() {
+      return types.length;
+    }
+
+    public String getType(int instance) {
+      return types[instance];
+    }
+
+    public String getName(int instance) {
+      return String.format("%s_%d", types[instance], instance);
+    }
+
+    public int getAssociationCount() {
+      return from.length;
+    }
+
+    public int getFrom(int association) {
+      return from[association];
+    }
+
+    public String getField(int association) {
+      return fields[association];
+    }
+
+    public int getTo(int association) {
+      return to[association];
+    }
+
+    /** Returns the total number of attack steps of all instances. */
+    public long getAttackSteps() {
+      return attackSteps;
+    }
+
+    /**
+     * Creates all instances and associations of the model.
+     *
+     * @param factory creates an instance from its type and name
+     * @param linker associates two instances
+     * @return the instances, indexed like the model
+     */
+    public <T> List<T> build(Factory<T> factory, Linker<T> linker) {
+      var instances = new ArrayList<T>(types.length);
+      for (int i = 0; i < types.length; i++) {
+        instances.add(factory.create(types[i], getName(i)));
+      }
+      for (int i = 0; i < from.length; i++) {
+        linker.link(instances.get(from[i]), fields[i], instances.get(to[i]));
+      }
+      return instances;
+    }
+  }
+
+  private static class Type {
+    final Lang.Asset asset;
+    // Own and inherited fields
+    final List<Lang.Field> fields = new ArrayList<>();
+    final Set<Lang.Asset> ancestors = new HashSet<>();
+    // Concrete types that fields targeting this type can hold
+    final List<Type> subtypes = new ArrayList<>();
+    final List<Integer> instances = new ArrayList<>();
+    // Per field, the first instance that may still take an association through it
+    final Map<Lang.Field, Integer> cursors = new HashMap<>();
+    int attackSteps;
+
+    Type(Lang.Asset asset) {
+      this.asset = asset;
+    }
+
+    int indexOf(Lang.Field field) {
+      return fields.indexOf(field);
+    }
+  }
+
+  // Number of random earlier instances tried when the topology offers no instance with capacity
+  private static final int FALLBACK_ATTEMPTS = 8;
+  // Number of random existing instances tried for a field below its minimum multiplicity
+  private static final int MINIMUM_ATTEMPTS = 16;
+
+  private final Options opts;
+  private final Random random;
+  private final List<Type> types = new ArrayList<>();
+  private final List<Type> concrete = new ArrayList<>();
+  private final Map<Lang.Asset, Type> typeOf = new HashMap<>();
+
+  private final List<Type> instanceTypes = new ArrayList<>();
+  private final List<int[]> counts = new ArrayList<>();
+  private final Map<Lang.Link, Integer> linkIds = new HashMap<>();
+  // Keys of the associations made so far, so that no association is made twice
+  private final Set<Long> links = new HashSet<>();
+  private int[] from = new int[16];
+  private Lang.Field[] fields = new Lang.Field[16];
+  private int[] to = new int[16];
+  private int associations = 0;
+  // Both ends of every association, sampling it is sampling instances by degree
+  private int[] endpoints = new int[32];
+  private long attackSteps = 0;
+  private int gridWidth = 1;
+
+  private ModelGenerator(Lang lang, Options opts) {
+    this.opts = opts;
+    this.random = new Random(opts.seed);
+    var assets = lang.getAssets();
+    for (var asset : assets.values()) {
+      var type = new Type(asset);
+      types.add(type);
+      typeOf.put(asset, type);
+    }
+    for (var type : types) {
+      var steps = new HashSet<String>();
+      for (var asset = type.asset; asset != null; asset = asset.getSuperAsset()) {
+        type.ancestors.add(asset);
+        type.fields.addAll(asset.getFields().values());
+        for (var field : asset.getFields().values()) {
+          linkIds.putIfAbsent(field.getLink(), linkIds.size());
+        }
+        steps.addAll(asset.getAttackSteps().keySet());
+      }
+      type.attackSteps = steps.size();
+      if (!type.asset.isAbstract()) {
+        concrete.add(type);
+        for (var ancestor : type.ancestors) {
+          typeOf.get(ancestor).subtypes.add(type);
+        }
+      }
+    }
+  }
+
+  /**
+   * Generates an instance model of a language.
+   *
+   * @param lang the language
+   * @param opts the options
+   * @return the model
+   * @throws CompilerException if the options are invalid, or the language has no instantiable
+   *     asset with attack steps
+   */
+  public static Model generate(Lang lang, Options opts) throws CompilerException {
+    validate(opts);
+    var generator = new ModelGenerator(lang, opts);
+    if (generator.concrete.stream().allMatch(type -> type.attackSteps == 0)) {
+      throw new CompilerException("The language has no concrete asset with attack steps");
+    }
+    generator.grow();
+    generator.satisfyMinimums();
+    return generator.toModel();
+  }
+
+  private static void validate(Options opts) throws CompilerException {
+    if (opts.attackSteps < 1) {
+      throw new CompilerException("Option 'attackSteps' must be a positive integer");
+    }
+    if (opts.degree < 1) {
+      throw new CompilerException("Option 'degree' must be a positive integer");
+    }
+    if (opts.topology == null) {
+      throw new CompilerException("Option 'topology' must be set");
+    }
+  }
+
+  private void grow() {
+    long stepsPerInstance = 0;
+    for (var type : concrete) {
+      stepsPerInstance += type.attackSteps;
+    }
+    double averageSteps = Math.max(1.0, (double) stepsPerInstance / concrete.size());
+    gridWidth = Math.max(1, (int) Math.round(Math.sqrt(opts.attackSteps / averageSteps)));
+
+    while (attackSteps < opts.attackSteps) {
+      int[] neighbours = neighbours(instanceTypes.size());
+      int instance = -1;
+      for (int neighbour : neighbours) {
+        if (instance < 0) {
+          instance = createNeighbour(neighbour);
+        } else {
+          linkAny(instance, neighbour);
+        }
+      }
+      for (int i = 0; instance < 0 && i < FALLBACK_ATTEMPTS && !instanceTypes.isEmpty(); i++) {
+        instance = createNeighbour(random.nextInt(instanceTypes.size()));
+      }
+      if (instance < 0) {
+        instance = createInstance(concrete.get(random.nextInt(concrete.size())));
+        if (opts.topology != Topology.TREE) {
+          for (int neighbour : neighbours) {
+            linkAny(instance, neighbour);
+          }
+        }
+      }
+    }
+  }
+
+  private int[] neighbours(int instance) {
+    if (instance == 0) {
+      return new int[0];
+    }
+    switch (opts.topology) {
+      case TREE:
+        return new int[] {(instance - 1) / opts.degree};
+      case GRID:
+        if (instance % gridWidth == 0) {
+          return new int[] {instance - gridWidth};
+        } else if (instance < gridWidth) {
+          return new int[] {instance - 1};
+        } else {
+          return new int[] {instance - 1, instance - gridWidth};
+        }
+      case SCALE_FREE:
+      default:
+        var picked = new int[Math.min(opts.degree, instance)];
+        int count = 0;
+        for (int i = 0; count < picked.length && i < 2 * picked.length; i++) {
+          int candidate =
+              associations == 0
+                  ? random.nextInt(instance)
+                  : endpoints[random.nextInt(2 * associations)];
+          if (!contains(picked, count, candidate)) {
+            picked[count++] = candidate;
+          }
+        }
+        return Arrays.copyOf(picked, count);
+    }
+  }
+
+  private static boolean contains(int[] values, int count, int value) {
+    for (int i = 0; i < count; i++) {
+      if (values[i] == value) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Creates an instance through a random field of {@code neighbour} that can take another
+   * association.
+   *
+   * @return the new instance, or -1 if no field of {@code neighbour} has capacity
+   */
+  private int createNeighbour(int neighbour) {
+    var type = instanceTypes.get(neighbour);
+    var count = counts.get(neighbour);
+    var open = new ArrayList<Lang.Field>();
+    for (int i = 0; i < type.fields.size(); i++) {
+      var field = type.fields.get(i);
+      if (count[i] < field.getMax() && !subtypes(field).isEmpty()) {
+        open.add(field);
+      }
+    }
+    if (open.isEmpty()) {
+      return -1;
+    }
+    var field = open.get(random.nextInt(open.size()));
+    var targets = subtypes(field);
+    int instance = createInstance(targets.get(random.nextInt(targets.size())));
+    link(neighbour, field, instance);
+    return instance;
+  }
+
+  private List<Type> subtypes(Lang.Field field) {
+    return typeOf.get(field.getTarget().getAsset()).subtypes;
+  }
+
+  private int createInstance(Type type) {
+    int instance = instanceTypes.size();
+    instanceTypes.add(type);
+    counts.add(new int[type.fields.size()]);
+    type.instances.add(instance);
+    attackSteps += type.attackSteps;
+    return instance;
+  }
+
+  /** Associates two instances through a random field that fits, if there is one. */
+  private boolean linkAny(int a, int b) {
+    return linkAnyFrom(a, b) || linkAnyFrom(b, a);
+  }
+
+  private boolean linkAnyFrom(int a, int b) {
+    var type = instanceTypes.get(a);
+    int size = type.fields.size();
+    if (size == 0) {
+      return false;
+    }
+    int start = random.nextInt(size);
+    for (int i = 0; i < size; i++) {
+      var field = type.fields.get((start + i) % size);
+      if (canLink(a, field, b)) {
+        link(a, field, b);
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean canLink(int a, Lang.Field field, int b) {
+    if (a == b || links.contains(key(a, field, b))) {
+      return false;
+    }
+    var target = field.getTarget();
+    var bType = instanceTypes.get(b);
+    if (!bType.ancestors.contains(target.getAsset())) {
+      return false;
+    }
+    var aType = instanceTypes.get(a);
+    return counts.get(a)[aType.indexOf(field)] < field.getMax()
+        && counts.get(b)[bType.indexOf(target)] < target.getMax();
+  }
+
+  private void link(int a, Lang.Field field, int b) {
+    counts.get(a)[instanceTypes.get(a).indexOf(field)]++;
+    counts.get(b)[instanceTypes.get(b).indexOf(field.getTarget())]++;
+    links.add(key(a, field, b));
+    if (associations == from.length) {
+      int capacity = 2 * associations;
+      from = Arrays.copyOf(from, capacity);
+      fields = Arrays.copyOf(fields, capacity);
+      to = Arrays.copyOf(to, capacity);
+      endpoints = Arrays.copyOf(endpoints, 2 * capacity);
+    }
+    from[associations] = a;
+    fields[associations] = field;
+    to[associations] = b;
+    endpoints[2 * associations] = a;
+    endpoints[2 * associations + 1] = b;
+    associations++;
+  }
+
+  /**
+   * Returns the key of an association. Keys of different associations may collide, which only
+   * means that one of them is not made.
+   */
+  private long key(int a, Lang.Field field, int b) {
+    long pair = ((long) Math.min(a, b) << 32) | Math.max(a, b);
+    return 31 * pair + linkIds.get(field.getLink());
+  }
+
+  private void satisfyMinimums() {
+    // Chains of required associations can grow without end, so at most this many instances are
+    // added, after which the remaining minimums are left unsatisfied
+    int budget = instanceTypes.size();
+    // Instances created here are checked too, when the loop reaches them
+    for (int instance = 0; instance < instanceTypes.size(); instance++) {
+      var type = instanceTypes.get(instance);
+      for (int i = 0; i < type.fields.size(); i++) {
+        var field = type.fields.get(i);
+        var targets = subtypes(field);
+        if (targets.isEmpty()) {
+          continue;
+        }
+        while (counts.get(instance)[i] < field.getMin()) {
+          if (!linkExisting(instance, field, targets)) {
+            if (budget == 0) {
+              return;
+            }
+            budget--;
+            link(instance, field, createInstance(targets.get(random.nextInt(targets.size()))));
+          }
+        }
+      }
+    }
+  }
+
+  private boolean linkExisting(int instance, Lang.Field field, List<Type> targets) {
+    for (int i = 0; i < MINIMUM_ATTEMPTS; i++) {
+      var target = targets.get(random.nextInt(targets.size()));
+      if (target.instances.isEmpty()) {
+        continue;
+      }
+      int other = target.instances.get(random.nextInt(target.instances.size()));
+      if (canLink(instance, field, other)) {
+        link(instance, field, other);
+        return true;
+      }
+    }
+    // Random picks fail when few instances have capacity left, so look for them in order
+    var reverse = field.getTarget();
+    int start = random.nextInt(targets.size());
+    for (int i = 0; i < targets.size(); i++) {
+      var target = targets.get((start + i) % targets.size());
+      int index = target.indexOf(reverse);
+      int cursor = target.cursors.getOrDefault(reverse, 0);
+      // Full instances stay full, skip them for good
+      while (cursor < target.instances.size()
+          && counts.get(target.instances.get(cursor))[index] >= reverse.getMax()) {
+        cursor++;
+      }
+      target.cursors.put(reverse, cursor);
+      int end = Math.min(target.instances.size(), cursor + MINIMUM_ATTEMPTS);
+      for (int j = cursor; j < end; j++) {
+        int other = target.instances.get(j);
+        if (canLink(instance, field, other)) {
+          link(instance, field, other);
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private Model toModel() {
+    var typeNames = new String[instanceTypes.size()];
+    for (int i = 0; i < typeNames.length; i++) {
+      typeNames[i] = instanceTypes.get(i).asset.getName();
+    }
+    var fieldNames = new String[associations];
+    for (int i = 0; i < associations; i++) {
+      fieldNames[i] = fields[i].getName();
+    }
+    return new Model(
+        typeNames,
+        Arrays.copyOf(from, associations),
+        fieldNames,
+        Arrays.copyOf(to, associations),
+        attackSteps);
+  }
+}
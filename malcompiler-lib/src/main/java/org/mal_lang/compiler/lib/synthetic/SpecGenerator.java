@@ -0,0 +1,496 @@
+/*
+ * Copyright 2019-2022 Foreseeti AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mal_lang.compiler.lib.synthetic;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import org.mal_lang.compiler.lib.CompilerException;
+
+/**
+ * SpecGenerator writes random, semantically valid MAL specifications of any size.
+ *
+ * <p>The shape of the specification is controlled by {@link Options}. The same options, including
+ * the seed, always produce exactly the same files. Assets are named {@code Asset<i>}, attack steps
+ * {@code step<i>_<j>}, variables {@code var<i>_<j>}, and association {@code k} gives its left asset
+ * the field {@code out<k>} and its right asset the field {@code in<k>}, so that names never clash
+ * through inheritance.
+ */
+public class SpecGenerator {
+  public static class Options {
+    /** Seed of the random generator. */
+    public long seed = 0;
+
+    /** Number of categories, assets are spread evenly over them. */
+    public int categories = 1;
+
+    /** Number of assets. */
+    public int assets = 10;
+
+    /** Maximum length of a chain of extending assets, 0 disables inheritance. */
+    public int inheritanceDepth = 2;
+
+    /** Number of associations per asset. */
+    public int associations = 2;
+
+    /** Number of attack steps per asset. */
+    public int steps = 4;
+
+    /** Maximum number of reaches of every attack step. */
+    public int fanOut = 2;
+
+    /** Probability that a field in an expression is followed transitively. */
+    public double transitiveDensity = 0.1;
+
+    /** Probability that a field in an expression is combined with another by a set operator. */
+    public double setOperatorDensity = 0.1;
+
+    /** Number of variables per asset. */
+    public int variables = 1;
+
+    /** Number of included files, categories and associations are spread evenly over them. */
+    public int includes = 0;
+  }
+
+  // Probability that an asset extends another asset when inheritance is enabled
+  private static final double EXTENDS_PROBABILITY = 0.5;
+  private static final int MAX_PATH_LENGTH = 3;
+  private static final String[] MULTIPLICITIES = {"0..1", "1", "*", "1..*"};
+  private static final String[] SET_OPERATORS = {"\\/", "/\\", "-"};
+
+  private static class Field {
+    final String name;
+    final int target;
+
+    Field(String name, int target) {
+      this.name = name;
+      this.target = target;
+    }
+  }
+
+  private static class Step {
+    final String name;
+    final String type;
+
+    Step(String name, String type) {
+      this.name = name;
+      this.type = type;
+    }
+  }
+
+  // An asset expression and the asset it evaluates to
+  private static class Path {
+    final String expr;
+    final int target;
+
+    Path(String expr, int target) {
+      this.expr = expr;
+      this.target = target;
+    }
+  }
+
+  private final Options opts;
+  private final Random random;
+  private final int[] parent;
+  private final int[] depth;
+  private final List<List<Field>> fields = new ArrayList<>();
+  private final List<List<Step>> steps = new ArrayList<>();
+  private final List<List<Path>> variables = new ArrayList<>();
+
+  private SpecGenerator(Options opts) {
+    this.opts = opts;
+    this.random = new Random(opts.seed);
+    this.parent = new int[opts.assets];
+    this.depth = new int[opts.assets];
+  }
+
+  /**
+   * Generates a specification and writes its files to {@code dir}. The main file is named
+   * "synthetic.mal" and includes the files "part&lt;n&gt;.mal".
+   *
+   * @param opts shape of the specification
+   * @param dir directory to write the files to, it is created if needed
+   * @return the written files, starting with the main file
+   * @throws IOException if a file cannot be written
+   * @throws CompilerException if the options are invalid
+   */
+  public static List<File> generate(Options opts, File dir) throws IOException, CompilerException {
+    var sources = generate(opts);
+    Files.createDirectories(dir.toPath());
+    var files = new ArrayList<File>();
+    for (int i = 0; i < sources.size(); i++) {
+      var name = i == 0 ? "synthetic.mal" : String.format(Locale.ROOT, "part%d.mal", i);
+      var file = new File(dir, name);
+      Files.writeString(file.toPath(), sources.get(i), StandardCharsets.UTF_8);
+      files.add(file);
+    }
+    return files;
+  }
+
+  /**
+   * Generates a specification.
+   *
+   * @param opts shape of the specification
+   * @return the source of the main file followed by the sources of the included files
+   * @throws CompilerException if the options are invalid
+   */
+  public static List<String> generate(Options opts) throws CompilerException {
+    validate(opts);
+    var generator = new SpecGenerator(opts);
+    generator.createAssets();
+    return generator.write();
+  }
+
+  private static void validate(Options opts) throws CompilerException {
+    if (opts.assets < 1) {
+      throw new CompilerException("Option 'assets' must be a positive integer");
+    }
+    if (opts.categories < 1 || opts.categories > opts.assets) {
+      throw new CompilerException(
+          "Option 'categories' must be a positive integer not greater than 'assets'");
+    }
+    if (opts.includes < 0 || opts.includes > opts.categories) {
+      throw new CompilerException(
+          "Option 'includes' must be a non-negative integer not greater than 'categories'");
+    }
+    if (opts.inheritanceDepth < 0
+        || opts.associations < 0
+        || opts.steps < 0
+        || opts.fanOut < 0
+        || opts.variables < 0) {
+      throw new CompilerException(
+          "Options 'inheritanceDepth', 'associations', 'steps', 'fanOut' and 'variables' must"
+              + " be non-negative integers");
+    }
+    if (!isProbability(opts.transitiveDensity) || !isProbability(opts.setOperatorDensity)) {
+      throw new CompilerException(
+          "Options 'transitiveDensity' and 'setOperatorDensity' must be between 0 and 1");
+    }
+  }
+
+  private static boolean isProbability(double p) {
+    return p >= 0 && p <= 1;
+  }
+
+  private void createAssets() {
+    // Inheritance, an asset may only extend an asset created before it
+    for (int i = 0; i < opts.assets; i++) {
+      parent[i] = -1;
+      if (i > 0 && opts.inheritanceDepth > 0 && random.nextDouble() < EXTENDS_PROBABILITY) {
+        int p = random.nextInt(i);
+        while (depth[p] >= opts.inheritanceDepth) {
+          p = parent[p];
+        }
+        parent[i] = p;
+        depth[i] = depth[p] + 1;
+      }
+      fields.add(new ArrayList<>());
+      steps.add(new ArrayList<>());
+      variables.add(new ArrayList<>());
+    }
+    // Fields, self-associations make transitive expressions possible
+    for (int i = 0; i < opts.assets; i++) {
+      for (int j = 0; j < opts.associations; j++) {
+        int k = i * opts.associations + j;
+        int target =
+            random.nextDouble() < opts.transitiveDensity ? i : random.nextInt(opts.assets);
+        fields.get(i).add(new Field(String.format(Locale.ROOT, "out%d", k), target));
+        fields.get(target).add(new Field(String.format(Locale.ROOT, "in%d", k), i));
+      }
+    }
+    // Attack steps, declared before any expression refers to them
+    for (int i = 0; i < opts.assets; i++) {
+      boolean hasFields = !getFields(i).isEmpty();
+      for (int j = 0; j < opts.steps; j++) {
+        var type = randomStepType();
+        if (!hasFields && (type.equals("E") || type.equals("!E"))) {
+          // Existence steps require an asset expression
+          type = "|";
+        }
+        steps.get(i).add(new Step(String.format(Locale.ROOT, "step%d_%d", i, j), type));
+      }
+    }
+  }
+
+  private String randomStepType() {
+    int r = random.nextInt(20);
+    if (r < 10) {
+      return "|";
+    } else if (r < 14) {
+      return "&";
+    } else if (r < 17) {
+      return "#";
+    } else if (r < 19) {
+      return "E";
+    } else {
+      return "!E";
+    }
+  }
+
+  private List<String> write() {
+    int files = opts.includes + 1;
+    var sources = new ArrayList<StringBuilder>();
+    for (int i = 0; i < files; i++) {
+      sources.add(new StringBuilder());
+    }
+    var main = sources.get(0);
+    main.append(String.format("#id: \"org.mal_lang.synthetic\"%n"));
+    main.append(String.format("#version: \"1.0.0\"%n"));
+    for (int i = 1; i < files; i++) {
+      main.append(String.format(Locale.ROOT, "include \"part%d.mal\"%n", i));
+    }
+
+    // Asset i belongs to category i % categories, category c is written to file c % files
+    for (int c = 0; c < opts.categories; c++) {
+      var sb = sources.get(c % files);
+      sb.append(String.format(Locale.ROOT, "%ncategory Category%d {%n", c));
+      for (int i = c; i < opts.assets; i += opts.categories) {
+        writeAsset(sb, i);
+      }
+      sb.append(String.format("}%n"));
+    }
+
+    // Associations are written to the file of the category of their left asset
+    var associations = new ArrayList<StringBuilder>();
+    for (int i = 0; i < files; i++) {
+      associations.add(new StringBuilder());
+    }
+    for (int i = 0; i < opts.assets; i++) {
+      var sb = associations.get((i % opts.categories) % files);
+      for (var field : fields.get(i)) {
+        if (!field.name.startsWith("out")) {
+          continue;
+        }
+        var k = field.name.substring("out".length());
+        sb.append(
+            String.format(
+                Locale.ROOT,
+                "  Asset%d [in%s] %s <-- L%s --> %s [out%s] Asset%d%n",
+                i,
+                k,
+                randomMultiplicity(),
+                k,
+                randomMultiplicity(),
+                k,
+                field.target));
+      }
+    }
+    var result = new ArrayList<String>();
+    for (int i = 0; i < files; i++) {
+      var sb = sources.get(i);
+      if (associations.get(i).length() > 0) {
+        sb.append(String.format("%nassociations {%n"));
+        sb.append(associations.get(i));
+        sb.append(String.format("}%n"));
+      }
+      result.add(sb.toString());
+    }
+    return result;
+  }
+
+  private String randomMultiplicity() {
+    return MULTIPLICITIES[random.nextInt(MULTIPLICITIES.length)];
+  }
+
+  private void writeAsset(StringBuilder sb, int asset) {
+    sb.append(String.format(Locale.ROOT, "  asset Asset%d", asset));
+    if (parent[asset] >= 0) {
+      sb.append(String.format(Locale.ROOT, " extends Asset%d", parent[asset]));
+    }
+    sb.append(String.format(" {%n"));
+    for (int j = 0; j < opts.variables; j++) {
+      var path = randomPath(asset, null, 1 + random.nextInt(2));
+      if (path != null) {
+        var name = String.format(Locale.ROOT, "var%d_%d", asset, j);
+        variables.get(asset).add(new Path(String.format("%s()", name), path.target));
+        sb.append(String.format("    let %s = %s%n", name, path.expr));
+      }
+    }
+    // Every variable is used by the first reach of one step
+    int nextVariable = 0;
+    for (var step : steps.get(asset)) {
+      sb.append(String.format("    %s %s", step.type, step.name));
+      writeTtc(sb, step.type);
+      sb.append(String.format("%n"));
+      if (isExistence(step)) {
+        var path = randomPath(asset, null, 1 + random.nextInt(MAX_PATH_LENGTH));
+        sb.append(String.format("      <- %s%n", path.expr));
+      }
+      var reaches = new ArrayList<String>();
+      int fanOut = opts.fanOut == 0 ? 0 : 1 + random.nextInt(opts.fanOut);
+      for (int r = 0; r < fanOut; r++) {
+        Path start = null;
+        if (r == 0 && nextVariable < variables.get(asset).size()) {
+          start = variables.get(asset).get(nextVariable++);
+        }
+        var reach = randomReach(asset, step, start);
+        if (reach != null) {
+          reaches.add(reach);
+        }
+      }
+      if (!reaches.isEmpty()) {
+        var separator = String.format(",%n         ");
+        sb.append(String.format("      -> %s%n", String.join(separator, reaches)));
+      }
+    }
+    sb.append(String.format("  }%n"));
+  }
+
+  private void writeTtc(StringBuilder sb, String type) {
+    switch (type) {
+      case "|":
+      case "&":
+        if (random.nextBoolean()) {
+          sb.append(String.format(Locale.ROOT, " [Exponential(%.2f)]", 0.1 + random.nextDouble()));
+        }
+        break;
+      case "#":
+        if (random.nextBoolean()) {
+          sb.append(String.format(Locale.ROOT, " [Bernoulli(%.2f)]", random.nextDouble()));
+        }
+        break;
+      default:
+        // Existence steps have no TTC
+        break;
+    }
+  }
+
+  private static boolean isExistence(Step step) {
+    return step.type.equals("E") || step.type.equals("!E");
+  }
+
+  /**
+   * Returns a reach from attack step {@code from} of {@code asset}, or null if no attack step is
+   * reachable. The reach starts at {@code start} if it is not null. Existence steps are never
+   * reached.
+   */
+  private String randomReach(int asset, Step from, Path start) {
+    int length = random.nextInt(MAX_PATH_LENGTH + 1);
+    Path path = length == 0 && start == null ? null : randomPath(asset, start, length);
+    int target = path == null ? asset : path.target;
+    var candidates = new ArrayList<Step>();
+    for (var step : getSteps(target)) {
+      if (!isExistence(step) && (path != null || step != from)) {
+        candidates.add(step);
+      }
+    }
+    if (candidates.isEmpty()) {
+      return null;
+    }
+    var step = candidates.get(random.nextInt(candidates.size()));
+    return path == null ? step.name : String.format("%s.%s", path.expr, step.name);
+  }
+
+  /**
+   * Returns a random walk of at most {@code length} fields from {@code asset}, continuing {@code
+   * start} if it is not null, or null if the walk is empty.
+   */
+  private Path randomPath(int asset, Path start, int length) {
+    var expr = start == null ? null : start.expr;
+    int current = start == null ? asset : start.target;
+    for (int i = 0; i < length; i++) {
+      var candidates = getFields(current);
+      if (candidates.isEmpty()) {
+        break;
+      }
+      var field = candidates.get(random.nextInt(candidates.size()));
+      var next = new Path(field.name, field.target);
+      if (random.nextDouble() < opts.transitiveDensity) {
+        var transitive = transitiveField(current, candidates);
+        if (transitive != null) {
+          next = new Path(String.format("%s*", transitive.name), transitive.target);
+        }
+      }
+      if (random.nextDouble() < opts.setOperatorDensity) {
+        next = combine(next, candidates);
+      }
+      expr = expr == null ? next.expr : String.format("%s.%s", expr, next.expr);
+      current = next.target;
+    }
+    return expr == null ? null : new Path(expr, current);
+  }
+
+  /** Returns a field of {@code asset} whose target {@code asset} is a subtype of, or null. */
+  private Field transitiveField(int asset, List<Field> candidates) {
+    int offset = random.nextInt(candidates.size());
+    for (int i = 0; i < candidates.size(); i++) {
+      var field = candidates.get((offset + i) % candidates.size());
+      if (isSubtype(asset, field.target)) {
+        return field;
+      }
+    }
+    return null;
+  }
+
+  /** Combines {@code path} with a field that shares an ancestor with it, if there is one. */
+  private Path combine(Path path, List<Field> candidates) {
+    int offset = random.nextInt(candidates.size());
+    for (int i = 0; i < candidates.size(); i++) {
+      var field = candidates.get((offset + i) % candidates.size());
+      int ancestor = commonAncestor(path.target, field.target);
+      if (ancestor >= 0 && !field.name.equals(path.expr)) {
+        var operator = SET_OPERATORS[random.nextInt(SET_OPERATORS.length)];
+        return new Path(String.format("(%s %s %s)", path.expr, operator, field.name), ancestor);
+      }
+    }
+    return path;
+  }
+
+  private boolean isSubtype(int asset, int ancestor) {
+    for (int a = asset; a >= 0; a = parent[a]) {
+      if (a == ancestor) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private int commonAncestor(int left, int right) {
+    for (int a = left; a >= 0; a = parent[a]) {
+      if (isSubtype(right, a)) {
+        return a;
+      }
+    }
+    return -1;
+  }
+
+  private List<Field> getFields(int asset) {
+    if (parent[asset] < 0) {
+      return fields.get(asset);
+    }
+    var result = new ArrayList<Field>();
+    for (int a = asset; a >= 0; a = parent[a]) {
+      result.addAll(fields.get(a));
+    }
+    return result;
+  }
+
+  private List<Step> getSteps(int asset) {
+    if (parent[asset] < 0) {
+      return steps.get(asset);
+    }
+    var result = new ArrayList<Step>();
+    for (int a = asset; a >= 0; a = parent[a]) {
+      result.addAll(steps.get(a));
+    }
+    return result;
+  }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2020-2022 Foreseeti AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mal_lang.formatter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.mal_lang.compiler.lib.CompilerException;
+
+/**
+ * Formats many MAL files at once on a thread pool.
+ *
+ * <p>Directories are searched recursively for files ending in ".mal". Every file is formatted in
+ * place, and only written if its contents change. The new contents are moved over the old file
+ * atomically. In check mode no file is written, the results only tell which files would change.
+ */
+public class BulkFormatter {
+  /** The outcome of formatting one file. */
+  public static class Result {
+    private final File file;
+    private final boolean changed;
+    private final String error;
+
+    private Result(File file, boolean changed, String error) {
+      this.file = file;
+      this.changed = changed;
+      this.error = error;
+    }
+
+    public File getFile() {
+      return file;
+    }
+
+    /** Returns whether the file was, or in check mode would have been, changed. */
+    public boolean isChanged() {
+      return changed;
+    }
+
+    public boolean isFailed() {
+      return error != null;
+    }
+
+    /** Returns why the file could not be formatted, or {@code null} if it could. */
+    public String getError() {
+      return error;
+    }
+  }
+
+  private BulkFormatter() {}
+
+  /**
+   * Formats all files in {@code paths} using the optional arguments "margin" and "check". Files
+   * are always formatted in place, so the optional argument "inplace" must not be false.
+   *
+   * @see #format(List, int, boolean, int)
+   */
+  public static List<Result> format(List<File> paths, Map<String, String> opts, int threads)
+      throws IOException, CompilerException {
+    if (opts.containsKey("inplace") && !Formatter.getBoolean(opts, "inplace")) {
+      throw new CompilerException(
+          "Optional argument 'inplace' cannot be false when formatting several files");
+    }
+    return format(paths, Formatter.getMargin(opts), Formatter.getBoolean(opts, "check"), threads);
+  }
+
+  /**
+   * Formats all files in {@code paths}.
+   *
+   * @param paths files and directories to format
+   * @param margin maximum line width
+   * @param check only check which files would change, without writing them
+   * @param threads maximum number of files that are formatted at the same time
+   * @return the result of every file, in the order of {@code paths} and then by path
+   * @throws IOException if a directory cannot be searched
+   * @throws CompilerException if a path does not exist
+   */
+  public static List<Result> format(List<File> paths, int margin, boolean check, int threads)
+      throws IOException, CompilerException {
+    var files = findFiles(paths);
+    var results = new ArrayList<Result>();
+    if (files.isEmpty()) {
+      return results;
+    }
+    var executor = Executors.newFixedThreadPool(Math.min(threads, files.size()));
+    try {
+      var futures = new ArrayList<Future<Result>>();
+      for (var file : files) {
+        futures.add(executor.submit(() -> formatFile(file, margin, check)));
+      }
+      for (var future : futures) {
+        results.add(future.get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while formatting");
+    } catch (ExecutionException e) {
+      throw new IOException(e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+    return results;
+  }
+
+  private static List<File> findFiles(List<File> paths) throws IOException, CompilerException {
+    var files = new LinkedHashSet<File>();
+    for (var path : paths) {
+      if (path.isDirectory()) {
+        try (Stream<Path> walk = Files.walk(path.toPath())) {
+          files.addAll(
+              walk.filter(p -> Files.isRegularFile(p) && p.toString().endsWith(".mal"))
+                  .sorted()
+                  .map(Path::toFile)
+                  .collect(Collectors.toList()));
+        }
+      } else if (path.isFile()) {
+        files.add(path);
+      } else {
+        throw new CompilerException(String.format("%s does not exist", path.getPath()));
+      }
+    }
+    return new ArrayList<>(files);
+  }
+
+  private static Result formatFile(File file, int margin, boolean check) {
+    try {
+      var original = Formatter.read(file);
+      var formatted = Formatter.layout(original, file.getName(), margin).getBytes();
+      boolean changed = !Arrays.equals(original, formatted);
+      if (changed && !check) {
+        Formatter.write(file.toPath(), formatted);
+      }
+      return new Result(file, changed, null);
+    } catch (IOException | CompilerException e) {
+      var msg = e.getMessage();
+      return new Result(file, false, msg == null || msg.isBlank() ? e.toString() : msg);
+    } catch (RuntimeException e) {
+      return new Result(file, false, e.toString());
+    }
+  }
+}
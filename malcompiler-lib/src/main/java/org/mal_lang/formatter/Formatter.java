@@ -16,13 +16,19 @@
 package org.mal_lang.formatter;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import org.mal_lang.compiler.lib.CompilerException;
 import org.mal_lang.compiler.lib.Lexer;
 import org.mal_lang.compiler.lib.MalLogger;
+import org.mal_lang.compiler.lib.Token;
 
 /**
  * Code formatter for MAL. The layout algorithm is based on three simple combinators; stacking,
@@ -32,54 +38,84 @@ import org.mal_lang.compiler.lib.MalLogger;
  * <p>Yelland, P. (2016). A New Approach to Optimal Code Formatting.
  */
 public class Formatter {
-  private static MalLogger LOGGER;
-
   public static String format(File file, Map<String, String> opts)
       throws IOException, CompilerException {
-    boolean inplace = false;
-    if (opts.containsKey("inplace")) {
-      switch (opts.get("inplace").toLowerCase().strip()) {
-        case "true":
-          inplace = true;
-          break;
-        case "false":
-          inplace = false;
-          break;
-        default:
-          throw new CompilerException(
-              "Optional argument 'inplace' must be either 'true' or 'false'");
-      }
-    }
+    return format(file, getMargin(opts), getBoolean(opts, "inplace"));
+  }
+
+  static int getMargin(Map<String, String> opts) throws CompilerException {
     int margin = opts.containsKey("margin") ? Integer.parseInt(opts.get("margin")) : 100;
     if (margin < 0) {
       throw new CompilerException("Optional argument 'margin' must be a positive integer");
     }
-    return format(file, margin, inplace);
+    return margin;
+  }
+
+  static boolean getBoolean(Map<String, String> opts, String name) throws CompilerException {
+    if (!opts.containsKey(name)) {
+      return false;
+    }
+    switch (opts.get(name).toLowerCase(Locale.ROOT).strip()) {
+      case "true":
+        return true;
+      case "false":
+        return false;
+      default:
+        throw new CompilerException(
+            String.format("Optional argument '%s' must be either 'true' or 'false'", name));
+    }
   }
 
   public static String format(File file, int margin, boolean inplace)
       throws IOException, CompilerException {
-    Locale.setDefault(Locale.ROOT);
-    LOGGER = new MalLogger("FORMATTER", false, false);
+    var input = read(file);
+    var output = layout(input, file.getName(), margin);
+    if (inplace) {
+      var bytes = output.getBytes();
+      if (!Arrays.equals(input, bytes)) {
+        write(file.toPath(), bytes);
+      }
+    } else {
+      System.out.print(output);
+    }
+    return output;
+  }
+
+  static byte[] read(File file) throws IOException {
+    if (!file.exists()) {
+      throw new IOException(String.format("%s: No such file or directory", file.getName()));
+    }
+    return Files.readAllBytes(file.toPath());
+  }
+
+  /**
+   * Formats {@code input} and verifies that the result is syntactically equal to it.
+   *
+   * <p>The input is lexed once, and the tokens are shared by the syntax check and the layout. The
+   * result is lexed from memory and compared against the same tokens.
+   *
+   * @param input the contents of a file
+   * @param name the name of the file in messages
+   * @param margin maximum line width
+   * @return the formatted contents
+   */
+  static String layout(byte[] input, String name, int margin) throws CompilerException {
+    var LOGGER = new MalLogger("FORMATTER", false, false);
+    List<Token> tokens;
     try {
-      org.mal_lang.compiler.lib.Parser.parse(file);
-    } catch (IOException e) {
-      throw e;
+      tokens = new Lexer(input, name).readAll();
+      org.mal_lang.compiler.lib.Parser.parseSyntax(new Lexer(tokens));
     } catch (CompilerException e) {
       LOGGER.error("Code to be formatted must be syntactically valid");
       LOGGER.print();
       throw e;
     }
-    var p = new Parser(file);
+    var p = new Parser(new Lexer(tokens));
     p.parse();
     var output = p.getOutput(margin);
     output = output.replaceAll("(?m) +$", "");
-    var bytes = output.getBytes();
-    var tempFile = File.createTempFile("formatted", ".tmp");
-    tempFile.deleteOnExit();
-    try (var fos = new FileOutputStream(tempFile)) {
-      fos.write(bytes);
-      if (!Lexer.syntacticallyEqual(new Lexer(file), new Lexer(tempFile))) {
+    try {
+      if (!Lexer.syntacticallyEqual(new Lexer(tokens), new Lexer(output.getBytes(), name))) {
         throw new CompilerException(
             "The formatter has produced an AST that differs from the input.");
       }
@@ -88,13 +124,37 @@ public class Formatter {
       LOGGER.print();
       throw e;
     }
-    if (inplace) {
-      try (var fos = new FileOutputStream(file, false)) {
-        fos.write(bytes);
+    return output;
+  }
+
+  /**
+   * Replaces the contents of {@code file} with {@code bytes} by writing them to a temporary file
+   * in the same directory and moving it over {@code file}, so that a failed or interrupted write
+   * never leaves a truncated file behind. If {@code file} is a symbolic link, the file it points
+   * to is replaced and the link is kept.
+   */
+  static void write(Path file, byte[] bytes) throws IOException {
+    var realFile = file.toRealPath();
+    var dir = realFile.getParent();
+    var tempFile = Files.createTempFile(dir, "." + realFile.getFileName(), ".tmp");
+    try {
+      Files.write(tempFile, bytes);
+      try {
+        Files.setPosixFilePermissions(tempFile, Files.getPosixFilePermissions(realFile));
+      } catch (UnsupportedOperationException e) {
+        // Not a POSIX file system, the temporary file has default permissions
       }
-    } else {
-      System.out.print(output);
+      try {
+        Files.move(
+            tempFile,
+            realFile,
+            StandardCopyOption.ATOMIC_MOVE,
+            StandardCopyOption.REPLACE_EXISTING);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(tempFile, realFile, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(tempFile);
     }
-    return output;
   }
 }
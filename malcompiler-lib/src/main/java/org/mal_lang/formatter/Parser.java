@@ -43,6 +43,10 @@ public class Parser {
     this.lex = new Lexer(canonicalFile);
   }
 
+  public Parser(Lexer lex) {
+    this.lex = lex;
+  }
+
   public String getOutput(int margin) {
     block.update(0, margin);
     return block.getOutput();
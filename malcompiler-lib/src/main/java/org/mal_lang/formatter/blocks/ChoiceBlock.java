@@ -27,7 +27,7 @@ public class ChoiceBlock extends MultiBlock {
   }
 
   @Override
-  public void update(int index, int margin) {
+  protected void layout(int index, int margin) {
     cost = Integer.MAX_VALUE;
     for (var block : blocks) {
       block.update(index, margin);
@@ -27,7 +27,7 @@ public class LineBlock extends MultiBlock {
   }
 
   @Override
-  public void update(int index, int margin) {
+  protected void layout(int index, int margin) {
     this.index = index;
     cost = 0;
     output = "";
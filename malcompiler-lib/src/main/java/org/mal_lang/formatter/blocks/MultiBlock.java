@@ -17,10 +17,28 @@ package org.mal_lang.formatter.blocks;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public abstract class MultiBlock extends AbstractBlock {
+  private static final class Layout {
+    final int index;
+    final int cost;
+    final String output;
+
+    Layout(int index, int cost, String output) {
+      this.index = index;
+      this.cost = cost;
+      this.output = output;
+    }
+  }
+
   protected List<Block> blocks;
+  // Layouts by starting column. Blocks are shared between the alternatives of choice blocks, so
+  // without this the same block is laid out at the same column an exponential number of times.
+  private final Map<Integer, Layout> layouts = new HashMap<>();
+  private int layoutsMargin = -1;
 
   public MultiBlock(List<Block> blocks) {
     this.blocks = new ArrayList<>(blocks);
@@ -32,6 +50,7 @@ public abstract class MultiBlock extends AbstractBlock {
 
   public void add(Block block) {
     blocks.add(block);
+    layouts.clear();
   }
 
   public void add(Block... blocks) {
@@ -43,4 +62,24 @@ public abstract class MultiBlock extends AbstractBlock {
   public int getSize() {
     return blocks.size();
   }
+
+  @Override
+  public void update(int index, int margin) {
+    if (margin != layoutsMargin) {
+      layouts.clear();
+      layoutsMargin = margin;
+    }
+    var layout = layouts.get(index);
+    if (layout == null) {
+      layout(index, margin);
+      layouts.put(index, new Layout(this.index, cost, output));
+    } else {
+      this.index = layout.index;
+      cost = layout.cost;
+      output = layout.output;
+    }
+  }
+
+  /** Lays out the blocks starting at column {@code index}, setting index, cost and output. */
+  protected abstract void layout(int index, int margin);
 }
@@ -27,7 +27,7 @@ public class StackBlock extends MultiBlock {
   }
 
   @Override
-  public void update(int index, int margin) {
+  protected void layout(int index, int margin) {
     cost = 0;
     output = "";
     var loop = false;
@@ -17,9 +17,9 @@ package org.mal_lang.formatter.blocks;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 public class WrapBlock extends ChoiceBlock {
   private List<Block> separators;
@@ -77,23 +77,27 @@ public class WrapBlock extends ChoiceBlock {
     return block;
   }
 
-  private Map<Integer, Block> bCache = new ConcurrentHashMap<>();
+  private Map<Integer, Block> bCache = new HashMap<>();
 
-  private Block b(int index) {
-    return bCache.computeIfAbsent(
-        index,
-        i -> {
-          if (i == n) {
-            return l(i);
-          } else {
-            var block = new ChoiceBlock(new StackBlock(l(i), breakBlock(i, b(i + 1))));
-            for (int j = i + 1; j < n; j++) {
-              block.add(new StackBlock(lb(i, j), breakBlock(j, b(j + 1))));
-            }
-            block.add(lb(i, n));
-            return block;
-          }
-        });
+  // b is recursive, so the cache cannot be filled with computeIfAbsent
+  private Block b(int i) {
+    var cached = bCache.get(i);
+    if (cached != null) {
+      return cached;
+    }
+    Block result;
+    if (i == n) {
+      result = l(i);
+    } else {
+      var block = new ChoiceBlock(new StackBlock(l(i), breakBlock(i, b(i + 1))));
+      for (int j = i + 1; j < n; j++) {
+        block.add(new StackBlock(lb(i, j), breakBlock(j, b(j + 1))));
+      }
+      block.add(lb(i, n));
+      result = block;
+    }
+    bCache.put(i, result);
+    return result;
   }
 
   @Override
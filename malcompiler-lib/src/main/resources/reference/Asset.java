@@ -12,7 +12,12 @@ public class Asset {
 
   public String name;
   public String assetClassName;
-  public static List<Asset> allAssets = new ArrayList<>();
+  // Final since the indexes below belong to this list, clear it to start a new model
+  public static final IndexedList<Asset> allAssets = new IndexedList<>();
+  private static final IndexedList<Asset>.Index assetsByName =
+      allAssets.index(asset -> List.of(asset.name));
+  // Every asset is listed under its own type and all of its super types
+  private static final IndexedList<Asset>.Index assetsByType = allAssets.index(Asset::assetTypes);
 
   public Asset() {
     this("Anonymous");
@@ -24,12 +29,7 @@ public class Asset {
   }
 
   public static Asset getAsset(String assetName) {
-    for (Asset asset : allAssets) {
-      if (asset.name.equals(assetName)) {
-        return asset;
-      }
-    }
-    return null;
+    return assetsByName.first(assetName);
   }
 
   public static Asset getRandomAsset() {
@@ -44,7 +44,7 @@ public class Asset {
   }
 
   public void prohibitAssociation(String sourceClassName, String roleName, Boolean enforce) {
-    if (this.getClass().getName().equals("auto." + sourceClassName)) {
+    if (sourceClassName.equals(assetClassName)) {
       if (getAssociatedAssetClassName(roleName) != null) {
         assertion(
             sourceClassName
@@ -63,7 +63,7 @@ public class Asset {
       String roleName,
       Set<String> requiredTargetClassName,
       Boolean enforce) {
-    if (this.getClass().getName().equals("auto." + sourceClassName)) {
+    if (sourceClassName.equals(assetClassName)) {
       if (getAssociatedAssetClassName(roleName) == null) {
         assertion(
             "A constraint assumed every "
@@ -111,7 +111,7 @@ public class Asset {
       Set<String> secondRoleNames,
       Set<String> thirdRoleNames,
       Boolean enforce) {
-    if (this.inheritedClassNames().contains(sourceAssetClassName)) {
+    if (isAssetType(sourceAssetClassName)) {
       if (!this.getAssociatedAssets(conditionalNeighborRoleName).isEmpty()) {
         Set<Asset> targetAssets = new HashSet<>();
         for (Asset firstAsset : this.getAssociatedAssets(conditionalNeighborRoleName)) {
@@ -149,7 +149,7 @@ public class Asset {
       Set<String> conditionalNeighborRoleName,
       List<String> navigationPath,
       Boolean enforce) {
-    if (this.inheritedClassNames().contains(sourceAssetClassName)) {
+    if (isAssetType(sourceAssetClassName)) {
       if (!this.getAssociatedAssets(conditionalNeighborRoleName).isEmpty()) {
         Set<Asset> targetAssets = new HashSet<>();
         for (Asset conditionalNeighbor : this.getAssociatedAssets(conditionalNeighborRoleName)) {
@@ -200,13 +200,27 @@ public class Asset {
     return assets;
   }
 
+  // Returns the name of the type of this asset followed by the names of its
+  // super types. Generated assets override this with a constant.
+  public List<String> assetTypes() {
+    List<String> assetTypes = new ArrayList<>();
+    for (Class<?> cls = getClass(); cls != Asset.class; cls = cls.getSuperclass()) {
+      assetTypes.add(cls.getSimpleName());
+    }
+    return assetTypes;
+  }
+
+  // Returns whether typeName is the type of this asset or one of its super
+  // types. Names qualified with the package of the asset are also accepted.
+  public boolean isAssetType(String typeName) {
+    return assetTypes().contains(typeName.substring(typeName.lastIndexOf('.') + 1));
+  }
+
   public List<String> inheritedClassNames() {
+    String pkg = getClass().getPackageName();
     List<String> inheritedClassNames = new ArrayList<>();
-    inheritedClassNames.add(this.getClass().getName());
-    Class<?> superClass = this.getClass().getSuperclass();
-    while (!superClass.getName().equals("core.Asset")) {
-      inheritedClassNames.add(superClass.getName());
-      superClass = superClass.getSuperclass();
+    for (String assetType : assetTypes()) {
+      inheritedClassNames.add(pkg + "." + assetType);
     }
     return inheritedClassNames;
   }
@@ -223,19 +237,27 @@ public class Asset {
     return null;
   }
 
+  // Associates this asset with another asset through the field named roleName,
+  // in both directions. Generated assets override this for the fields they
+  // declare.
+  public void link(String roleName, Asset other) {
+    throw new IllegalArgumentException(
+        this.getClass().getName() + " has no field called " + roleName + ".");
+  }
+
+  // Returns all assets of the type className, including those of its sub types.
   public static List<Asset> getAssets(String className) {
-    List<Asset> allAssetsOfClass = new ArrayList<>();
-    try {
-      Class<?> cls = Class.forName("auto." + className);
-      for (Asset asset : Asset.allAssets) {
-        if (cls.isAssignableFrom(asset.getClass())) {
-          allAssetsOfClass.add(asset);
-        }
+    List<Asset> allAssetsOfClass = assetsByType.get(className);
+    if (allAssetsOfClass.isEmpty()) {
+      // Still fail on misspelt types, which can only be told apart from
+      // types without assets by looking for the class
+      try {
+        Class.forName("auto." + className);
+      } catch (Exception e) {
+        fail("Can't find asset called " + className + ".");
       }
-    } catch (Exception e) {
-      fail("Can't find asset called " + className + ".");
     }
-    return allAssetsOfClass;
+    return new ArrayList<>(allAssetsOfClass);
   }
 
   public boolean isConnected(Asset target) {
@@ -21,9 +21,14 @@ public class AttackStep {
   public double ttc = Double.MAX_VALUE;
   public Set<AttackStep> expectedParents = new HashSet<>();
   public Set<AttackStep> visitedParents = new HashSet<>();
-  public static List<AttackStep> allAttackSteps = new ArrayList<>();
+  public static final IndexedList<AttackStep> allAttackSteps = new IndexedList<>();
+  private static final IndexedList<AttackStep>.Index attackStepsByName =
+      allAttackSteps.index(attackStep -> List.of(attackStep.fullName()));
   public String assetName;
   public String assetClassName;
+  // Computed once, explanations and assertions ask for these repeatedly
+  private final String attackStepName;
+  private final String fullName;
   private int explanationDepth = 10;
   private boolean explained = false;
   protected static Map<String, Double> ttcHashMap = new HashMap<>();
@@ -34,9 +39,22 @@ public class AttackStep {
 
   public AttackStep(String name) {
     this.assetName = name;
+    this.attackStepName = decapitalize(attackStepClassName(getClass()));
+    this.fullName = assetName + "." + attackStepName;
     allAttackSteps.add(this);
   }
 
+  // Anonymous classes have no simple name, they are named by what follows
+  // the last '$' of their binary name instead
+  private static String attackStepClassName(Class<?> cls) {
+    String name = cls.getSimpleName();
+    if (name.isEmpty()) {
+      name = cls.getName();
+      name = name.substring(name.lastIndexOf('$') + 1);
+    }
+    return name;
+  }
+
   protected void setExpectedParents() {}
 
   public void updateChildren(Set<AttackStep> activeAttackSteps) {}
@@ -52,23 +70,23 @@ public class AttackStep {
   }
 
   public String attackStepName() {
-    return decapitalize(
-        this.toString()
-            .substring(this.toString().lastIndexOf('$') + 1, this.toString().lastIndexOf('@')));
+    return attackStepName;
   }
 
   public String fullName() {
-    return this.assetName + "." + attackStepName();
+    return fullName;
+  }
+
+  public static AttackStep getAttackStep(String fullName) {
+    return attackStepsByName.first(fullName);
   }
 
   public Asset asset() {
-    for (Asset asset : Asset.allAssets) {
-      if (asset.name.equals(assetName)) {
-        return asset;
-      }
+    Asset asset = Asset.getAsset(assetName);
+    if (asset == null) {
+      fail("Asset name of " + fullName() + " does not correspond to any existing asset.");
     }
-    fail("Asset name of " + fullName() + " does not correspond to any existing asset.");
-    return null;
+    return asset;
   }
 
   public void assertCompromisedInstantaneously() {
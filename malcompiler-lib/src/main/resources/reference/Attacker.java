@@ -1,7 +1,6 @@
 package core;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.util.HashMap;
@@ -15,10 +14,14 @@ import java.util.regex.Pattern;
 public class Attacker {
   private static final Pattern distributionPattern =
       Pattern.compile("^([a-zA-Z]+)(?:\\((?:([0-9.]+)(?:, ([0-9.]+))?)?\\))?$");
+  // Splits postfix TTC programs at spaces outside of distribution parameters
+  private static final Pattern tokenSeparator = Pattern.compile(" +(?![^(]*\\))");
+  private static final Pattern numberPattern = Pattern.compile("^-?[0-9.]+(?:E-?[0-9]+)?$");
 
   protected Set<AttackStep> activeAttackSteps = new HashSet<>();
   public boolean verbose = false;
-  private static final String defaultProfile = "attackerProfile.ttc";
+  private static final String defaultProfileName = "attackerProfile.ttc";
+  private static Profile defaultProfile;
   protected static Map<String, Double> ttcHashMap = new HashMap<>();
 
   public Attacker() {
@@ -58,6 +61,8 @@ public class Attacker {
     }
   }
 
+  // Callers that build their message check verbose first, so that a
+  // disabled trace costs a single branch and no formatting.
   private void debugPrint(String str) {
     if (verbose) {
       System.out.println(str);
@@ -65,10 +70,62 @@ public class Attacker {
   }
 
   public void customizeTtc(String name, String distribution) {
-    ttcHashMap.put(name, Attacker.parseDistribution(distribution, isDefense(name)));
+    ttcHashMap.put(name, Attacker.parseDistribution(distribution, defenseNames().contains(name)));
   }
 
+  /**
+   * Returns the TTC value of a profile entry. An entry is either a single distribution or a TTC
+   * expression in postfix notation, e.g. "Exponential(0.1) 2.0 *", where every distribution is
+   * replaced by its mean. Values saturate at Double.MAX_VALUE.
+   */
   public static double parseDistribution(String dist, boolean defense) {
+    String[] tokens = tokenSeparator.split(dist.trim());
+    double[] stack = new double[tokens.length];
+    int top = -1;
+    for (String token : tokens) {
+      if (token.length() == 1 && "+-*/^".indexOf(token.charAt(0)) >= 0) {
+        if (top < 1) {
+          System.err.println(String.format("Malformed TTC expression: %s", dist));
+          return 0;
+        }
+        top--;
+        stack[top] = apply(token.charAt(0), stack[top], stack[top + 1]);
+      } else if (numberPattern.matcher(token).matches()) {
+        stack[++top] = Double.valueOf(token);
+      } else {
+        stack[++top] = parseSingleDistribution(token, defense);
+      }
+    }
+    if (top != 0) {
+      System.err.println(String.format("Malformed TTC expression: %s", dist));
+      return 0;
+    }
+    return Math.max(stack[0], 0);
+  }
+
+  private static double apply(char operator, double lhs, double rhs) {
+    double value;
+    switch (operator) {
+      case '+':
+        value = lhs + rhs;
+        break;
+      case '-':
+        value = lhs - rhs;
+        break;
+      case '*':
+        value = lhs * rhs;
+        break;
+      case '/':
+        value = lhs / rhs;
+        break;
+      default:
+        value = Math.pow(lhs, rhs);
+        break;
+    }
+    return Math.min(value, Double.MAX_VALUE);
+  }
+
+  private static double parseSingleDistribution(String dist, boolean defense) {
     Matcher matcher = distributionPattern.matcher(dist);
     matcher.matches();
     double a = 0;
@@ -109,35 +166,55 @@ public class Attacker {
     }
   }
 
-  private boolean isDefense(String name) {
-    name = Character.toLowerCase(name.charAt(0)) + name.substring(1);
+  // Defenses are named after their asset type, so the names are shared by
+  // all defenses of the same type
+  private static Set<String> defenseNames() {
+    Set<String> defenseNames = new HashSet<>();
     for (Defense defense : Defense.allDefenses) {
-      if (defense.disable.fullName().equals(name)) {
-        return true;
-      }
+      defenseNames.add(defense.disable.fullName());
     }
-    return false;
+    return defenseNames;
   }
 
-  private Map<String, Double> readProfile(Properties profile) {
-    Map<String, Double> profileMap = new HashMap<>();
-    for (String name : profile.stringPropertyNames()) {
-      // Local ttc overrides ttcfile
-      if (ttcHashMap.containsKey(name)) {
-        profileMap.put(name, ttcHashMap.get(name));
-      } else {
-        profileMap.put(name, parseDistribution(profile.getProperty(name), isDefense(name)));
+  private Map<String, Double> readProfile(Profile profile) {
+    Map<String, Double> profileMap = profile.resolve(defenseNames());
+    // Local ttc overrides ttcfile
+    Map<String, Double> overrides = new HashMap<>();
+    for (Map.Entry<String, Double> entry : ttcHashMap.entrySet()) {
+      if (profile.contains(entry.getKey())) {
+        overrides.put(entry.getKey(), entry.getValue());
       }
     }
     ttcHashMap.clear();
+    if (!overrides.isEmpty()) {
+      profileMap = new HashMap<>(profileMap);
+      profileMap.putAll(overrides);
+    }
     return profileMap;
   }
 
   public void attack() {
+    synchronized (Attacker.class) {
+      if (defaultProfile == null) {
+        try {
+          defaultProfile =
+              loadProfile(
+                  new File(getClass().getClassLoader().getResource(defaultProfileName).toURI()));
+        } catch (URISyntaxException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    }
+    attack(defaultProfile);
+  }
+
+  private static Profile loadProfile(File profileFile) {
     try {
-      attack(new File(getClass().getClassLoader().getResource(defaultProfile).toURI()));
-    } catch (URISyntaxException e) {
-      throw new RuntimeException(e);
+      return Profile.load(profileFile);
+    } catch (IOException e) {
+      System.err.println("Could not open profile: " + profileFile.getPath());
+      System.exit(1);
+      return null;
     }
   }
 
@@ -146,33 +223,35 @@ public class Attacker {
   }
 
   public void attack(File profileFile) {
-    Properties profile = new Properties();
-    try {
-      profile.load(new FileInputStream(profileFile));
-    } catch (IOException e) {
-      System.err.println("Could not open profile: " + profileFile.getPath());
-      System.exit(1);
-    }
-    attack(profile);
+    attack(loadProfile(profileFile));
   }
 
   public void attack(Properties profile) {
+    attack(new Profile(profile));
+  }
+
+  // Load the profile once with Profile.load to reuse it across attacks
+  public void attack(Profile profile) {
     AttackStep.ttcHashMap = readProfile(profile);
     debugPrint("debug attacking");
 
-    debugPrint(
-        String.format(
-            "The model contains %d assets and %d attack steps.",
-            Asset.allAssets.size(), AttackStep.allAttackSteps.size()));
+    if (verbose) {
+      debugPrint(
+          String.format(
+              "The model contains %d assets and %d attack steps.",
+              Asset.allAssets.size(), AttackStep.allAttackSteps.size()));
+      debugPrint(String.format("AttackStep.allAttackSteps = %s", AttackStep.allAttackSteps));
+    }
     AttackStep currentAttackStep = null;
-    debugPrint(String.format("AttackStep.allAttackSteps = %s", AttackStep.allAttackSteps));
 
     for (AttackStep attackStep : AttackStep.allAttackSteps) {
       attackStep.setExpectedParents();
-      debugPrint(
-          String.format(
-              "The expected parents of %s are %s",
-              attackStep.fullName(), attackStep.expectedParents));
+      if (verbose) {
+        debugPrint(
+            String.format(
+                "The expected parents of %s are %s",
+                attackStep.fullName(), attackStep.expectedParents));
+      }
     }
 
     for (Defense defense : Defense.allDefenses) {
@@ -182,9 +261,13 @@ public class Attacker {
     }
 
     while (!activeAttackSteps.isEmpty()) {
-      debugPrint(String.format("activeAttackSteps = %s", activeAttackSteps));
+      if (verbose) {
+        debugPrint(String.format("activeAttackSteps = %s", activeAttackSteps));
+      }
       currentAttackStep = getShortestActiveStep();
-      debugPrint(String.format("Updating children of %s", currentAttackStep.fullName()));
+      if (verbose) {
+        debugPrint(String.format("Updating children of %s", currentAttackStep.fullName()));
+      }
       currentAttackStep.updateChildren(activeAttackSteps);
       activeAttackSteps.remove(currentAttackStep);
     }
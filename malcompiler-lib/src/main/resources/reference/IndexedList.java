@@ -0,0 +1,137 @@
+package core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+// A list with indexes from string keys to its elements, so that elements can
+// be looked up without scanning the list. add, remove and clear keep the
+// indexes up to date. Any other modification, including set, makes them
+// stale, and they are rebuilt on the next lookup. Elements replaced through a
+// sub list are not noticed. Keys are read when an element is added and must
+// not change while the element is in the list.
+public class IndexedList<T> extends ArrayList<T> {
+  private static final long serialVersionUID = 1L;
+  private final List<Index> indexes = new ArrayList<>();
+  private int indexedModCount = modCount;
+  // set does not count as a modification of the list, so it is tracked here
+  private boolean stale = false;
+
+  // Adds an index where each element is listed under all of its keys.
+  public Index index(Function<T, List<String>> keys) {
+    Index index = new Index(keys);
+    indexes.add(index);
+    for (T element : this) {
+      index.add(element);
+    }
+    return index;
+  }
+
+  @Override
+  public boolean add(T element) {
+    boolean indexed = isIndexed();
+    super.add(element);
+    if (indexed) {
+      for (Index index : indexes) {
+        index.add(element);
+      }
+      indexedModCount = modCount;
+    }
+    return true;
+  }
+
+  // Elements are distinct objects, and the ones removed are usually the most
+  // recently added, so search from the end of the list.
+  @Override
+  public boolean remove(Object element) {
+    int i = lastIndexOf(element);
+    if (i < 0) {
+      return false;
+    }
+    boolean indexed = isIndexed();
+    T removed = super.remove(i);
+    if (indexed) {
+      for (Index index : indexes) {
+        index.remove(removed);
+      }
+      indexedModCount = modCount;
+    }
+    return true;
+  }
+
+  @Override
+  public T set(int i, T element) {
+    T previous = super.set(i, element);
+    stale = true;
+    return previous;
+  }
+
+  @Override
+  public void clear() {
+    super.clear();
+    for (Index index : indexes) {
+      index.elements.clear();
+    }
+    indexedModCount = modCount;
+    stale = false;
+  }
+
+  private boolean isIndexed() {
+    return !stale && modCount == indexedModCount;
+  }
+
+  private void update() {
+    if (!isIndexed()) {
+      for (Index index : indexes) {
+        index.elements.clear();
+        for (T element : this) {
+          index.add(element);
+        }
+      }
+      indexedModCount = modCount;
+      stale = false;
+    }
+  }
+
+  public class Index {
+    private final Function<T, List<String>> keys;
+    private final Map<String, List<T>> elements = new HashMap<>();
+
+    private Index(Function<T, List<String>> keys) {
+      this.keys = keys;
+    }
+
+    // Returns the first element with the given key, or null if there is none.
+    public T first(String key) {
+      update();
+      List<T> list = elements.get(key);
+      return list == null ? null : list.get(0);
+    }
+
+    // Returns all elements with the given key, in list order.
+    public List<T> get(String key) {
+      update();
+      List<T> list = elements.get(key);
+      return list == null ? List.of() : Collections.unmodifiableList(list);
+    }
+
+    private void add(T element) {
+      for (String key : keys.apply(element)) {
+        elements.computeIfAbsent(key, k -> new ArrayList<>(1)).add(element);
+      }
+    }
+
+    private void remove(T element) {
+      for (String key : keys.apply(element)) {
+        List<T> list = elements.get(key);
+        list.remove(list.lastIndexOf(element));
+        if (list.isEmpty()) {
+          elements.remove(key);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,66 @@
+package core;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+// An attacker profile with every entry parsed once, so that it can be reused
+// across attacks and models. Bernoulli distributions are read differently for
+// defenses, so entries using them also keep their value as a defense, and
+// which one applies is decided per model.
+public class Profile {
+  private final Map<String, Double> values = new HashMap<>();
+  private final Map<String, Double> defenseValues = new HashMap<>();
+  private Set<String> resolvedDefenses;
+  private Map<String, Double> resolved;
+
+  public Profile(Properties profile) {
+    for (String name : profile.stringPropertyNames()) {
+      String dist = profile.getProperty(name);
+      values.put(name, Attacker.parseDistribution(dist, false));
+      if (dist.contains("Bernoulli")) {
+        defenseValues.put(name, Attacker.parseDistribution(dist, true));
+      }
+    }
+  }
+
+  public static Profile load(File profileFile) throws IOException {
+    Properties profile = new Properties();
+    try (InputStream in = new FileInputStream(profileFile)) {
+      profile.load(in);
+    }
+    return new Profile(profile);
+  }
+
+  public boolean contains(String name) {
+    return values.containsKey(name);
+  }
+
+  // Returns the TTC of every entry, reading the entries named in
+  // defenseNames as defenses. The map is shared by all models with the same
+  // defenses and must not be modified.
+  public synchronized Map<String, Double> resolve(Set<String> defenseNames) {
+    Set<String> defenses = new HashSet<>();
+    for (String name : defenseValues.keySet()) {
+      if (defenseNames.contains(name)) {
+        defenses.add(name);
+      }
+    }
+    if (!defenses.equals(resolvedDefenses)) {
+      Map<String, Double> map = new HashMap<>(values);
+      for (String name : defenses) {
+        map.put(name, defenseValues.get(name));
+      }
+      resolved = Collections.unmodifiableMap(map);
+      resolvedDefenses = defenses;
+    }
+    return resolved;
+  }
+}
@@ -0,0 +1,346 @@
+package core;
+
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+// Checks a set of constraints on all assets of a model at once. Assets are
+// checked in parallel, and the assets reached by navigating associations are
+// computed once per validation and shared by all constraints. Instead of
+// failing on the first violation, all violations are collected in a report.
+// The model must not be modified while it is validated.
+public class Validator {
+  private final List<Constraint> constraints;
+
+  public Validator(Collection<Constraint> constraints) {
+    this.constraints = List.copyOf(constraints);
+  }
+
+  public Report validate() {
+    return validate(Asset.allAssets);
+  }
+
+  public Report validate(List<Asset> assets) {
+    Navigator navigator = new Navigator();
+    List<Violation> violations =
+        IntStream.range(0, assets.size())
+            .parallel()
+            .mapToObj(i -> check(assets.get(i), navigator))
+            .flatMap(List::stream)
+            .collect(Collectors.toList());
+    return new Report(violations);
+  }
+
+  private List<Violation> check(Asset asset, Navigator navigator) {
+    List<Violation> violations = new ArrayList<>();
+    for (Constraint constraint : constraints) {
+      String message = constraint.check(asset, navigator);
+      if (message != null) {
+        violations.add(new Violation(asset, constraint, message));
+      }
+    }
+    return violations;
+  }
+
+  // Every asset of type sourceClassName must not have any associated assets
+  // through roleName.
+  public static Constraint prohibitAssociation(
+      String sourceClassName, String roleName, boolean enforce) {
+    return new Constraint(enforce) {
+      @Override
+      String check(Asset asset, Navigator navigator) {
+        if (!sourceClassName.equals(asset.assetClassName)) {
+          return null;
+        }
+        Set<Asset> associated = navigator.navigate(asset, Set.of(roleName));
+        if (associated == null || associated.isEmpty()) {
+          return null;
+        }
+        return sourceClassName
+            + " is not allowed to have an association to "
+            + roleName
+            + " but "
+            + asset.toString()
+            + " seems to not have just that.";
+      }
+    };
+  }
+
+  // The field roleName of every asset of type sourceClassName must be of one
+  // of the types in requiredTargetClassName.
+  public static Constraint counterPartTypeRequirement(
+      String sourceClassName,
+      String roleName,
+      Set<String> requiredTargetClassName,
+      boolean enforce) {
+    return new Constraint(enforce) {
+      @Override
+      String check(Asset asset, Navigator navigator) {
+        if (!sourceClassName.equals(asset.assetClassName)) {
+          return null;
+        }
+        String actualTargetClassName = asset.getAssociatedAssetClassName(roleName);
+        if (actualTargetClassName == null) {
+          return "A constraint assumed every "
+              + sourceClassName
+              + ", including "
+              + asset.toString()
+              + ", would have a "
+              + roleName
+              + ", but this seem to not have been the case.";
+        } else if (actualTargetClassName.equals("")) {
+          return "Constraint violation: The "
+              + asset.getClass().getName()
+              + " required an association with "
+              + requiredTargetClassName
+              + " but found none.";
+        } else if (!requiredTargetClassName.contains(actualTargetClassName)) {
+          return "Constraint violation: The "
+              + asset.getClass().getName()
+              + " required an association with "
+              + requiredTargetClassName
+              + " but found "
+              + actualTargetClassName
+              + ".";
+        }
+        return null;
+      }
+    };
+  }
+
+  // For each asset of type sourceAssetClassName, or one of its sub types,
+  // that has an associated asset through conditionalNeighborRoleName, the
+  // assets reached through conditionalNeighborRoleName, secondRoleNames and
+  // then thirdRoleNames must include the asset itself.
+  public static Constraint cycleRequirement(
+      String sourceAssetClassName,
+      Set<String> conditionalNeighborRoleName,
+      Set<String> secondRoleNames,
+      Set<String> thirdRoleNames,
+      boolean enforce) {
+    return new CycleRequirement(
+        sourceAssetClassName,
+        conditionalNeighborRoleName,
+        List.of(Set.copyOf(secondRoleNames), Set.copyOf(thirdRoleNames)),
+        "."
+            + conditionalNeighborRoleName.toString()
+            + "."
+            + secondRoleNames.toString()
+            + "."
+            + thirdRoleNames.toString(),
+        enforce);
+  }
+
+  // Like the other cycleRequirement, but with one role name for each step
+  // after conditionalNeighborRoleName.
+  public static Constraint cycleRequirement(
+      String sourceAssetClassName,
+      Set<String> conditionalNeighborRoleName,
+      List<String> navigationPath,
+      boolean enforce) {
+    List<Set<String>> path = new ArrayList<>();
+    String description = "." + conditionalNeighborRoleName.toString();
+    for (String roleName : navigationPath) {
+      path.add(Set.of(roleName));
+      description += "." + roleName;
+    }
+    return new CycleRequirement(
+        sourceAssetClassName, conditionalNeighborRoleName, path, description, enforce);
+  }
+
+  private static class CycleRequirement extends Constraint {
+    private final String sourceAssetClassName;
+    private final Set<String> conditionalNeighborRoleName;
+    private final List<Set<String>> navigationPath;
+    private final String description;
+
+    CycleRequirement(
+        String sourceAssetClassName,
+        Set<String> conditionalNeighborRoleName,
+        List<Set<String>> navigationPath,
+        String description,
+        boolean enforce) {
+      super(enforce);
+      this.sourceAssetClassName = sourceAssetClassName;
+      this.conditionalNeighborRoleName = Set.copyOf(conditionalNeighborRoleName);
+      this.navigationPath = List.copyOf(navigationPath);
+      this.description = description;
+    }
+
+    @Override
+    String check(Asset asset, Navigator navigator) {
+      if (!asset.isAssetType(sourceAssetClassName)) {
+        return null;
+      }
+      Set<Asset> neighbors = navigator.navigate(asset, conditionalNeighborRoleName);
+      if (neighbors == null) {
+        return "Model too incomplete to check for constraint.";
+      }
+      if (neighbors.isEmpty()) {
+        return null;
+      }
+      Boolean cycle = navigator.reaches(neighbors, navigationPath, asset);
+      if (cycle == null) {
+        return "Model too incomplete to check for constraint.";
+      }
+      if (cycle) {
+        return null;
+      }
+      return "Constraint violation: "
+          + asset.toString()
+          + description
+          + " should contain "
+          + asset.toString()
+          + ", thus creating a cycle.";
+    }
+  }
+
+  public abstract static class Constraint {
+    public final boolean enforce;
+
+    Constraint(boolean enforce) {
+      this.enforce = enforce;
+    }
+
+    // Returns a message describing how asset violates the constraint, or
+    // null if it does not.
+    abstract String check(Asset asset, Navigator navigator);
+  }
+
+  // Memoizes the assets associated with each asset through a set of role
+  // names, so that constraints navigating through the same assets share the
+  // results. null stands for associations that could not be followed.
+  static class Navigator {
+    private static final Set<Asset> incomplete = new HashSet<>();
+    private final Map<Asset, Map<Set<String>, Set<Asset>>> associated = new ConcurrentHashMap<>();
+
+    Set<Asset> navigate(Asset asset, Set<String> roleNames) {
+      Map<Set<String>, Set<Asset>> roles =
+          associated.computeIfAbsent(asset, a -> new ConcurrentHashMap<>());
+      Set<Asset> assets = roles.get(roleNames);
+      if (assets == null) {
+        assets = follow(asset, roleNames);
+        roles.putIfAbsent(roleNames, assets == null ? incomplete : assets);
+      }
+      return assets == incomplete ? null : assets;
+    }
+
+    // Returns whether target is among the assets reached from sources by
+    // following each step of path in turn, or null if path could not be
+    // followed. The assets reached by the last step are never collected.
+    Boolean reaches(Set<Asset> sources, List<Set<String>> path, Asset target) {
+      if (path.isEmpty()) {
+        return sources.contains(target);
+      }
+      Set<Asset> frontier = sources;
+      for (Set<String> roleNames : path.subList(0, path.size() - 1)) {
+        Set<Asset> next = new HashSet<>();
+        for (Asset asset : frontier) {
+          Set<Asset> assets = navigate(asset, roleNames);
+          if (assets == null) {
+            return null;
+          }
+          next.addAll(assets);
+        }
+        frontier = next;
+      }
+      for (Asset asset : frontier) {
+        Set<Asset> assets = navigate(asset, path.get(path.size() - 1));
+        if (assets == null) {
+          return null;
+        }
+        if (assets.contains(target)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private static Set<Asset> follow(Asset asset, Set<String> roleNames) {
+      if (roleNames.size() == 1) {
+        return asset.getAssociatedAssets(roleNames.iterator().next());
+      }
+      Set<Asset> assets = new HashSet<>();
+      for (String roleName : roleNames) {
+        Set<Asset> associated = asset.getAssociatedAssets(roleName);
+        if (associated == null) {
+          return null;
+        }
+        assets.addAll(associated);
+      }
+      return assets;
+    }
+  }
+
+  public static class Violation {
+    public final Asset asset;
+    public final Constraint constraint;
+    public final String message;
+
+    Violation(Asset asset, Constraint constraint, String message) {
+      this.asset = asset;
+      this.constraint = constraint;
+      this.message = message;
+    }
+
+    public boolean isEnforced() {
+      return constraint.enforce;
+    }
+
+    @Override
+    public String toString() {
+      return message;
+    }
+  }
+
+  public static class Report {
+    private final List<Violation> violations;
+
+    Report(List<Violation> violations) {
+      this.violations = List.copyOf(violations);
+    }
+
+    // All violations, ordered by asset and then by constraint
+    public List<Violation> getViolations() {
+      return violations;
+    }
+
+    public List<Violation> getEnforcedViolations() {
+      List<Violation> enforced = new ArrayList<>();
+      for (Violation violation : violations) {
+        if (violation.isEnforced()) {
+          enforced.add(violation);
+        }
+      }
+      return enforced;
+    }
+
+    public boolean isValid() {
+      return getEnforcedViolations().isEmpty();
+    }
+
+    // Prints the violations of constraints that are not enforced, and fails
+    // with all violations of enforced constraints, if there are any.
+    public void assertValid() {
+      List<String> messages = new ArrayList<>();
+      for (Violation violation : violations) {
+        if (violation.isEnforced()) {
+          messages.add(violation.message);
+        } else {
+          System.out.println(violation.message);
+        }
+      }
+      if (!messages.isEmpty()) {
+        fail(String.join(String.format("%n"), messages));
+      }
+    }
+  }
+}
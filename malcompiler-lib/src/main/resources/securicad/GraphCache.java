@@ -0,0 +1,21 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Epoch of the graph caches of one asset and of its attack steps and defenses.
+ *
+ * <p>Every cache is stamped with the epoch it was computed in, and is recomputed on the next access
+ * once the epoch has moved on. Invalidating all caches of an asset is therefore a single increment,
+ * and clearing the assets of one model never invalidates the caches of another model.
+ */
+public final class GraphCache {
+  // Starts at 1 so that unset stamps (0) are always stale
+  private final AtomicLong epoch = new AtomicLong(1);
+
+  public long epoch() {
+    return epoch.get();
+  }
+
+  public void invalidate() {
+    epoch.incrementAndGet();
+  }
+}
@@ -15,6 +15,11 @@
  */
 package org.mal_lang.compiler.test.bled;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
 import bled.Firewall;
@@ -23,10 +28,17 @@ import bled.IP;
 import bled.Network;
 import core.Asset;
 import core.AttackStep;
+import core.AttackStepMin;
 import core.Attacker;
 import core.Defense;
+import core.Profile;
+import core.Validator;
 import java.io.File;
+import java.io.IOException;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.mal_lang.compiler.test.MalTest;
@@ -140,6 +152,112 @@ public class TestFirewall extends MalTest {
     host_bele.access.assertCompromisedInstantaneously();
   }
 
+  @Test
+  public void testLookup() {
+    Network network = new Network("luto");
+    Host host_veni = new Host("veni");
+    Host host_terg = new Host("terg");
+    network.addHosts(host_veni);
+    network.addHosts(host_terg);
+
+    assertSame(network, Asset.getAsset("luto"));
+    assertSame(host_terg, Asset.getAsset("terg"));
+    assertNull(Asset.getAsset("ursu"));
+    assertSame(host_veni.access, AttackStep.getAttackStep("veni.access"));
+    assertSame(network.reached, AttackStep.getAttackStep("luto.reached"));
+    assertEquals("access", host_terg.access.attackStepName());
+    assertEquals("terg.access", host_terg.access.fullName());
+    assertSame(host_terg, host_terg.access.asset());
+    assertEquals(List.of("Host"), host_veni.assetTypes());
+    assertTrue(host_veni.isAssetType("bled.Host"));
+    assertFalse(host_veni.isAssetType("Network"));
+    assertEquals(List.of(host_veni, host_terg), Asset.getAssets("Host"));
+    assertEquals(List.of(network), Asset.getAssets("Network"));
+
+    AttackStep.allAttackSteps.remove(host_veni.access);
+    assertNull(AttackStep.getAttackStep("veni.access"));
+    Asset.allAssets.removeIf(asset -> asset == host_terg);
+    assertNull(Asset.getAsset("terg"));
+    assertSame(host_veni, Asset.getAsset("veni"));
+    assertEquals(List.of(host_veni), Asset.getAssets("Host"));
+
+    // Replacing an element is noticed on the next lookup
+    Asset.allAssets.set(Asset.allAssets.indexOf(host_veni), network);
+    assertNull(Asset.getAsset("veni"));
+    assertEquals(List.of(), Asset.getAssets("Host"));
+
+    // Anonymous attack steps have no simple name
+    AttackStep anonymous = new AttackStepMin("luto") {};
+    assertFalse(anonymous.attackStepName().isEmpty());
+    assertSame(anonymous, AttackStep.getAttackStep(anonymous.fullName()));
+  }
+
+  @Test
+  public void testReusedProfile() throws IOException, URISyntaxException {
+    Profile profile =
+        Profile.load(new File(TestFirewall.class.getResource("/bled/attackerProfile.ttc").toURI()));
+    for (int i = 0; i < 2; i++) {
+      Network network = new Network("luto");
+      Host host_veni = new Host("veni");
+      Host host_terg = new Host("terg");
+      host_veni.addIp(new IP("veni::127.0.0.1"));
+      host_terg.addIp(new IP("terg::127.0.0.1"));
+      network.addHosts(host_veni);
+      network.addHosts(host_terg);
+      Firewall fw = new Firewall("fw");
+      fw.addAllowedIPs(host_terg.ip);
+      host_veni.addFws(fw);
+
+      Attacker attacker = new Attacker();
+      attacker.addAttackPoint(host_veni.access);
+      attacker.attack(profile);
+      host_terg.access.assertCompromisedInstantaneously();
+      clearModel();
+    }
+  }
+
+  @Test
+  public void testValidator() {
+    Network network = new Network("luto");
+    Host host_veni = new Host("veni");
+    Host host_terg = new Host("terg");
+    Host host_ursu = new Host("ursu");
+    network.addHosts(host_veni);
+    network.addHosts(host_terg);
+    host_veni.addFws(new Firewall("fw"));
+
+    Validator validator =
+        new Validator(
+            List.of(
+                Validator.cycleRequirement("Host", Set.of("networks"), List.of("hosts"), true),
+                Validator.prohibitAssociation("Host", "fws", false),
+                Validator.counterPartTypeRequirement("Host", "ip", Set.of("bled.Network"), true)));
+    Validator.Report report = validator.validate();
+    assertFalse(report.isValid());
+    List<Asset> assets = new ArrayList<>();
+    List<Boolean> enforced = new ArrayList<>();
+    for (Validator.Violation violation : report.getViolations()) {
+      assets.add(violation.asset);
+      enforced.add(violation.isEnforced());
+    }
+    assertEquals(List.of(host_veni, host_veni, host_terg, host_ursu), assets);
+    assertEquals(List.of(false, true, true, true), enforced);
+    assertEquals(3, report.getEnforcedViolations().size());
+
+    validator =
+        new Validator(
+            List.of(
+                Validator.cycleRequirement("Host", Set.of("fws"), List.of("host"), true),
+                Validator.cycleRequirement(
+                    "Host", Set.of("networks"), Set.of("hosts"), Set.of("fws"), false),
+                Validator.counterPartTypeRequirement("Host", "ip", Set.of("bled.IP"), true)));
+    report = validator.validate();
+    assertTrue(report.isValid());
+    assertEquals(2, report.getViolations().size());
+    assertSame(host_veni, report.getViolations().get(0).asset);
+    assertSame(host_terg, report.getViolations().get(1).asset);
+  }
+
   @AfterEach
   public void clearModel() {
     Asset.allAssets.clear();
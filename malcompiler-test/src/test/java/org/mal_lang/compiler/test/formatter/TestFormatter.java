@@ -16,13 +16,19 @@
 package org.mal_lang.compiler.test.formatter;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
 import org.junit.jupiter.api.Test;
 import org.mal_lang.compiler.lib.CompilerException;
 import org.mal_lang.compiler.test.MalTest;
+import org.mal_lang.formatter.BulkFormatter;
 import org.mal_lang.formatter.Formatter;
 
 public class TestFormatter extends MalTest {
@@ -157,6 +163,105 @@ public class TestFormatter extends MalTest {
     formats("lang-converter/reverse.mal");
   }
 
+  @Test
+  public void testLongExpressions() {
+    // Long paths and unions have exponentially many layouts
+    formats("formatter/long-expressions.mal");
+  }
+
+  private static List<BulkFormatter.Result> assertBulkFormat(File dir, boolean check) {
+    try {
+      return BulkFormatter.format(List.of(dir), 100, check, 4);
+    } catch (IOException | CompilerException e) {
+      throw new AssertionError(e.getMessage());
+    }
+  }
+
+  @Test
+  public void testBulkFormat() {
+    var dir = new File(getNewTmpDir("test-formatter"));
+    var unformatted = new File(dir, "readable.mal");
+    var formatted = new File(dir, "sub/readable.mal");
+    var invalid = new File(dir, "sub/bad.mal");
+    try {
+      Files.createDirectory(formatted.getParentFile().toPath());
+      Files.writeString(unformatted.toPath(), assertReadFileClassPath("formatter/readable.mal"));
+      Files.writeString(formatted.toPath(), assertReadFileClassPath("formatter/readable.ans"));
+      Files.writeString(invalid.toPath(), assertReadFileClassPath("parser/bad-asset1.mal"));
+    } catch (IOException e) {
+      fail(e.getMessage());
+    }
+
+    var results = assertBulkFormat(dir, true);
+    assertEquals(3, results.size());
+    assertEquals(unformatted, results.get(0).getFile());
+    assertTrue(results.get(0).isChanged());
+    assertEquals(invalid, results.get(1).getFile());
+    assertTrue(results.get(1).isFailed());
+    assertEquals(formatted, results.get(2).getFile());
+    assertFalse(results.get(2).isChanged());
+    assertFalse(results.get(2).isFailed());
+    try {
+      assertEquals(
+          assertReadFileClassPath("formatter/readable.mal"),
+          Files.readString(unformatted.toPath()));
+    } catch (IOException e) {
+      fail(e.getMessage());
+    }
+
+    results = assertBulkFormat(dir, false);
+    assertTrue(results.get(0).isChanged());
+    assertTrue(results.get(1).isFailed());
+    assertFalse(results.get(2).isChanged());
+    try {
+      assertEquals(
+          assertReadFileClassPath("formatter/readable.ans"),
+          Files.readString(unformatted.toPath()));
+    } catch (IOException e) {
+      fail(e.getMessage());
+    }
+    for (var result : assertBulkFormat(dir, true)) {
+      assertFalse(result.isChanged());
+    }
+  }
+
+  @Test
+  public void testBulkFormatNotInplace() {
+    var dir = new File(getNewTmpDir("test-formatter"));
+    try {
+      BulkFormatter.format(List.of(dir), Map.of("inplace", "false"), 4);
+      fail("inplace=false should be rejected");
+    } catch (IOException e) {
+      fail(e.getMessage());
+    } catch (CompilerException e) {
+      assertTrue(e.getMessage().contains("inplace"));
+    }
+  }
+
+  @Test
+  public void testBulkFormatSymlink() {
+    var dir = new File(getNewTmpDir("test-formatter"));
+    var target = new File(dir, "target/readable.mal");
+    var link = new File(dir, "link/readable.mal");
+    try {
+      Files.createDirectory(target.getParentFile().toPath());
+      Files.createDirectory(link.getParentFile().toPath());
+      Files.writeString(target.toPath(), assertReadFileClassPath("formatter/readable.mal"));
+      Files.createSymbolicLink(link.toPath(), target.toPath());
+    } catch (IOException e) {
+      fail(e.getMessage());
+    }
+
+    assertTrue(assertBulkFormat(link.getParentFile(), false).get(0).isChanged());
+    assertTrue(Files.isSymbolicLink(link.toPath()));
+    try {
+      assertEquals(
+          assertReadFileClassPath("formatter/readable.ans"), Files.readString(target.toPath()));
+    } catch (IOException e) {
+      fail(e.getMessage());
+    }
+  }
+
   @Test
   public void testVehicleLang() {
     formats("vehiclelang/vehicleLang.mal");
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2019-2022 Foreseeti AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mal_lang.compiler.test.lib;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import org.junit.jupiter.api.Test;
+import org.mal_lang.compiler.lib.Distributions;
+import org.mal_lang.compiler.lib.Distributions.Distribution;
+import org.mal_lang.compiler.lib.Distributions.RandomSource;
+import org.mal_lang.compiler.lib.Lang.TTCFunc;
+import org.mal_lang.compiler.lib.TTCProgram;
+import org.mal_lang.compiler.test.MalTest;
+
+public class TestDistributions extends MalTest {
+  private static final int SAMPLES = 200000;
+
+  private static RandomSource random(long seed) {
+    return new SplittableRandom(seed)::nextLong;
+  }
+
+  /** Asserts that the sample mean and variance are within a few standard errors of the exact. */
+  private static void assertMoments(Distribution dist, double mean, double variance) {
+    var samples = new double[SAMPLES];
+    dist.fill(random(1), samples);
+    double sum = 0;
+    for (var sample : samples) {
+      sum += sample;
+    }
+    double sampleMean = sum / SAMPLES;
+    double squares = 0;
+    for (var sample : samples) {
+      squares += (sample - sampleMean) * (sample - sampleMean);
+    }
+    double sampleVariance = squares / (SAMPLES - 1);
+    double error = Math.sqrt(variance / SAMPLES);
+    assertEquals(mean, sampleMean, 5 * error, dist.toString());
+    // The variance of the sample variance depends on the fourth moment, allow 5 percent
+    assertEquals(variance, sampleVariance, 0.05 * variance, dist.toString());
+  }
+
+  private static Distribution get(String name, Double... params) {
+    return Distributions.getDistribution(name, List.of(params));
+  }
+
+  @Test
+  public void testMoments() {
+    assertMoments(get("Binomial", 20.0, 0.3), 6, 4.2);
+    assertMoments(get("Binomial", 10000.0, 0.7), 7000, 2100);
+    assertMoments(get("Exponential", 2.0), 0.5, 0.25);
+    assertMoments(get("Gamma", 3.0, 2.0), 6, 12);
+    assertMoments(get("Gamma", 0.5, 2.0), 1, 2);
+    double logVariance = 0.25;
+    assertMoments(
+        get("LogNormal", 1.0, 0.5),
+        Math.exp(1 + logVariance / 2),
+        (Math.exp(logVariance) - 1) * Math.exp(2 + logVariance));
+    assertMoments(get("Pareto", 2.0, 5.0), 2.5, 4 * 5 / (16.0 * 3));
+    assertMoments(get("Uniform", 1.0, 5.0), 3, 16 / 12.0);
+  }
+
+  @Test
+  public void testAttempts() {
+    // Bernoulli samples are attempts, either taking no time or failing with an infinite TTC
+    var samples = new double[SAMPLES];
+    get("Bernoulli", 0.3).fill(random(5), samples);
+    int successes = 0;
+    for (var sample : samples) {
+      if (sample == 0) {
+        successes++;
+      } else {
+        assertEquals(Double.MAX_VALUE, sample);
+      }
+    }
+    assertEquals(0.3, successes / (double) SAMPLES, 5 * Math.sqrt(0.21 / SAMPLES));
+    // Uncertain combinations are an attempt followed by an exponential
+    get("HardAndUncertain").fill(random(6), samples);
+    double sum = 0;
+    successes = 0;
+    for (var sample : samples) {
+      if (sample != Double.MAX_VALUE) {
+        sum += sample;
+        successes++;
+      }
+    }
+    assertEquals(0.5, successes / (double) SAMPLES, 5 * Math.sqrt(0.25 / SAMPLES));
+    assertEquals(10, sum / successes, 5 * Math.sqrt(100.0 / successes));
+    // The same TTC values as when sampled through a program
+    for (var dist : List.of(get("Bernoulli", 0.3), get("VeryHardAndUncertain"))) {
+      var program = TTCProgram.compile(new TTCFunc(dist));
+      var random = random(7);
+      var programRandom = random(7);
+      for (int i = 0; i < 100; i++) {
+        assertEquals(program.sample(programRandom), dist.sample(random), dist.toString());
+      }
+    }
+  }
+
+  @Test
+  public void testTruncatedNormal() {
+    // The normal density and upper tail at alpha = 2, the truncation point in standard units
+    double density = Math.exp(-2) / Math.sqrt(2 * Math.PI);
+    double tail = 0.022750131948179;
+    double ratio = density / tail;
+    // Truncated at 2 standard deviations above the mean, sampled far into the tail
+    assertMoments(
+        get("TruncatedNormal", -4.0, 2.0), -4 + 2 * ratio, 4 * (1 + 2 * ratio - ratio * ratio));
+    var samples = new double[SAMPLES];
+    get("TruncatedNormal", 1.0, 3.0).fill(random(2), samples);
+    for (var sample : samples) {
+      assertTrue(sample >= 0);
+    }
+  }
+
+  @Test
+  public void testConstants() {
+    var samples = new double[10];
+    get("Infinity").fill(random(3), samples);
+    for (var sample : samples) {
+      assertEquals(Double.MAX_VALUE, sample);
+    }
+    assertEquals(0, get("Zero").sample(random(3)));
+    assertEquals(1, get("Enabled").sample(random(3)));
+    assertEquals(0, get("Disabled").sample(random(3)));
+  }
+
+  @Test
+  public void testFillMatchesSample() {
+    for (var dist :
+        List.of(get("Binomial", 200.0, 0.4), get("Gamma", 0.7, 1.0), get("EasyAndUncertain"))) {
+      var filled = new double[100];
+      dist.fill(random(4), filled);
+      var sampled = new double[100];
+      var random = random(4);
+      for (int i = 0; i < sampled.length; i++) {
+        sampled[i] = dist.sample(random);
+      }
+      assertArrayEquals(sampled, filled, dist.toString());
+    }
+  }
+}
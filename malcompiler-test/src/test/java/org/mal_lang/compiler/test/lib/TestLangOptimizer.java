@@ -0,0 +1,67 @@
+/*
+ * Copyright 2019-2022 Foreseeti AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mal_lang.compiler.test.lib;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mal_lang.compiler.test.lib.AssertLang.assertGetLangClassPath;
+
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.mal_lang.compiler.lib.LangOptimizer;
+import org.mal_lang.compiler.test.MalTest;
+
+public class TestLangOptimizer extends MalTest {
+
+  @Test
+  public void testUnusedReverseVariable() {
+    var lang = assertGetLangClassPath("lang-optimizer/dead-variables.mal");
+    var report = LangOptimizer.optimize(lang);
+    // 'required' is only called from requires, which is never reversed
+    assertEquals(
+        List.of("Reverse variable 'reverserequiredHost' in asset 'Service' is never called"),
+        report);
+    var host = lang.getAsset("Host");
+    var service = lang.getAsset("Service");
+    assertEquals(Set.of("reachedHost", "requiredHost"), host.getVariables().keySet());
+    assertEquals(Set.of("reversereachedHost"), service.getReverseVariables().keySet());
+    assertTrue(LangOptimizer.optimize(lang).isEmpty());
+  }
+
+  @Test
+  public void testDanglingSteps() {
+    var lang = assertGetLangClassPath("lang-optimizer/dead-variables.mal");
+    var host = lang.getAsset("Host");
+    var service = lang.getAsset("Service");
+    service.removeAttackStep(service.getAttackStep("compromise"));
+    var report = LangOptimizer.optimize(lang);
+    assertEquals(
+        List.of(
+            "Reaches of 'Host.access' to a removed attack step",
+            "Variable 'reachedHost' in asset 'Host' is never called",
+            "Reverse variable 'reversereachedHost' in asset 'Service' is never called",
+            "Reverse variable 'reverserequiredHost' in asset 'Service' is never called"),
+        report);
+    assertTrue(host.getAttackStep("access").getReaches().isEmpty());
+    assertEquals(Set.of("requiredHost"), host.getVariables().keySet());
+  }
+
+  @Test
+  public void testNothingToEliminate() {
+    assertTrue(LangOptimizer.optimize(assertGetLangClassPath("generator/variable.mal")).isEmpty());
+  }
+}
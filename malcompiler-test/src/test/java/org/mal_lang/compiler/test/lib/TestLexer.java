@@ -24,6 +24,7 @@ import static org.mal_lang.compiler.test.lib.AssertToken.assertTokens;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import org.junit.jupiter.api.Test;
 import org.mal_lang.compiler.lib.CompilerException;
 import org.mal_lang.compiler.lib.Lexer;
@@ -184,4 +185,27 @@ public class TestLexer extends MalTest {
         new Position("bad-unicode-2.txt", 1, 1),
         "Unexpected token 0xC3");
   }
+
+  @Test
+  public void testLexerBuffer() throws IOException, CompilerException {
+    var file = assertGetFileClassPath("lexer/tokens.txt");
+    var fileTokens = new Lexer(file).readAll();
+    var bufferTokens = new Lexer(Files.readAllBytes(file.toPath()), "tokens.txt").readAll();
+    assertEquals(fileTokens.size(), bufferTokens.size());
+    for (int i = 0; i < fileTokens.size(); i++) {
+      assertEquals(fileTokens.get(i).toString(), bufferTokens.get(i).toString());
+    }
+    assertTrue(Lexer.syntacticallyEqual(new Lexer(bufferTokens), new Lexer(file)));
+  }
+
+  @Test
+  public void testLexerReplay() throws CompilerException {
+    var tokens = new Lexer("a // comment\nb".getBytes(), "replay").readAll();
+    assertEquals(3, tokens.size());
+    var lex = new Lexer(tokens);
+    assertEquals(tokens.get(0), lex.next());
+    assertEquals(tokens.get(1), lex.next());
+    assertEquals(TokenType.EOF, lex.next().type);
+    assertEquals(TokenType.EOF, lex.next().type);
+  }
 }
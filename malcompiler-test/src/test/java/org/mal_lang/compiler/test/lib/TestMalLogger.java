@@ -0,0 +1,52 @@
+/*
+ * Copyright 2019-2022 Foreseeti AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mal_lang.compiler.test.lib;
+
+import static org.junit.jupiter.api.Assertions.fail;
+
+import org.junit.jupiter.api.Test;
+import org.mal_lang.compiler.lib.MalLogger;
+import org.mal_lang.compiler.lib.Position;
+import org.mal_lang.compiler.test.MalTest;
+
+public class TestMalLogger extends MalTest {
+  @Test
+  public void testLazyDisabled() {
+    var LOGGER = new MalLogger("TEST", false, false);
+    var pos = new Position("test.mal", 1, 2);
+    LOGGER.debug(() -> fail("debug message built"));
+    LOGGER.debug(pos, () -> fail("debug message built"));
+    LOGGER.info(() -> fail("info message built"));
+    LOGGER.info(pos, () -> fail("info message built"));
+    LOGGER.debug("debug");
+    LOGGER.info("info");
+    LOGGER.warning(() -> "warning");
+    LOGGER.print();
+    assertEmptyOut();
+    assertErrLines(new String[] {"[TEST WARNING] warning", ""});
+  }
+
+  @Test
+  public void testLazyEnabled() {
+    var LOGGER = new MalLogger("TEST", true, true);
+    var pos = new Position("test.mal", 1, 2);
+    LOGGER.debug(() -> "debug");
+    LOGGER.info(pos, () -> "info");
+    LOGGER.print();
+    assertEmptyOut();
+    assertErrLines(new String[] {"[TEST DEBUG] debug", "[TEST INFO] <test.mal:1:2> info", ""});
+  }
+}
@@ -16,12 +16,17 @@
 package org.mal_lang.compiler.test.lib;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
 import static org.mal_lang.compiler.test.lib.AssertAST.assertAssociation;
 import static org.mal_lang.compiler.test.lib.AssertAST.assertCategory;
 import static org.mal_lang.compiler.test.lib.AssertAST.assertDefine;
 import static org.mal_lang.compiler.test.lib.AssertAST.assertEmptyAST;
 import static org.mal_lang.compiler.test.lib.AssertAST.assertGetASTClassPath;
 
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -29,6 +34,10 @@ import java.util.Optional;
 import org.junit.jupiter.api.Test;
 import org.mal_lang.compiler.lib.AST;
 import org.mal_lang.compiler.lib.AST.ID;
+import org.mal_lang.compiler.lib.CompilerException;
+import org.mal_lang.compiler.lib.Lexer;
+import org.mal_lang.compiler.lib.ParseCache;
+import org.mal_lang.compiler.lib.Parser;
 import org.mal_lang.compiler.lib.Position;
 import org.mal_lang.compiler.test.MalTest;
 
@@ -272,6 +281,80 @@ public class TestParser extends MalTest {
         defines.get(4));
   }
 
+  @Test
+  public void testIncludeCached() {
+    var expected = assertGetASTClassPath("parser/include.mal").toString();
+    var cache = new ParseCache();
+    try {
+      var file = getFileClassPath("parser/include.mal");
+      assertEquals(expected, Parser.parse(file, cache, false, false).toString());
+      assertEquals(4, cache.size());
+      assertEquals(expected, Parser.parse(file, cache, false, false).toString());
+      assertEquals(4, cache.size());
+      assertEquals(4, cache.getFiles(file).size());
+    } catch (IOException | URISyntaxException | CompilerException e) {
+      fail(e.getMessage());
+    }
+  }
+
+  @Test
+  public void testCachedEditSameStamp() {
+    var cache = new ParseCache();
+    try {
+      var file = new File(getNewTmpDir("parser"), "edit.mal");
+      Files.writeString(file.toPath(), "#a: \"x\"\n");
+      long lastModified = file.lastModified();
+      assertEquals("x", Parser.parse(file, cache, false, false).getDefines().get(0).value);
+      // Same length and modification time, but different contents
+      Files.writeString(file.toPath(), "#a: \"y\"\n");
+      file.setLastModified(lastModified);
+      assertEquals("y", Parser.parse(file, cache, false, false).getDefines().get(0).value);
+      assertEquals(1, cache.size());
+    } catch (IOException | CompilerException e) {
+      fail(e.getMessage());
+    }
+  }
+
+  @Test
+  public void testIncludeCachedAcrossDirectories() {
+    var cache = new ParseCache();
+    try {
+      // a/a.mal and b/b.mal are siblings, main.mal names the shared file differently
+      var dir = new File(getNewTmpDir("parser"));
+      var shared = new File(dir, "shared");
+      shared.mkdir();
+      Files.writeString(
+          new File(shared, "common.mal").toPath(),
+          Files.readString(getFileClassPath("parser/attacksteps.mal").toPath())
+              + Files.readString(getFileClassPath("parser/associations.mal").toPath()));
+      var specs = new ArrayList<File>();
+      for (var name : List.of("a", "b")) {
+        var subDir = new File(dir, name);
+        subDir.mkdir();
+        var spec = new File(subDir, String.format("%s.mal", name));
+        Files.writeString(spec.toPath(), "include \"../shared/common.mal\"\n");
+        specs.add(spec);
+      }
+      var main = new File(dir, "main.mal");
+      Files.writeString(main.toPath(), "include \"shared/common.mal\"\n");
+      specs.add(main);
+
+      for (var spec : specs) {
+        var expected = Parser.parse(spec).toString();
+        assertEquals(expected, Parser.parse(spec, cache, false, false).toString());
+      }
+      // The shared file is parsed once, not once per directory
+      assertEquals(4, cache.size());
+      for (var spec : specs) {
+        assertEquals(
+            Parser.parse(spec).toString(), Parser.parse(spec, cache, false, false).toString());
+      }
+      assertEquals(4, cache.size());
+    } catch (IOException | URISyntaxException | CompilerException e) {
+      fail(e.getMessage());
+    }
+  }
+
   @Test
   public void testAssets() {
     var ast = assertGetASTClassPath("parser/assets.mal");
@@ -1275,4 +1358,19 @@ public class TestParser extends MalTest {
     String ans = assertReadFileClassPath("parser/to-string.ans");
     assertEquals(ans, ast.toString());
   }
+
+  @Test
+  public void testParseSyntax() {
+    try {
+      var file = getFileClassPath("parser/categories.mal");
+      var lexer = new Lexer(Files.readAllBytes(file.toPath()), CATEGORIES_MAL);
+      assertEquals(Parser.parse(file).toString(), Parser.parseSyntax(lexer).toString());
+      // Includes are not resolved, so a missing file is not an error
+      file = getFileClassPath("parser/bad-include2.mal");
+      lexer = new Lexer(Files.readAllBytes(file.toPath()), "bad-include2.mal");
+      assertEmptyAST(Parser.parseSyntax(lexer));
+    } catch (IOException | URISyntaxException | CompilerException e) {
+      fail(e.getMessage());
+    }
+  }
 }
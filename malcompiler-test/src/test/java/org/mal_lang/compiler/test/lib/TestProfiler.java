@@ -0,0 +1,83 @@
+/*
+ * Copyright 2019-2022 Foreseeti AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mal_lang.compiler.test.lib;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import org.junit.jupiter.api.Test;
+import org.mal_lang.compiler.lib.AST;
+import org.mal_lang.compiler.lib.Analyzer;
+import org.mal_lang.compiler.lib.CompilerException;
+import org.mal_lang.compiler.lib.Parser;
+import org.mal_lang.compiler.lib.Profiler;
+import org.mal_lang.compiler.test.MalTest;
+
+public class TestProfiler extends MalTest {
+  @Test
+  public void testRecords() {
+    var profiler = new Profiler(true, true);
+    try {
+      var file = getFileClassPath("analyzer/complex.mal");
+      AST ast = profiler.measure("parser", () -> Parser.parse(file));
+      assertNotNull(ast);
+      profiler.run("analyzer", () -> Analyzer.analyze(ast));
+    } catch (IOException | URISyntaxException | CompilerException e) {
+      fail(e.getMessage());
+    }
+    var records = profiler.getRecords();
+    assertEquals(2, records.size());
+    assertEquals("parser", records.get(0).stage);
+    assertEquals("analyzer", records.get(1).stage);
+    for (var record : records) {
+      assertTrue(record.wallNanos > 0);
+      assertTrue(record.retainedBytes >= 0);
+    }
+    assertTrue(profiler.toTable().startsWith("Stage"));
+    assertTrue(profiler.toJson().startsWith("{\"stages\":[{\"stage\":\"parser\","));
+  }
+
+  @Test
+  public void testDisabled() {
+    var profiler = new Profiler();
+    try {
+      assertEquals(1, (int) profiler.measure("stage", () -> 1));
+    } catch (IOException | CompilerException e) {
+      fail(e.getMessage());
+    }
+    assertTrue(profiler.getRecords().isEmpty());
+    assertEquals("{\"stages\":[]}", profiler.toJson());
+  }
+
+  @Test
+  public void testRetainedOptIn() {
+    var profiler = new Profiler(true, false);
+    try {
+      profiler.run("a \"quoted\"\nstage", () -> {});
+    } catch (IOException | CompilerException e) {
+      fail(e.getMessage());
+    }
+    var record = profiler.getRecords().get(0);
+    assertTrue(record.wallNanos >= 0);
+    assertEquals(-1, record.retainedBytes);
+    var expected = "{\"stages\":[{\"stage\":\"a \\\"quoted\\\"\\nstage\",";
+    assertTrue(profiler.toJson().startsWith(expected));
+  }
+}
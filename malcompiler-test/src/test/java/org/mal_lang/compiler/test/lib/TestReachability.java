@@ -0,0 +1,89 @@
+/*
+ * Copyright 2019-2022 Foreseeti AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mal_lang.compiler.test.lib;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mal_lang.compiler.test.lib.AssertLang.assertGetLangClassPath;
+
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.mal_lang.compiler.lib.Lang;
+import org.mal_lang.compiler.lib.Lang.AttackStep;
+import org.mal_lang.compiler.lib.Reachability;
+import org.mal_lang.compiler.test.MalTest;
+
+public class TestReachability extends MalTest {
+
+  private static AttackStep step(Lang lang, String asset, String attackStep) {
+    return lang.getAsset(asset).getAttackSteps().get(attackStep);
+  }
+
+  @Test
+  public void testReachability() {
+    var lang = assertGetLangClassPath("reachability/reachability.mal");
+    var reachability = Reachability.of(lang);
+    var entry = step(lang, "Host", "entry");
+    var cycle1 = step(lang, "Host", "cycle1");
+    var cycle2 = step(lang, "Host", "cycle2");
+    var isolated = step(lang, "Host", "isolated");
+    var x = step(lang, "Service", "x");
+    var y = step(lang, "Service", "y");
+    var subY = step(lang, "SubService", "y");
+    var z = step(lang, "SubService", "z");
+
+    // Reaching Service.y also reaches its override, which inherits the reaches of Service.y
+    assertEquals(Set.of(entry, x, y, subY, z), reachability.getReachable(entry));
+    assertTrue(reachability.canReach(entry, z));
+    assertFalse(reachability.canReach(z, entry));
+    assertFalse(reachability.canReach(y, z));
+    assertTrue(reachability.canReach(cycle1, cycle2));
+    assertTrue(reachability.canReach(cycle2, cycle1));
+    assertTrue(reachability.canReach(isolated, isolated));
+    assertFalse(reachability.canReach(entry, cycle1));
+
+    assertEquals(Set.of(entry, isolated), reachability.getEntrySteps());
+    assertEquals(Set.of(entry, isolated, x, y, subY, z), reachability.getEntryReachable());
+    assertFalse(reachability.isEntryReachable(cycle1));
+    assertTrue(reachability.isEntryReachable(z));
+  }
+
+  @Test
+  public void testClosure() {
+    // The closure must agree with a plain search over the successors
+    var reachability = Reachability.of(assertGetLangClassPath("vehiclelang/vehicleLang.mal"));
+    for (var from : reachability.getAttackSteps()) {
+      var expected = new HashSet<AttackStep>();
+      var queue = new ArrayDeque<AttackStep>();
+      expected.add(from);
+      queue.add(from);
+      while (!queue.isEmpty()) {
+        for (var next : reachability.getSuccessors(queue.remove())) {
+          if (expected.add(next)) {
+            queue.add(next);
+          }
+        }
+      }
+      assertEquals(expected, reachability.getReachable(from));
+      for (var to : reachability.getAttackSteps()) {
+        assertEquals(expected.contains(to), reachability.canReach(from, to));
+      }
+    }
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2019-2022 Foreseeti AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mal_lang.compiler.test.lib;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import core.Attacker;
+import java.util.List;
+import java.util.SplittableRandom;
+import org.junit.jupiter.api.Test;
+import org.mal_lang.compiler.lib.Distributions;
+import org.mal_lang.compiler.lib.Distributions.RandomSource;
+import org.mal_lang.compiler.lib.Lang.TTCAdd;
+import org.mal_lang.compiler.lib.Lang.TTCDiv;
+import org.mal_lang.compiler.lib.Lang.TTCExpr;
+import org.mal_lang.compiler.lib.Lang.TTCFunc;
+import org.mal_lang.compiler.lib.Lang.TTCMul;
+import org.mal_lang.compiler.lib.Lang.TTCNum;
+import org.mal_lang.compiler.lib.Lang.TTCPow;
+import org.mal_lang.compiler.lib.Lang.TTCSub;
+import org.mal_lang.compiler.lib.TTCProgram;
+import org.mal_lang.compiler.test.MalTest;
+
+public class TestTTCProgram extends MalTest {
+  private static final int SAMPLES = 100000;
+
+  private static RandomSource random(long seed) {
+    return new SplittableRandom(seed)::nextLong;
+  }
+
+  private static TTCExpr func(String name, Double... params) {
+    return new TTCFunc(Distributions.getDistribution(name, List.of(params)));
+  }
+
+  private static TTCExpr num(double value) {
+    return new TTCNum(value);
+  }
+
+  @Test
+  public void testConstantFolding() {
+    var program =
+        TTCProgram.compile(
+            new TTCAdd(new TTCMul(num(2), num(3)), new TTCPow(num(2), new TTCSub(num(5), num(2)))));
+    assertTrue(program.isConstant());
+    assertEquals("14.0", program.toString());
+    assertEquals(14, program.getMean());
+    assertEquals(14, program.sample(random(1)));
+
+    program = TTCProgram.compile(new TTCMul(func("Infinity"), num(2)));
+    assertEquals("Infinity", program.toString());
+    assertEquals(Double.MAX_VALUE, program.getMean());
+
+    program =
+        TTCProgram.compile(
+            new TTCAdd(
+                new TTCMul(num(1), func("Exponential", 0.1)), new TTCDiv(num(0), num(4))));
+    assertEquals(1, program.size());
+    assertEquals("Exponential(0.100000)", program.toString());
+  }
+
+  @Test
+  public void testPostfix() {
+    var program =
+        TTCProgram.compile(
+            new TTCAdd(
+                new TTCMul(func("Exponential", 0.5), new TTCAdd(num(1), num(2))),
+                func("Uniform", 1.0, 3.0)));
+    assertFalse(program.isConstant());
+    assertEquals("Exponential(0.500000) 3.0 * Uniform(1.000000, 3.000000) +", program.toString());
+    assertEquals(5, program.size());
+    assertEquals(2, program.getStackSize());
+    assertEquals(8, program.getMean());
+  }
+
+  @Test
+  public void testAttempts() {
+    // Multiplying by an attempt makes the other operand possible with its probability
+    var program = TTCProgram.compile(new TTCMul(func("Bernoulli", 0.3), func("Exponential", 1.0)));
+    assertEquals("Bernoulli(0.300000) Exponential(1.000000) +", program.toString());
+    assertEquals(Double.MAX_VALUE, program.getMean());
+    var samples = new double[SAMPLES];
+    program.fill(random(2), samples);
+    int possible = 0;
+    for (var sample : samples) {
+      assertTrue(sample >= 0);
+      if (sample < Double.MAX_VALUE) {
+        possible++;
+      }
+    }
+    assertEquals(0.3, possible / (double) SAMPLES, 0.01);
+
+    program = TTCProgram.compile(new TTCMul(func("Exponential", 1.0), func("EasyAndUncertain")));
+    assertEquals(1, program.getMean());
+    assertEquals(
+        "Bernoulli(0.500000) Exponential(0.100000) +",
+        TTCProgram.compile(func("HardAndUncertain")).toString());
+    assertEquals("0.0", TTCProgram.compile(func("Bernoulli", 1.0)).toString());
+  }
+
+  @Test
+  public void testSampleMean() {
+    var program =
+        TTCProgram.compile(
+            new TTCSub(
+                new TTCAdd(func("Exponential", 2.0), func("Gamma", 3.0, 2.0)), num(1)));
+    var stack = new double[program.getStackSize()];
+    var random = random(3);
+    double sum = 0;
+    for (int i = 0; i < SAMPLES; i++) {
+      var sample = program.sample(random, stack);
+      assertTrue(sample >= 0);
+      sum += sample;
+    }
+    // Samples below zero are clamped, which only happens with a very small probability here
+    assertEquals(program.getMean(), sum / SAMPLES, 0.05);
+    assertEquals(5.5, program.getMean());
+  }
+
+  @Test
+  public void testRuntimeAgrees() {
+    var exprs =
+        List.of(
+            func("Exponential", 0.1),
+            func("HardAndUncertain"),
+            new TTCMul(func("Bernoulli", 0.7), func("Uniform", 1.0, 5.0)),
+            new TTCSub(func("Binomial", 10.0, 0.3), num(5)),
+            new TTCDiv(new TTCPow(func("Exponential", 0.5), num(2)), num(1e-5)));
+    for (var expr : exprs) {
+      var program = TTCProgram.compile(expr);
+      assertEquals(
+          program.getMean(),
+          Attacker.parseDistribution(program.toString(), false),
+          program.toString());
+    }
+  }
+}
@@ -1,9 +1,19 @@
 package org.mal_lang.compiler.test.lib.d3;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 import static org.mal_lang.compiler.test.lib.AssertLang.assertGetLangClassPath;
 
-import java.io.FileNotFoundException;
+import jakarta.json.Json;
+import jakarta.json.JsonObject;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.Map;
 import org.junit.jupiter.api.Test;
 import org.mal_lang.compiler.lib.CompilerException;
@@ -11,13 +21,19 @@ import org.mal_lang.compiler.test.MalTest;
 
 public class TestD3Generator extends MalTest {
 
-  public void generate(String resource) {
-    var path = getNewTmpDir("d3");
+  public String generate(String resource) {
+    return generate(resource, getNewTmpDir("d3"), "false");
+  }
+
+  public String generate(String resource, String path, String split) {
     var lang = assertGetLangClassPath(resource);
     try {
-      org.mal_lang.compiler.lib.d3.Generator.generate(lang, Map.of("path", path));
-    } catch (FileNotFoundException | CompilerException e) {
+      org.mal_lang.compiler.lib.d3.Generator.generate(lang, Map.of("path", path, "split", split));
+      var output = new File(path, String.format("visualization.%s.html", lang.getDefine("id")));
+      return Files.readString(output.toPath(), StandardCharsets.UTF_8);
+    } catch (IOException | CompilerException e) {
       fail(e);
+      return null;
     }
   }
 
@@ -35,4 +51,57 @@ public class TestD3Generator extends MalTest {
   public void testComplex() {
     generate("analyzer/complex.mal");
   }
+
+  private static JsonObject getJson(String html, String prefix) {
+    assertFalse(html.contains("{{NAME}}"));
+    assertFalse(html.contains("{{JSON}}"));
+    var start = html.indexOf(prefix) + prefix.length();
+    var end = html.lastIndexOf(";", html.indexOf(System.lineSeparator(), start));
+    return Json.createReader(new StringReader(html.substring(start, end))).readObject();
+  }
+
+  @Test
+  public void testStreamedJson() {
+    var root = getJson(generate("analyzer/complex.mal"), "root = ");
+    var assets = root.getJsonArray("children");
+    assertEquals(
+        assertGetLangClassPath("analyzer/complex.mal").getAssets().size(), assets.size());
+  }
+
+  @Test
+  public void testSplit() throws IOException {
+    var path = getNewTmpDir("d3");
+    var lang = assertGetLangClassPath("vehiclelang/vehicleLang.mal");
+    var overview = getJson(generate("vehiclelang/vehicleLang.mal", path, "true"), "overview = ");
+    var categories = overview.getJsonArray("categories");
+    assertEquals(lang.getCategories().size(), categories.size());
+    for (var category : categories.getValuesAs(JsonObject.class)) {
+      var chunk = Files.readString(new File(path, category.getString("chunk")).toPath()).strip();
+      assertTrue(chunk.startsWith("loadChunk(") && chunk.endsWith(");"));
+      var json = chunk.substring("loadChunk(".length(), chunk.length() - ");".length());
+      var assets = Json.createReader(new StringReader(json)).readObject();
+      assertEquals(category.getString("name"), assets.getString("name"));
+      assertEquals(
+          category.getJsonArray("assets").size(), assets.getJsonArray("children").size());
+    }
+    for (var edge : overview.getJsonArray("asset_edges").getValuesAs(JsonObject.class)) {
+      assertTrue(edge.getInt("count") > 0);
+      assertNotEquals(edge.getString("source"), edge.getString("target"));
+    }
+    assertFalse(overview.getJsonArray("category_edges").isEmpty());
+  }
+
+  @Test
+  public void testBadSplit() {
+    var lang = assertGetLangClassPath("analyzer/complex.mal");
+    try {
+      org.mal_lang.compiler.lib.d3.Generator.generate(
+          lang, Map.of("path", getNewTmpDir("d3"), "split", "a"));
+      fail("Expected CompilerException");
+    } catch (IOException e) {
+      fail(e);
+    } catch (CompilerException e) {
+      // Expected
+    }
+  }
 }
@@ -18,11 +18,15 @@ package org.mal_lang.compiler.test.lib.reference;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mal_lang.compiler.test.lib.AssertLang.assertGetLangClassPath;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
@@ -106,7 +110,7 @@ public class TestReferenceGenerator extends JavaGeneratorTest {
     assertTrue(coreDir.exists(), String.format("%s does not exist", corePath));
     assertTrue(coreDir.isDirectory(), String.format("%s is not a directory", corePath));
     var coreFiles = coreDir.listFiles();
-    assertEquals(6, coreFiles.length, String.format("%s should contain 6 files", corePath));
+    assertEquals(9, coreFiles.length, String.format("%s should contain 9 files", corePath));
     var coreFilesList =
         List.of(
             "Asset.java",
@@ -114,7 +118,10 @@ public class TestReferenceGenerator extends JavaGeneratorTest {
             "AttackStep.java",
             "AttackStepMax.java",
             "AttackStepMin.java",
-            "Defense.java");
+            "Defense.java",
+            "IndexedList.java",
+            "Profile.java",
+            "Validator.java");
     var coreFilesMap = new HashMap<String, Boolean>();
     for (var coreFile : coreFilesList) {
       coreFilesMap.put(coreFile, Boolean.FALSE);
@@ -252,11 +259,42 @@ public class TestReferenceGenerator extends JavaGeneratorTest {
   }
 
   @Test
-  public void testComplexNotGenerated() {
-    String[] expectedErrors = {
-      "[GENERATOR ERROR] Advanced TTC, used at Computer.bypassFirewall, is not supported", ""
-    };
-    assertLangNotGenerated("analyzer/complex.mal", expectedErrors);
+  public void testComplexGenerated() throws IOException {
+    assertLangGenerated("analyzer/complex.mal");
+    // Advanced TTC is written to the profile as a postfix program
+    var outDir = getNewTmpDir("test-reference-generator");
+    var lang = assertGetLangClassPath("analyzer/complex.mal");
+    resetTestSystem();
+    assertGeneratorOK(lang, Map.of("path", outDir));
+    var profile = new Properties();
+    try (var in = new FileInputStream(new File(outDir, "attackerProfile.ttc"))) {
+      profile.load(in);
+    }
+    assertEquals(
+        "Exponential(0.050000) Gamma(1.200000, 1.700000) *",
+        profile.getProperty("Computer.bypassFirewall"));
+  }
+
+  @Test
+  public void testProfile() throws IOException {
+    var outDir = getNewTmpDir("test-reference-generator");
+    var lang = assertGetLangClassPath("generator/profile.mal");
+    resetTestSystem();
+    assertGeneratorOK(lang, Map.of("path", outDir));
+    var profile = new Properties();
+    try (var in = new FileInputStream(new File(outDir, "attackerProfile.ttc"))) {
+      profile.load(in);
+    }
+    // A single distribution is written by name, only advanced TTC is a postfix program
+    assertEquals("EasyAndCertain", profile.getProperty("Alpha.easy"));
+    assertEquals("HardAndUncertain", profile.getProperty("Alpha.hard"));
+    assertEquals("Zero", profile.getProperty("Alpha.zero"));
+    assertEquals("Bernoulli(1.000000)", profile.getProperty("Alpha.certain"));
+    assertEquals("Exponential(0.500000)", profile.getProperty("Alpha.exponential"));
+    assertEquals(
+        "Bernoulli(0.500000) Exponential(0.100000) +", profile.getProperty("Alpha.advanced"));
+    assertEquals("Bernoulli(0.200000)", profile.getProperty("Alpha.defended"));
+    assertEquals(7, profile.size());
   }
 
   @Test
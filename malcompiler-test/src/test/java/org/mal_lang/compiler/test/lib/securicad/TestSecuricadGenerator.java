@@ -19,8 +19,13 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
+import static org.mal_lang.compiler.test.lib.AssertLang.assertGetLangClassPath;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Base64;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
@@ -96,6 +101,47 @@ public class TestSecuricadGenerator extends JavaGeneratorTest {
     assertGeneratorErrors(lang, args, expectedErrors);
   }
 
+  private void assertIconCacheRelative(Lang lang, Map<String, String> args) {
+    String[] expectedErrors = {
+      "[GENERATOR ERROR] Argument 'iconCache' must be an absolute path", ""
+    };
+    assertGeneratorErrors(lang, args, expectedErrors);
+  }
+
+  private void assertIconCacheFile(Lang lang, Map<String, String> args) {
+    String[] expectedErrors = {
+      "[GENERATOR ERROR] Argument 'iconCache' is a file but must be a directory", ""
+    };
+    assertGeneratorErrors(lang, args, expectedErrors);
+  }
+
+  private void writeIcon(File icons, String asset, String color) throws IOException {
+    Files.writeString(
+        new File(icons, String.format("%s.svg", asset)).toPath(),
+        String.format(
+            "<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"48\" height=\"48\">"
+                + "<rect width=\"48\" height=\"48\" fill=\"%s\"/></svg>",
+            color));
+  }
+
+  private String assertIconsGenerated(Lang lang, File icons, File iconCache) {
+    var outDir = getNewTmpDir("test-securicad-generator");
+    assertGeneratorOK(
+        lang,
+        Map.of(
+            "path",
+            outDir,
+            "icons",
+            icons.getAbsolutePath(),
+            "iconCache",
+            iconCache.getAbsolutePath()));
+    return outDir;
+  }
+
+  private String readAsset(String outDir, String asset) throws IOException {
+    return Files.readString(new File(outDir, String.format("lang/%s.java", asset)).toPath());
+  }
+
   private void assertMockFilesPresent(File dir, String[] files) {
     if (!dir.isDirectory()) {
       fail(String.format("%s is not a directory", dir.getPath()));
@@ -335,6 +381,64 @@ public class TestSecuricadGenerator extends JavaGeneratorTest {
             getNewTmpDir("test-securicad-generator")));
   }
 
+  @Test
+  public void testBadIconCache() {
+    // Relative iconCache
+    assertIconCacheRelative(
+        null, Map.of("path", getNewTmpDir("test-securicad-generator"), "iconCache", "a"));
+    resetTestSystem();
+    assertIconCacheRelative(
+        null, Map.of("path", getNewTmpDir("test-securicad-generator"), "iconCache", "a/b"));
+    resetTestSystem();
+    // File iconCache
+    var bledFile = assertGetFileClassPath("bled/bled.mal");
+    assertIconCacheFile(
+        null,
+        Map.of(
+            "path",
+            getNewTmpDir("test-securicad-generator"),
+            "iconCache",
+            bledFile.getAbsolutePath()));
+  }
+
+  @Test
+  public void testIconCache() {
+    var lang = assertGetLangClassPath("generator/debug-step.mal");
+    resetTestSystem();
+    try {
+      var icons = new File(getNewTmpDir("test-securicad-generator"));
+      var iconCache = new File(getNewTmpDir("test-securicad-generator"), "cache");
+      writeIcon(icons, "Alpha", "red");
+      writeIcon(icons, "Charlie", "red");
+      // Miss: identical icons are rendered once and kept
+      var outDir = assertIconsGenerated(lang, icons, iconCache);
+      var entries = iconCache.listFiles();
+      assertEquals(1, entries.length);
+      var rendered = Base64.getEncoder().encodeToString(Files.readAllBytes(entries[0].toPath()));
+      assertTrue(readAsset(outDir, "Alpha").contains(rendered));
+      assertTrue(readAsset(outDir, "Charlie").contains(rendered));
+      // Hit: the kept rendering is used without rendering the icon again
+      Files.writeString(entries[0].toPath(), "cached");
+      var cached =
+          String.format(
+              "data:image/png;base64,%s",
+              Base64.getEncoder().encodeToString("cached".getBytes(StandardCharsets.UTF_8)));
+      resetTestSystem();
+      outDir = assertIconsGenerated(lang, icons, iconCache);
+      assertTrue(readAsset(outDir, "Alpha").contains(cached));
+      assertTrue(readAsset(outDir, "Charlie").contains(cached));
+      // Changed icon: renderings are keyed on the contents of the icon
+      writeIcon(icons, "Alpha", "blue");
+      resetTestSystem();
+      outDir = assertIconsGenerated(lang, icons, iconCache);
+      assertEquals(2, iconCache.listFiles().length);
+      assertFalse(readAsset(outDir, "Alpha").contains(cached));
+      assertTrue(readAsset(outDir, "Charlie").contains(cached));
+    } catch (IOException e) {
+      fail(e.getMessage());
+    }
+  }
+
   @Test
   public void testBadMock() {
     removedArgs = Set.of("mock");
@@ -472,6 +576,41 @@ public class TestSecuricadGenerator extends JavaGeneratorTest {
     assertLangGenerated("generator/variable.mal");
   }
 
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testGraphCache() {
+    var classLoader = assertLoadLang(assertLangGenerated("generator/variable.mal"));
+    try {
+      var alphaClass = classLoader.loadClass("lang.Alpha");
+      var bravoClass = classLoader.loadClass("lang.Bravo");
+      var alpha1 = alphaClass.getConstructor().newInstance();
+      var alpha2 = alphaClass.getConstructor().newInstance();
+      var bravo = bravoClass.getConstructor().newInstance();
+      ((Set<Object>) alphaClass.getField("bravos").get(alpha1)).add(bravo);
+      var bravoAlphas = (Set<Object>) bravoClass.getField("alphas").get(bravo);
+      bravoAlphas.add(alpha1);
+      var read1 = alphaClass.getField("read").get(alpha1);
+      var read2 = alphaClass.getField("read").get(alpha2);
+      var getChildren = read1.getClass().getMethod("getAttackStepChildren");
+      var clearGraphCache = alphaClass.getMethod("clearGraphCache");
+      assertEquals(Set.of(read1), getChildren.invoke(read1));
+      // Caches are kept until the asset holding them is cleared
+      bravoAlphas.add(alpha2);
+      assertEquals(Set.of(read1), getChildren.invoke(read1));
+      clearGraphCache.invoke(alpha2);
+      assertEquals(Set.of(read1), getChildren.invoke(read1));
+      // The variable is cached by bravo, and still holds only alpha1
+      clearGraphCache.invoke(alpha1);
+      assertEquals(Set.of(read1), getChildren.invoke(read1));
+      bravoClass.getMethod("clearGraphCache").invoke(bravo);
+      assertEquals(Set.of(read1), getChildren.invoke(read1));
+      clearGraphCache.invoke(alpha1);
+      assertEquals(Set.of(read1, read2), getChildren.invoke(read1));
+    } catch (ReflectiveOperationException e) {
+      fail(e.getMessage());
+    }
+  }
+
   @Test
   public void testNested() {
     assertLangGenerated("generator/nested.mal");
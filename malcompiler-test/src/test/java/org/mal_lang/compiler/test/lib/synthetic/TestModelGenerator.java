@@ -0,0 +1,228 @@
+/*
+ * Copyright 2019-2022 Foreseeti AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mal_lang.compiler.test.lib.synthetic;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import core.Asset;
+import core.AttackStep;
+import core.Defense;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mal_lang.compiler.lib.Analyzer;
+import org.mal_lang.compiler.lib.CompilerException;
+import org.mal_lang.compiler.lib.Lang;
+import org.mal_lang.compiler.lib.LangConverter;
+import org.mal_lang.compiler.lib.Parser;
+import org.mal_lang.compiler.lib.synthetic.ModelGenerator;
+import org.mal_lang.compiler.lib.synthetic.ModelGenerator.Model;
+import org.mal_lang.compiler.lib.synthetic.ModelGenerator.Topology;
+import org.mal_lang.compiler.lib.synthetic.SpecGenerator;
+import org.mal_lang.compiler.test.MalTest;
+import org.mal_lang.compiler.test.lib.AssertLang;
+import vehicle.AssetFactory;
+
+public class TestModelGenerator extends MalTest {
+  private static final String VEHICLE_LANG = "vehiclelang/vehicleLang.mal";
+
+  @AfterEach
+  public void clearModel() {
+    Asset.allAssets.clear();
+    AttackStep.allAttackSteps.clear();
+    Defense.allDefenses.clear();
+  }
+
+  private static Model assertGenerate(Lang lang, ModelGenerator.Options opts) {
+    try {
+      return ModelGenerator.generate(lang, opts);
+    } catch (CompilerException e) {
+      throw new AssertionError(e.getMessage());
+    }
+  }
+
+  private static Lang.Field getField(Lang lang, String type, String name) {
+    for (var asset = lang.getAssets().get(type); asset != null; asset = asset.getSuperAsset()) {
+      var field = asset.getFields().get(name);
+      if (field != null) {
+        return field;
+      }
+    }
+    throw new AssertionError(String.format("%s has no field %s", type, name));
+  }
+
+  private static boolean isSubtype(Lang.Asset asset, Lang.Asset parent) {
+    for (; asset != null; asset = asset.getSuperAsset()) {
+      if (asset == parent) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Asserts that every association fits the language and respects the maximum multiplicities, and
+   * optionally the minimum multiplicities.
+   */
+  private static void assertValid(Lang lang, Model model, boolean minimums) {
+    var counts = new HashMap<String, Integer>();
+    for (int i = 0; i < model.getAssociationCount(); i++) {
+      int from = model.getFrom(i);
+      int to = model.getTo(i);
+      assertNotEquals(from, to);
+      var field = getField(lang, model.getType(from), model.getField(i));
+      var toAsset = lang.getAssets().get(model.getType(to));
+      assertTrue(isSubtype(toAsset, field.getTarget().getAsset()));
+      counts.merge(String.format("%d.%s", from, field.getName()), 1, Integer::sum);
+      counts.merge(String.format("%d.%s", to, field.getTarget().getName()), 1, Integer::sum);
+    }
+    long attackSteps = 0;
+    for (int i = 0; i < model.getInstanceCount(); i++) {
+      var asset = lang.getAssets().get(model.getType(i));
+      assertFalse(asset.isAbstract(), String.format("%s is abstract", asset.getName()));
+      var steps = new HashSet<String>();
+      for (var type = asset; type != null; type = type.getSuperAsset()) {
+        steps.addAll(type.getAttackSteps().keySet());
+        for (var field : type.getFields().values()) {
+          int count = counts.getOrDefault(String.format("%d.%s", i, field.getName()), 0);
+          var message = String.format("%s.%s", model.getName(i), field.getName());
+          assertTrue(count <= field.getMax(), message);
+          assertTrue(!minimums || count >= field.getMin(), message);
+        }
+      }
+      attackSteps += steps.size();
+    }
+    assertEquals(attackSteps, model.getAttackSteps());
+  }
+
+  private static List<String> describe(Model model) {
+    var description = new ArrayList<String>();
+    for (int i = 0; i < model.getInstanceCount(); i++) {
+      description.add(model.getName(i));
+    }
+    for (int i = 0; i < model.getAssociationCount(); i++) {
+      description.add(
+          String.format("%d.%s=%d", model.getFrom(i), model.getField(i), model.getTo(i)));
+    }
+    return description;
+  }
+
+  @Test
+  public void testTopologies() {
+    var lang = AssertLang.assertGetLangClassPath(VEHICLE_LANG);
+    for (var topology : Topology.values()) {
+      var opts = new ModelGenerator.Options();
+      opts.topology = topology;
+      opts.attackSteps = 5000;
+      var model = assertGenerate(lang, opts);
+      assertTrue(model.getAttackSteps() >= opts.attackSteps, topology.toString());
+      assertTrue(model.getAssociationCount() >= model.getInstanceCount() / 2, topology.toString());
+      assertValid(lang, model, true);
+    }
+  }
+
+  @Test
+  public void testSyntheticLang() {
+    var specOpts = new SpecGenerator.Options();
+    specOpts.assets = 50;
+    Lang lang;
+    try {
+      var files = SpecGenerator.generate(specOpts, new File(getNewTmpDir("test-model-generator")));
+      var ast = Parser.parse(files.get(0));
+      Analyzer.analyze(ast);
+      lang = LangConverter.convert(ast);
+    } catch (IOException | CompilerException e) {
+      throw new AssertionError(e.getMessage());
+    }
+    for (var topology : Topology.values()) {
+      var opts = new ModelGenerator.Options();
+      opts.topology = topology;
+      opts.degree = 3;
+      opts.attackSteps = 2000;
+      // Random languages may require infinite chains of associations, so minimums are best effort
+      assertValid(lang, assertGenerate(lang, opts), false);
+    }
+  }
+
+  @Test
+  public void testSeed() {
+    var lang = AssertLang.assertGetLangClassPath(VEHICLE_LANG);
+    var opts = new ModelGenerator.Options();
+    var first = describe(assertGenerate(lang, opts));
+    assertEquals(first, describe(assertGenerate(lang, opts)));
+    opts.seed = 1;
+    assertNotEquals(first, describe(assertGenerate(lang, opts)));
+  }
+
+  @Test
+  public void testBuild() {
+    var lang = AssertLang.assertGetLangClassPath(VEHICLE_LANG);
+    var opts = new ModelGenerator.Options();
+    opts.attackSteps = 2000;
+    var model = assertGenerate(lang, opts);
+    var assets = model.build(AssetFactory::create, Asset::link);
+    assertEquals(model.getInstanceCount(), assets.size());
+    assertEquals(model.getInstanceCount(), Asset.allAssets.size());
+    for (int i = 0; i < assets.size(); i++) {
+      var asset = assets.get(i);
+      assertEquals(model.getName(i), asset.name);
+      assertEquals("vehicle." + model.getType(i), asset.getClass().getName());
+    }
+    for (int i = 0; i < model.getAssociationCount(); i++) {
+      var from = assets.get(model.getFrom(i));
+      var type = lang.getAssets().get(model.getType(model.getFrom(i)));
+      // Generated assets only list the associated assets of the fields they declare themselves
+      if (type.getFields().containsKey(model.getField(i))) {
+        var associated = from.getAssociatedAssets(model.getField(i));
+        assertTrue(associated.contains(assets.get(model.getTo(i))));
+      }
+    }
+  }
+
+  @Test
+  public void testFactoryErrors() {
+    assertThrows(IllegalArgumentException.class, () -> AssetFactory.create("Missing", "missing"));
+    var lang = AssertLang.assertGetLangClassPath(VEHICLE_LANG);
+    for (var asset : lang.getAssets().values()) {
+      if (asset.isAbstract()) {
+        var name = asset.getName();
+        assertThrows(IllegalArgumentException.class, () -> AssetFactory.create(name, "abstract"));
+      }
+    }
+    var ecu = AssetFactory.create("ECU", "ecu");
+    assertThrows(IllegalArgumentException.class, () -> ecu.link("missing", ecu));
+  }
+
+  @Test
+  public void testInvalidOptions() {
+    var lang = AssertLang.assertGetLangClassPath(VEHICLE_LANG);
+    var opts = new ModelGenerator.Options();
+    opts.attackSteps = 0;
+    assertThrows(CompilerException.class, () -> ModelGenerator.generate(lang, opts));
+    opts.attackSteps = 10;
+    opts.degree = 0;
+    assertThrows(CompilerException.class, () -> ModelGenerator.generate(lang, opts));
+  }
+}
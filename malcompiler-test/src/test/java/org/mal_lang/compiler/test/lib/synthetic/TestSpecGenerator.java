@@ -0,0 +1,119 @@
+/*
+ * Copyright 2019-2022 Foreseeti AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mal_lang.compiler.test.lib.synthetic;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.File;
+import java.io.IOException;
+import org.junit.jupiter.api.Test;
+import org.mal_lang.compiler.lib.Analyzer;
+import org.mal_lang.compiler.lib.CompilerException;
+import org.mal_lang.compiler.lib.Lang;
+import org.mal_lang.compiler.lib.LangConverter;
+import org.mal_lang.compiler.lib.Parser;
+import org.mal_lang.compiler.lib.synthetic.SpecGenerator;
+import org.mal_lang.compiler.test.MalTest;
+
+public class TestSpecGenerator extends MalTest {
+  private Lang assertCompile(SpecGenerator.Options opts) {
+    try {
+      var files = SpecGenerator.generate(opts, new File(getNewTmpDir("test-spec-generator")));
+      assertEquals(opts.includes + 1, files.size());
+      var ast = Parser.parse(files.get(0));
+      Analyzer.analyze(ast);
+      return LangConverter.convert(ast);
+    } catch (IOException | CompilerException e) {
+      failPrintOutErr(e.getMessage());
+    }
+    throw new RuntimeException("This should be unreachable");
+  }
+
+  @Test
+  public void testDefault() {
+    var opts = new SpecGenerator.Options();
+    var lang = assertCompile(opts);
+    assertEquals(opts.assets, lang.getAssets().size());
+    assertEquals("org.mal_lang.synthetic", lang.getDefines().get("id"));
+  }
+
+  @Test
+  public void testKnobs() {
+    var opts = new SpecGenerator.Options();
+    opts.assets = 200;
+    opts.categories = 7;
+    opts.includes = 3;
+    opts.inheritanceDepth = 4;
+    opts.associations = 3;
+    opts.steps = 6;
+    opts.fanOut = 4;
+    opts.transitiveDensity = 0.5;
+    opts.setOperatorDensity = 0.5;
+    opts.variables = 2;
+    for (long seed = 0; seed < 5; seed++) {
+      opts.seed = seed;
+      var lang = assertCompile(opts);
+      assertEquals(opts.assets, lang.getAssets().size());
+      assertEquals(opts.categories, lang.getCategories().size());
+      for (var asset : lang.getAssets().values()) {
+        assertTrue(asset.getAttackSteps().size() >= opts.steps);
+      }
+    }
+  }
+
+  @Test
+  public void testMinimal() {
+    var opts = new SpecGenerator.Options();
+    opts.assets = 1;
+    opts.inheritanceDepth = 0;
+    opts.associations = 0;
+    opts.steps = 0;
+    opts.variables = 0;
+    var lang = assertCompile(opts);
+    assertEquals(1, lang.getAssets().size());
+  }
+
+  @Test
+  public void testSeed() {
+    try {
+      var opts = new SpecGenerator.Options();
+      opts.assets = 50;
+      var first = SpecGenerator.generate(opts);
+      assertEquals(first, SpecGenerator.generate(opts));
+      opts.seed = 1;
+      assertNotEquals(first, SpecGenerator.generate(opts));
+    } catch (CompilerException e) {
+      fail(e.getMessage());
+    }
+  }
+
+  @Test
+  public void testInvalidOptions() {
+    var opts = new SpecGenerator.Options();
+    opts.assets = 0;
+    assertThrows(CompilerException.class, () -> SpecGenerator.generate(opts));
+    opts.assets = 10;
+    opts.includes = 2;
+    assertThrows(CompilerException.class, () -> SpecGenerator.generate(opts));
+    opts.includes = 0;
+    opts.transitiveDensity = 1.5;
+    assertThrows(CompilerException.class, () -> SpecGenerator.generate(opts));
+  }
+}